@@ -0,0 +1,13 @@
+package com.pixology.backend.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// @Async methods run on Boot's applicationTaskExecutor (virtual threads unless VIRTUAL_THREADS=false);
+// @Scheduled ones (LayerBlobStore.collect) on Boot's task scheduler.
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class AsyncConfig {
+}
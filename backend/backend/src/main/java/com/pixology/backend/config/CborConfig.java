@@ -0,0 +1,22 @@
+package com.pixology.backend.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.pixology.backend.project.ProjectLayer;
+import com.pixology.backend.project.BinaryLayerMixin;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+// application/cbor alongside JSON: same DTOs, but layers travel as LayerCodec bytes instead of color grids.
+@Configuration
+public class CborConfig {
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder
+                .factory(new CBORFactory())
+                .mixIn(ProjectLayer.class, BinaryLayerMixin.class)
+                .build());
+    }
+}
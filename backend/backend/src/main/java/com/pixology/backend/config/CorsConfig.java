@@ -4,8 +4,10 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.context.annotation.Profile;
 
 @Configuration
+@Profile("!reactive")
 public class CorsConfig {
     @Bean
     public WebMvcConfigurer corsConfigurer() {
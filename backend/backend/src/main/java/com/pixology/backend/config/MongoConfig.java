@@ -0,0 +1,15 @@
+package com.pixology.backend.config;
+
+import com.pixology.backend.project.ProjectLayerConverters;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+@Configuration
+public class MongoConfig {
+
+    @Bean
+    public MongoCustomConversions mongoCustomConversions() {
+        return new MongoCustomConversions(ProjectLayerConverters.all());
+    }
+}
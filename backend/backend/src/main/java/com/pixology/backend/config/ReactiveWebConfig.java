@@ -0,0 +1,93 @@
+package com.pixology.backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.lang.Nullable;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.web.reactive.config.CorsRegistry;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+
+// The "reactive" profile's SecurityConfig and CorsConfig, plus CborConfig's mapper as WebFlux codecs.
+@Configuration
+@Profile("reactive")
+public class ReactiveWebConfig implements WebFluxConfigurer {
+
+    private final ObjectMapper mapper;
+    private final ObjectMapper cborMapper;
+
+    public ReactiveWebConfig(ObjectMapper mapper, MappingJackson2CborHttpMessageConverter cbor) {
+        this.mapper = mapper;
+        this.cborMapper = cbor.getObjectMapper();
+    }
+
+    // Tomcat is on the classpath for the MVC stack and would otherwise win; this profile runs on Netty.
+    @Bean
+    NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
+        return http
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance()) // stateless
+                .authorizeExchange(auth -> auth
+                        .pathMatchers(HttpMethod.OPTIONS, "/**").permitAll()
+                        .anyExchange().permitAll() // open everything for now
+                )
+                .build();
+    }
+
+    @Override
+    public void addCorsMappings(CorsRegistry registry) {
+        registry.addMapping("/**")
+                .allowedOrigins("https://pixology-six.vercel.app")
+                .allowedMethods("GET","POST","PUT","DELETE","PATCH","OPTIONS")
+                .allowedHeaders("*");
+    }
+
+    // Same limits as the JSON codecs (spring.codec.max-in-memory-size). The mime type is explicit:
+    // without it these codecs also claim application/json. Custom writers are offered before the
+    // defaults, so JSON is registered again ahead of CBOR to stay the answer to Accept: */*.
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.customCodecs().registerWithDefaultConfig(new Jackson2CborDecoder(cborMapper, MediaType.APPLICATION_CBOR));
+        configurer.customCodecs().registerWithDefaultConfig(new Jackson2JsonEncoder(mapper));
+        configurer.customCodecs().registerWithDefaultConfig(new CborEncoder(cborMapper));
+    }
+
+    // Jackson2CborEncoder only encodes single values; bodies arrive as Mono/Flux, so encode each
+    // element on its own (a Flux becomes a CBOR sequence).
+    private static final class CborEncoder extends Jackson2CborEncoder {
+
+        CborEncoder(ObjectMapper mapper) {
+            super(mapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> input, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                       @Nullable MimeType mimeType, @Nullable Map<String, Object> hints) {
+            return Flux.from(input).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+        }
+    }
+}
@@ -8,8 +8,10 @@ import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.http.HttpMethod;
+import org.springframework.context.annotation.Profile;
 
 @Configuration
+@Profile("!reactive")
 public class SecurityConfig {
 
     @Bean
@@ -0,0 +1,174 @@
+package com.pixology.backend.project;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pixology.backend.project.dto.AnimationDetailResponse;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Writes an AnimationDetailResponse as JSON or CBOR without holding all frames at once.
+ * Header fields go through the normal mapper; frames are written one by one as they
+ * come off the cursor, with pixel rows (JSON) or LayerCodec bytes (CBOR) taken straight
+ * from the packed buffers.
+ */
+@Component
+public class AnimationDetailWriter {
+
+    private final ObjectMapper mapper;
+    private final ObjectMapper cborMapper;
+
+    public AnimationDetailWriter(ObjectMapper mapper, MappingJackson2CborHttpMessageConverter cbor) {
+        this.mapper = mapper;
+        this.cborMapper = cbor.getObjectMapper();
+    }
+
+    /** header carries everything but frames; same shape as the buffered response. */
+    public void write(AnimationDetailResponse header, Stream<AnimationFrame> frames, OutputStream out,
+                      boolean binary) throws IOException {
+        ObjectMapper mapper = binary ? cborMapper : this.mapper;
+        try (JsonGenerator g = mapper.getFactory().createGenerator(out)) {
+            writeHead(g, mapper, header);
+            for (Iterator<AnimationFrame> it = frames.iterator(); it.hasNext(); ) {
+                writeFrame(g, it.next(), binary);
+                g.flush(); // hand each frame to the client instead of growing the buffer
+            }
+            g.writeEndArray();
+            g.writeEndObject();
+        }
+    }
+
+    /**
+     * The same document for a non-blocking response, in the given representation (gzip
+     * included): one chunk for the header, one per frame as frames arrive, one to close.
+     * Frames are pulled only as fast as the chunks are consumed.
+     */
+    Flux<byte[]> chunks(AnimationDetailResponse header, Flux<AnimationFrame> frames, ReadRepresentation rep) {
+        boolean binary = rep.binary();
+        ObjectMapper mapper = binary ? cborMapper : this.mapper;
+        return Flux.using(() -> new Chunks(mapper.getFactory(), rep),
+                c -> Flux.concat(
+                                Mono.fromCallable(() -> c.head(mapper, header)),
+                                frames.map(f -> c.frame(f, binary)),
+                                Mono.fromCallable(c::tail))
+                        .filter(chunk -> chunk.length > 0), // gzip may hold a frame back until later
+                Chunks::close);
+    }
+
+    // Opens the document and its "frames" array.
+    private static void writeHead(JsonGenerator g, ObjectMapper mapper, AnimationDetailResponse header)
+            throws IOException {
+        ObjectNode head = mapper.valueToTree(header);
+        head.remove("frames");
+
+        g.writeStartObject();
+        for (Map.Entry<String, JsonNode> e : head.properties()) {
+            g.writeFieldName(e.getKey());
+            g.writeTree(e.getValue());
+        }
+        g.writeArrayFieldStart("frames");
+    }
+
+    // One generator over a buffer that is drained after every step.
+    private static final class Chunks {
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        private final JsonGenerator g;
+
+        Chunks(JsonFactory factory, ReadRepresentation rep) throws IOException {
+            this.g = factory.createGenerator(rep.wrap(buf));
+        }
+
+        byte[] head(ObjectMapper mapper, AnimationDetailResponse header) throws IOException {
+            writeHead(g, mapper, header);
+            return drain();
+        }
+
+        byte[] frame(AnimationFrame f, boolean binary) {
+            try {
+                writeFrame(g, f, binary);
+                return drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        byte[] tail() throws IOException {
+            g.writeEndArray();
+            g.writeEndObject();
+            g.close(); // finishes the gzip trailer too
+            return drain();
+        }
+
+        private byte[] drain() throws IOException {
+            if (!g.isClosed()) g.flush();
+            byte[] chunk = buf.toByteArray();
+            buf.reset();
+            return chunk;
+        }
+
+        void close() {
+            try {
+                g.close();
+            } catch (IOException ignored) {
+                // only an in-memory buffer underneath
+            }
+        }
+    }
+
+    private static void writeFrame(JsonGenerator g, AnimationFrame f, boolean binary) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("id", f.getId());
+        g.writeStringField("name", f.getName());
+        g.writeStringField("selectedLayerId", f.getSelectedLayerId());
+        if (f.getLayers() == null) {
+            g.writeNullField("layers");
+        } else {
+            g.writeArrayFieldStart("layers");
+            for (ProjectLayer l : f.getLayers()) writeLayer(g, l, binary);
+            g.writeEndArray();
+        }
+        g.writeEndObject();
+    }
+
+    private static void writeLayer(JsonGenerator g, ProjectLayer l, boolean binary) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("id", l.getId());
+        g.writeStringField("name", l.getName());
+        g.writeBooleanField("visible", l.isVisible());
+        g.writeBooleanField("locked", l.isLocked());
+
+        PackedPixels p = l.getPacked();
+        if (binary) {
+            if (p == null) g.writeNullField("data");
+            else g.writeBinaryField("data", LayerCodec.encode(p));
+        } else if (p == null) {
+            g.writeNullField("pixels");
+        } else {
+            g.writeArrayFieldStart("pixels");
+            for (int r = 0; r < p.getRows(); r++) {
+                g.writeStartArray();
+                for (int c = 0; c < p.getCols(); c++) {
+                    String color = p.colorOf(p.indexAt(r, c));
+                    if (color == null) g.writeNull();
+                    else g.writeString(color);
+                }
+                g.writeEndArray();
+            }
+            g.writeEndArray();
+        }
+        g.writeEndObject();
+    }
+}
@@ -0,0 +1,17 @@
+package com.pixology.backend.project;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/** Binary wire form of {@link ProjectLayer}: LayerCodec bytes under "data" instead of the "pixels" grid. */
+public abstract class BinaryLayerMixin {
+
+    @JsonIgnore
+    abstract List<List<String>> getPixels();
+
+    @JsonIgnore(false) // lifts the @JsonIgnore ProjectLayer puts on it for JSON
+    @JsonProperty("data")
+    abstract byte[] getData();
+}
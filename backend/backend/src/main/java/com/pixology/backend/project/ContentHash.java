@@ -0,0 +1,101 @@
+package com.pixology.backend.project;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * SHA-256 hashes, cut to 128 bits: of a project's full content, of an encoded layer (the id
+ * of its LayerBlob), or of any value tuple. Project.revisionTag is one of the first on a full
+ * save and one of the last on a targeted write, which never sees the whole document and so
+ * hashes the change it makes; that tag is a revision token, not a hash of the content.
+ */
+public final class ContentHash {
+
+    private final MessageDigest md;
+
+    private ContentHash() {
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Hash of everything a full save writes: metadata, static layers, frames and blocks. */
+    public static String of(Project p) {
+        ContentHash h = new ContentHash()
+                .add(p.getKind() == null ? null : p.getKind().name())
+                .add(p.getName())
+                .add(p.getWidth())
+                .add(p.getHeight())
+                .add(p.getSelectedLayerId());
+        h.addLayers(p.getLayers());
+        if (p.getFrames() != null) {
+            h.add(p.getFrames().size());
+            for (AnimationFrame f : p.getFrames()) {
+                h.add(f.getId()).add(f.getName()).add(f.getSelectedLayerId());
+                h.addLayers(f.getLayers());
+            }
+        }
+        if (p.getAnimations() != null) {
+            h.add(p.getAnimations().size());
+            for (AnimationBlock b : p.getAnimations()) {
+                h.add(b.getId()).add(b.getName()).add(b.getLoopMode()).add(String.valueOf(b.getFrames()));
+            }
+        }
+        return h.hex();
+    }
+
+    /** Hash of a targeted change, e.g. ("frames", frameId, "upsert", updatedAt), or of any value tuple. */
+    public static String ofParts(Object... parts) {
+        ContentHash h = new ContentHash();
+        for (Object part : parts) h.add(part == null ? null : part.toString());
+        return h.hex();
+    }
+
+    /** Hash of raw bytes, e.g. an encoded layer (the id of its LayerBlob). */
+    public static String of(byte[] data) {
+        ContentHash h = new ContentHash();
+        h.md.update(data);
+        return h.hex();
+    }
+
+    private void addLayers(List<ProjectLayer> layers) {
+        if (layers == null) {
+            add(-1);
+            return;
+        }
+        add(layers.size());
+        for (ProjectLayer l : layers) {
+            add(l.getId()).add(l.getName()).add(l.isVisible() ? 1 : 0).add(l.isLocked() ? 1 : 0);
+            byte[] data = l.getData();
+            add(data == null ? -1 : data.length);
+            if (data != null) md.update(data);
+        }
+    }
+
+    private ContentHash add(String s) {
+        if (s == null) {
+            md.update((byte) 0);
+        } else {
+            md.update((byte) 1);
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            add(b.length);
+            md.update(b);
+        }
+        return this;
+    }
+
+    private ContentHash add(int v) {
+        md.update(new byte[]{(byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v});
+        return this;
+    }
+
+    // 128 bits, same length as thumbnail hashes
+    private String hex() {
+        return HexFormat.of().formatHex(md.digest(), 0, 16);
+    }
+}
@@ -0,0 +1,46 @@
+package com.pixology.backend.project;
+
+/**
+ * Conditional-request helpers shared by the project endpoints. Read ETags look like
+ * "{version}-{hash}", so the tag from a GET can go straight back as If-Match on a write. The
+ * hash covers the revision token (Project.revisionTag) and the representation, not the
+ * content: two revisions with equal content have different ETags.
+ */
+public final class ETags {
+
+    private ETags() {}
+
+    /** If-None-Match check; weak comparison as RFC 9110 requires for GET. */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.startsWith("W/")) c = c.substring(2);
+            if (c.equals("*") || c.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The project version an If-Match header asks for: null when absent or "*", -1 (never
+     * matches) when the tag carries no version. Only the first tag of a list is used.
+     */
+    public static Long version(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank()) return null;
+        String c = ifMatch.split(",")[0].trim();
+        if (c.equals("*")) return null;
+        if (c.startsWith("W/")) c = c.substring(2);
+        if (c.length() >= 2 && c.startsWith("\"") && c.endsWith("\"")) c = c.substring(1, c.length() - 1);
+        int dash = c.indexOf('-');
+        try {
+            return Long.parseLong(dash < 0 ? c : c.substring(0, dash));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /** Read ETag: the version first, then a hash of everything else the representation depends on. */
+    public static String read(long version, String hash) {
+        return "\"" + version + "-" + hash + "\"";
+    }
+}
@@ -0,0 +1,42 @@
+package com.pixology.backend.project;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * The {@link LayerCodec} encoding of a frame layer, stored once however many frames (of
+ * however many projects) hold the same pixels. Immutable: the id is the hash of data.
+ */
+@Document(collection = "LayerBlobs")
+public class LayerBlob {
+
+    // ContentHash.of(data)
+    @Id
+    private String id;
+
+    private byte[] data;
+
+    // Last save (or collection pass) that found this blob in use; see LayerBlobStore.collect.
+    @Indexed
+    private Instant lastUsed;
+
+    public LayerBlob() {}
+
+    public LayerBlob(String id, byte[] data, Instant lastUsed) {
+        this.id = id;
+        this.data = data;
+        this.lastUsed = lastUsed;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public byte[] getData() { return data; }
+    public void setData(byte[] data) { this.data = data; }
+
+    public Instant getLastUsed() { return lastUsed; }
+    public void setLastUsed(Instant lastUsed) { this.lastUsed = lastUsed; }
+}
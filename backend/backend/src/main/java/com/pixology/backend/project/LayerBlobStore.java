@@ -0,0 +1,177 @@
+package com.pixology.backend.project;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Content-addressed storage for frame layers. A save stores each distinct layer encoding
+ * once in LayerBlobs and writes only its hash into the frame, so a background held across
+ * sixty frames is one blob, and re-saving an animation sends only the blobs Mongo lacks.
+ * Reads put the pixels back from a cache of decoded blobs (they never change) or one $in query.
+ *
+ * Blobs are not reference counted: frames are replaced, pulled and reordered by many kinds
+ * of write. Instead collect() sweeps blobs no project references once they have gone unused
+ * for the grace period. Every save touches its blobs before writing the frames that point
+ * at them, and the sweep only deletes blobs that are still untouched, so a blob can't vanish
+ * under a save in flight.
+ */
+@Component
+public class LayerBlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LayerBlobStore.class);
+
+    static final int COLLECT_BATCH = 500;
+
+    private final MongoTemplate mongo;
+    private final Duration grace;
+    private final Cache<String, PackedPixels> decoded;
+
+    public LayerBlobStore(MongoTemplate mongo,
+                          @Value("${pixology.blobs.grace:PT1H}") Duration grace,
+                          @Value("${pixology.cache.blobs.max-size:16MB}") DataSize maxSize,
+                          MeterRegistry registry) {
+        this.mongo = mongo;
+        this.grace = grace;
+        this.decoded = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String hash, PackedPixels p) -> (int) (64 + p.byteSize() + 16L * p.getPalette().size()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, decoded, "layer-blobs");
+    }
+
+    /** Moves the frames' layers out of line and stores the blobs they now point at. Call before writing the frames. */
+    public void store(Collection<AnimationFrame> frames) {
+        Map<String, byte[]> blobs = LayerBlobs.externalize(frames);
+        if (blobs.isEmpty()) return;
+
+        Instant now = Instant.now();
+        // Touch first: from here on every blob that exists is safe from collect().
+        mongo.updateMulti(LayerBlobs.ids(blobs.keySet()), LayerBlobs.touch(now), LayerBlob.class);
+        Set<String> present = mongo.find(LayerBlobs.existing(blobs.keySet()), LayerBlob.class).stream()
+                .map(LayerBlob::getId)
+                .collect(Collectors.toSet());
+        Set<String> missing = LayerBlobs.minus(blobs.keySet(), present);
+        if (missing.isEmpty()) return;
+
+        BulkOperations ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, LayerBlob.class);
+        for (String hash : missing) ops.upsert(LayerBlobs.one(hash), LayerBlobs.insert(blobs.get(hash), now));
+        ops.execute();
+    }
+
+    /** Fills in the pixels of layers stored as blobs. */
+    public void resolve(Collection<AnimationFrame> frames) {
+        Set<String> wanted = LayerBlobs.unresolved(frames);
+        if (wanted.isEmpty()) return;
+
+        Map<String, PackedPixels> found = cached(wanted);
+        Set<String> fetch = LayerBlobs.minus(wanted, found.keySet());
+        if (!fetch.isEmpty()) {
+            for (LayerBlob b : mongo.find(LayerBlobs.ids(fetch), LayerBlob.class)) found.put(b.getId(), remember(b));
+        }
+        LayerBlobs.apply(frames, found);
+    }
+
+    public void resolve(AnimationFrame frame) {
+        if (frame != null) resolve(List.of(frame));
+    }
+
+    /**
+     * The frames with their pixels filled in, pulled and resolved RESOLVE_BATCH at a time, so
+     * a cursor over many frames costs one blob query per batch rather than one per frame.
+     * Closing the result closes frames.
+     */
+    public Stream<AnimationFrame> resolveInBatches(Stream<AnimationFrame> frames) {
+        Iterator<AnimationFrame> it = frames.iterator();
+        Iterator<List<AnimationFrame>> batches = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public List<AnimationFrame> next() {
+                List<AnimationFrame> batch = new ArrayList<>(LayerBlobs.RESOLVE_BATCH);
+                while (batch.size() < LayerBlobs.RESOLVE_BATCH && it.hasNext()) batch.add(it.next());
+                resolve(batch);
+                return batch;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED), false)
+                .flatMap(List::stream)
+                .onClose(frames::close);
+    }
+
+    // Shared with ReactiveLayerBlobStore.
+    Map<String, PackedPixels> cached(Set<String> hashes) {
+        return new HashMap<>(decoded.getAllPresent(hashes));
+    }
+
+    PackedPixels remember(LayerBlob b) {
+        PackedPixels p = LayerCodec.decode(b.getData());
+        decoded.put(b.getId(), p);
+        return p;
+    }
+
+    /**
+     * Deletes blobs no frame references any more. Looks only at blobs unused for the grace
+     * period; those still referenced are touched, so they are checked again one period later.
+     */
+    @Scheduled(fixedDelayString = "${pixology.blobs.collect-interval:PT1H}",
+            initialDelayString = "${pixology.blobs.collect-interval:PT1H}")
+    public void collect() {
+        Instant now = Instant.now();
+        Instant cutoff = now.minus(grace);
+        String projects = mongo.getCollectionName(Project.class);
+        long removed = 0;
+        try {
+            List<String> candidates;
+            do {
+                candidates = mongo.find(LayerBlobs.stale(cutoff, COLLECT_BATCH), LayerBlob.class).stream()
+                        .map(LayerBlob::getId)
+                        .toList();
+                if (candidates.isEmpty()) break;
+
+                Set<String> used = new HashSet<>(mongo.findDistinct(LayerBlobs.referencing(candidates),
+                        LayerBlobs.REFERENCE_PATH, projects, String.class));
+                used.retainAll(candidates);
+                Set<String> unused = LayerBlobs.minus(new HashSet<>(candidates), used);
+
+                if (!used.isEmpty()) mongo.updateMulti(LayerBlobs.ids(used), LayerBlobs.touch(now), LayerBlob.class);
+                if (!unused.isEmpty()) {
+                    removed += mongo.remove(LayerBlobs.unreferenced(unused, cutoff), LayerBlob.class).getDeletedCount();
+                }
+            } while (candidates.size() == COLLECT_BATCH);
+        } catch (Exception e) {
+            log.warn("layer blob collection stopped after {} blobs: {}", removed, e.getMessage());
+            return;
+        }
+        if (removed > 0) log.info("removed {} unreferenced layer blobs", removed);
+    }
+}
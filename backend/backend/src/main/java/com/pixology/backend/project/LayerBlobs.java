@@ -0,0 +1,121 @@
+package com.pixology.backend.project;
+
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Moving frame layers out of line and back, plus the LayerBlobs queries, for both the
+ * blocking LayerBlobStore and the reactive one.
+ */
+final class LayerBlobs {
+
+    // An encoding this small costs about what its hash reference would; it stays inline.
+    static final int INLINE_MAX = 64;
+    // Frames read off a cursor are resolved this many at a time, one $in query each.
+    static final int RESOLVE_BATCH = 32;
+
+    static final String REFERENCE_PATH = "frames.layers.blob";
+
+    private LayerBlobs() {}
+
+    /**
+     * Points every frame layer above INLINE_MAX at its content hash and returns the distinct
+     * encodings by hash; those are what the save needs stored.
+     */
+    static Map<String, byte[]> externalize(Collection<AnimationFrame> frames) {
+        Map<String, byte[]> blobs = new LinkedHashMap<>();
+        for (AnimationFrame f : frames) {
+            if (f.getLayers() == null) continue;
+            for (ProjectLayer l : f.getLayers()) {
+                l.setBlob(null);
+                byte[] data = l.getData();
+                if (data == null || data.length <= INLINE_MAX) continue;
+                String hash = ContentHash.of(data);
+                l.setBlob(hash);
+                blobs.putIfAbsent(hash, data);
+            }
+        }
+        return blobs;
+    }
+
+    /** Hashes of the layers that were read back without their pixels. */
+    static Set<String> unresolved(Collection<AnimationFrame> frames) {
+        Set<String> hashes = new LinkedHashSet<>();
+        for (AnimationFrame f : frames) {
+            if (f == null || f.getLayers() == null) continue;
+            for (ProjectLayer l : f.getLayers()) {
+                if (l.getBlob() != null && l.getPacked() == null) hashes.add(l.getBlob());
+            }
+        }
+        return hashes;
+    }
+
+    /** Sets the pixels of unresolved layers from resolved. Blobs are shared: callers must not modify them. */
+    static void apply(Collection<AnimationFrame> frames, Map<String, PackedPixels> resolved) {
+        for (AnimationFrame f : frames) {
+            if (f == null || f.getLayers() == null) continue;
+            for (ProjectLayer l : f.getLayers()) {
+                if (l.getBlob() == null || l.getPacked() != null) continue;
+                PackedPixels p = resolved.get(l.getBlob());
+                if (p == null) throw new DataRetrievalFailureException("layer blob " + l.getBlob() + " is missing");
+                l.setPacked(p);
+            }
+        }
+    }
+
+    static <T> Set<T> minus(Set<T> all, Set<T> remove) {
+        Set<T> rest = new LinkedHashSet<>(all);
+        rest.removeAll(remove);
+        return rest;
+    }
+
+    // ---------- queries ----------
+    static Query ids(Collection<String> hashes) {
+        return Query.query(where("_id").in(hashes));
+    }
+
+    static Query existing(Collection<String> hashes) {
+        Query q = ids(hashes);
+        q.fields().include("_id");
+        return q;
+    }
+
+    static Query one(String hash) {
+        return Query.query(where("_id").is(hash));
+    }
+
+    static Update touch(Instant now) {
+        return new Update().set("lastUsed", now);
+    }
+
+    // An upsert rather than an insert, so two saves storing the same pixels at once both succeed.
+    static Update insert(byte[] data, Instant now) {
+        return new Update().setOnInsert("data", data).set("lastUsed", now);
+    }
+
+    static Query stale(Instant cutoff, int limit) {
+        Query q = Query.query(where("lastUsed").lt(cutoff)).limit(limit);
+        q.fields().include("_id");
+        return q;
+    }
+
+    // Run against the Projects collection with findDistinct on REFERENCE_PATH.
+    static Query referencing(Collection<String> hashes) {
+        return Query.query(where(REFERENCE_PATH).in(hashes));
+    }
+
+    // lastUsed is checked again: a save that picked the blob up since has touched it.
+    static Query unreferenced(Collection<String> hashes, Instant cutoff) {
+        return Query.query(where("_id").in(hashes).and("lastUsed").lt(cutoff));
+    }
+}
@@ -0,0 +1,213 @@
+package com.pixology.backend.project;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compact binary form of a layer: palette of the colors actually used plus
+ * run-length encoded palette indices. Lossless against {@link PackedPixels}.
+ *
+ * Layout (all integers are unsigned LEB128 varints):
+ *   version, rows, cols,
+ *   paletteSize, { byteLength, utf8 bytes } * paletteSize,
+ *   { index, runLength } * until rows * cols cells are covered.
+ * Index 0 is transparent, index i > 0 is palette[i - 1].
+ *
+ * Stored static layers are kept per tile instead (see ProjectLayerConverters): each
+ * non-empty tile of {@link PackedPixels} is just its { index, runLength } runs over the
+ * TILE * TILE cells, against a palette shared by the layer's tiles.
+ */
+public final class LayerCodec {
+
+    static final int VERSION = 1;
+
+    private static final int TILE = PackedPixels.TILE;
+    private static final int TILE_CELLS = TILE * TILE;
+
+    private LayerCodec() {}
+
+    public static byte[] encode(PackedPixels p) {
+        int n = p.size();
+
+        // Re-number colors by first use so unused palette entries are dropped.
+        int[] remap = new int[p.getPalette().size() + 1];
+        List<String> palette = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int idx = p.indexAt(i);
+            if (idx != 0 && remap[idx] == 0) {
+                palette.add(p.colorOf(idx));
+                remap[idx] = palette.size();
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + palette.size() * 8);
+        writeVarint(out, VERSION);
+        writeVarint(out, p.getRows());
+        writeVarint(out, p.getCols());
+        writeVarint(out, palette.size());
+        for (String color : palette) {
+            byte[] b = color.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, b.length);
+            out.write(b, 0, b.length);
+        }
+
+        int i = 0;
+        while (i < n) {
+            int idx = p.indexAt(i);
+            int run = 1;
+            while (i + run < n && p.indexAt(i + run) == idx) run++;
+            writeVarint(out, remap[idx]);
+            writeVarint(out, run);
+            i += run;
+        }
+        return out.toByteArray();
+    }
+
+    /** Decodes a stored layer; layers a client sent go through decode(data, rows, cols). */
+    public static PackedPixels decode(byte[] data) {
+        return decode(data, -1, -1);
+    }
+
+    /**
+     * Decodes a layer sent by a client, which must be rows x cols (the request's canvas, already
+     * validated). Size and palette are checked against the input before anything is allocated.
+     */
+    public static PackedPixels decode(byte[] data, int expectedRows, int expectedCols) {
+        Reader in = new Reader(data);
+        int version = in.varint();
+        if (version != VERSION) throw new IllegalArgumentException("unsupported layer encoding: " + version);
+
+        int rows = in.varint();
+        int cols = in.varint();
+        if (rows < 0 || cols < 0 || (long) rows * cols > Integer.MAX_VALUE / 4)
+            throw new IllegalArgumentException("corrupt layer encoding");
+        if (expectedRows >= 0) checkSize(rows, cols, expectedRows, expectedCols);
+        int paletteSize = in.varint();
+        // Every entry takes at least its length byte.
+        if (paletteSize < 0 || paletteSize > in.remaining()) throw new IllegalArgumentException("corrupt layer encoding");
+        List<String> palette = new ArrayList<>(paletteSize);
+        for (int k = 0; k < paletteSize; k++) palette.add(in.utf8(in.varint()));
+
+        int n = rows * cols;
+        PackedPixels p = PackedPixels.withPalette(rows, cols, palette);
+        int i = 0;
+        while (i < n) {
+            int idx = in.varint();
+            int run = in.varint();
+            if (idx < 0 || idx > paletteSize || run <= 0 || run > n - i)
+                throw new IllegalArgumentException("corrupt layer encoding");
+            if (idx != 0) {
+                for (int k = i; k < i + run; k++) p.setIndex(k / cols, k % cols, idx);
+            }
+            i += run;
+        }
+        p.clearDirty();
+        return p;
+    }
+
+    /** Rejects a client layer that is not the size of its canvas. */
+    static void checkSize(int rows, int cols, int expectedRows, int expectedCols) {
+        if (rows != expectedRows || cols != expectedCols) {
+            throw new IllegalArgumentException("layer is " + cols + "x" + rows + " but the canvas is "
+                    + expectedCols + "x" + expectedRows);
+        }
+    }
+
+    // ---------- tiles ----------
+    /**
+     * Renumbers p's colors by first use across its tiles, dropping unused entries: fills used
+     * with the colors kept and returns the old-to-new index map for encodeTile.
+     */
+    static int[] compactPalette(PackedPixels p, List<String> used) {
+        int[] remap = new int[p.getPalette().size() + 1];
+        BitSet tiles = p.occupiedTiles();
+        for (int t = tiles.nextSetBit(0); t >= 0; t = tiles.nextSetBit(t + 1)) {
+            for (int cell = 0; cell < TILE_CELLS; cell++) {
+                int idx = p.tileIndexAt(t, cell);
+                if (idx != 0 && remap[idx] == 0) {
+                    used.add(p.colorOf(idx));
+                    remap[idx] = used.size();
+                }
+            }
+        }
+        return remap;
+    }
+
+    /** The runs of one tile with indices mapped through remap (null keeps them), or null if it is empty. */
+    static byte[] encodeTile(PackedPixels p, int tile, int[] remap) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+        boolean empty = true;
+        int cell = 0;
+        while (cell < TILE_CELLS) {
+            int idx = p.tileIndexAt(tile, cell);
+            int run = 1;
+            while (cell + run < TILE_CELLS && p.tileIndexAt(tile, cell + run) == idx) run++;
+            if (idx != 0) empty = false;
+            writeVarint(out, remap == null ? idx : remap[idx]);
+            writeVarint(out, run);
+            cell += run;
+        }
+        return empty ? null : out.toByteArray();
+    }
+
+    /** Fills tile of p (still transparent, palette already set) from encodeTile's output. */
+    static void decodeTile(PackedPixels p, int tile, byte[] data) {
+        Reader in = new Reader(data);
+        int top = PackedPixels.tileRow(tile, p.tilesX()) * TILE;
+        int left = PackedPixels.tileCol(tile, p.tilesX()) * TILE;
+        int cell = 0;
+        while (cell < TILE_CELLS) {
+            int idx = in.varint();
+            int run = in.varint();
+            if (idx > p.getPalette().size() || run <= 0 || run > TILE_CELLS - cell)
+                throw new IllegalArgumentException("corrupt layer tile");
+            if (idx != 0) {
+                for (int k = cell; k < cell + run; k++) {
+                    int row = top + k / TILE;
+                    int col = left + k % TILE;
+                    if (row >= p.getRows() || col >= p.getCols()) throw new IllegalArgumentException("corrupt layer tile");
+                    p.setIndex(row, col, idx);
+                }
+            }
+            cell += run;
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int pos;
+
+        Reader(byte[] data) { this.data = data; }
+
+        int remaining() { return data.length - pos; }
+
+        int varint() {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (pos >= data.length) throw new IllegalArgumentException("truncated layer encoding");
+                int b = data[pos++];
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IllegalArgumentException("corrupt layer encoding");
+        }
+
+        String utf8(int len) {
+            if (len < 0 || pos + len > data.length) throw new IllegalArgumentException("truncated layer encoding");
+            String s = new String(data, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+    }
+}
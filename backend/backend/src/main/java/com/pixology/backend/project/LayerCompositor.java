@@ -0,0 +1,109 @@
+package com.pixology.backend.project;
+
+import java.util.List;
+
+/**
+ * Flattens a layer stack into ARGB pixels (0xAARRGGBB, row-major).
+ * Layers are topmost first, as stored; hidden layers are skipped and
+ * semi-transparent colors blend source-over.
+ */
+public final class LayerCompositor {
+
+    private LayerCompositor() {}
+
+    /** Full-size composite of width x height. */
+    public static int[] composite(int width, int height, List<ProjectLayer> layers) {
+        return composite(width, height, layers, width, height);
+    }
+
+    /** Composite sampled (nearest-neighbour) onto an outWidth x outHeight grid. */
+    public static int[] composite(int width, int height, List<ProjectLayer> layers, int outWidth, int outHeight) {
+        int[] out = new int[outWidth * outHeight];
+        if (layers == null || width <= 0 || height <= 0) return out;
+
+        // Bottom layer first so upper layers blend over it.
+        for (int li = layers.size() - 1; li >= 0; li--) {
+            ProjectLayer layer = layers.get(li);
+            PackedPixels p = layer.getPacked();
+            if (!layer.isVisible() || p == null) continue;
+
+            int[] argb = toArgb(p.getPalette());
+            for (int y = 0; y < outHeight; y++) {
+                int row = (int) ((long) y * height / outHeight);
+                if (row >= p.getRows()) break;
+                for (int x = 0; x < outWidth; x++) {
+                    int col = (int) ((long) x * width / outWidth);
+                    if (col >= p.getCols()) break;
+                    int idx = p.indexAt(row, col);
+                    if (idx != 0) out[y * outWidth + x] = over(argb[idx], out[y * outWidth + x]);
+                }
+            }
+        }
+        return out;
+    }
+
+    // Index 0 stays transparent; unparseable colors draw nothing.
+    private static int[] toArgb(List<String> palette) {
+        int[] argb = new int[palette.size() + 1];
+        for (int i = 0; i < palette.size(); i++) argb[i + 1] = parseColor(palette.get(i));
+        return argb;
+    }
+
+    /** Parses #rgb, #rgba, #rrggbb, #rrggbbaa, rgb(...) and rgba(...); anything else is transparent. */
+    public static int parseColor(String s) {
+        if (s == null) return 0;
+        String c = s.trim().toLowerCase();
+        try {
+            if (c.startsWith("#")) {
+                String h = c.substring(1);
+                if (h.length() == 3 || h.length() == 4) {
+                    StringBuilder b = new StringBuilder();
+                    for (char ch : h.toCharArray()) b.append(ch).append(ch);
+                    h = b.toString();
+                }
+                if (h.length() == 6) return 0xFF000000 | Integer.parseInt(h, 16);
+                if (h.length() == 8) {
+                    long v = Long.parseLong(h, 16);
+                    return (int) ((v & 0xFF) << 24 | v >>> 8);
+                }
+                return 0;
+            }
+            if (c.startsWith("rgb")) {
+                int open = c.indexOf('(');
+                int close = c.indexOf(')');
+                if (open < 0 || close < open) return 0;
+                String[] parts = c.substring(open + 1, close).split("[,\\s/]+");
+                if (parts.length < 3) return 0;
+                int r = clamp(Integer.parseInt(parts[0].trim()));
+                int g = clamp(Integer.parseInt(parts[1].trim()));
+                int bl = clamp(Integer.parseInt(parts[2].trim()));
+                int a = parts.length > 3 ? clamp((int) Math.round(Double.parseDouble(parts[3].trim()) * 255)) : 255;
+                return a << 24 | r << 16 | g << 8 | bl;
+            }
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        return 0;
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+
+    // Straight-alpha source-over.
+    private static int over(int src, int dst) {
+        int sa = src >>> 24;
+        if (sa == 0xFF || (dst >>> 24) == 0) return src;
+        if (sa == 0) return dst;
+        int da = dst >>> 24;
+        int oa = sa + da * (255 - sa) / 255;
+        int r = blend(src >> 16 & 0xFF, sa, dst >> 16 & 0xFF, da, oa);
+        int g = blend(src >> 8 & 0xFF, sa, dst >> 8 & 0xFF, da, oa);
+        int b = blend(src & 0xFF, sa, dst & 0xFF, da, oa);
+        return oa << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static int blend(int sc, int sa, int dc, int da, int oa) {
+        return (sc * sa + dc * da * (255 - sa) / 255) / oa;
+    }
+}
@@ -0,0 +1,32 @@
+package com.pixology.backend.project;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Keyset position in a user's library: the (updatedAt, id) of the last row served,
+ * plus the page number and the total counted for the first page, so later pages can
+ * still report both without counting again (total is -1 in cursors from before it was
+ * carried). Encoded as url-safe base64.
+ */
+public record LibraryCursor(Instant updatedAt, String id, int page, long total) {
+
+    public String encode() {
+        String raw = updatedAt.toEpochMilli() + ":" + id + ":" + page + ":" + total;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static LibraryCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 3 && parts.length != 4) throw new IllegalArgumentException("invalid cursor");
+            long total = parts.length == 4 ? Long.parseLong(parts[3]) : -1;
+            return new LibraryCursor(Instant.ofEpochMilli(Long.parseLong(parts[0])), parts[1], Integer.parseInt(parts[2]),
+                    total);
+        } catch (IllegalArgumentException e) { // includes NumberFormatException and bad base64
+            throw new IllegalArgumentException("invalid cursor");
+        }
+    }
+}
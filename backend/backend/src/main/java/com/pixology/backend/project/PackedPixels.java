@@ -0,0 +1,258 @@
+package com.pixology.backend.project;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Palette-indexed pixel buffer for one layer.
+ * Index 0 is transparent (null in grid form), index i > 0 is palette.get(i - 1).
+ *
+ * The canvas is cut into TILE x TILE tiles and only tiles holding a visible pixel are
+ * allocated, so a sprite in the corner of a 512x512 canvas costs a few tiles, not 256 KB.
+ * Each tile is a row-major block of 1, 2 or 4 byte indices depending on palette size.
+ * Tiles are numbered row by row (tileRow * tilesX + tileCol); the tile bitmap says which
+ * are allocated and the dirty set which were written since the last clearDirty().
+ */
+public final class PackedPixels {
+
+    static final int TILE = 16;
+    private static final int SHIFT = 4;
+    private static final int CELLS = TILE * TILE;
+
+    private final int rows;
+    private final int cols;
+    private final int tilesX;
+    private final List<String> palette;
+    private Map<String, Integer> lookup; // built on first write
+    private int indexWidth;
+    private final byte[][] tiles;
+    private final BitSet occupied = new BitSet();
+    private final BitSet dirty = new BitSet();
+
+    private PackedPixels(int rows, int cols, List<String> palette) {
+        if (rows < 0 || cols < 0) throw new IllegalArgumentException("invalid layer size");
+        this.rows = rows;
+        this.cols = cols;
+        this.tilesX = (cols + TILE - 1) >> SHIFT;
+        this.palette = palette;
+        this.indexWidth = widthFor(palette.size());
+        this.tiles = new byte[tilesX * ((rows + TILE - 1) >> SHIFT)][];
+    }
+
+    /** Fully transparent buffer. */
+    public static PackedPixels empty(int rows, int cols) {
+        return new PackedPixels(rows, cols, new ArrayList<>());
+    }
+
+    /** Packs a row-major grid; short rows are padded with transparent cells. */
+    public static PackedPixels fromGrid(List<List<String>> grid) {
+        if (grid == null) return null;
+        int rows = grid.size();
+        int cols = 0;
+        for (List<String> row : grid) {
+            if (row != null) cols = Math.max(cols, row.size());
+        }
+
+        PackedPixels p = empty(rows, cols);
+        for (int r = 0; r < rows; r++) {
+            List<String> row = grid.get(r);
+            if (row == null) continue;
+            for (int c = 0; c < row.size(); c++) {
+                String color = row.get(c);
+                if (color != null) p.set(r, c, color);
+            }
+        }
+        return p;
+    }
+
+    /** Rebuilds a buffer from the persisted dense form: row-major indices of indexWidth bytes. */
+    public static PackedPixels of(int rows, int cols, List<String> palette, int indexWidth, byte[] indices) {
+        if (rows < 0 || cols < 0) throw new IllegalArgumentException("invalid layer size");
+        if (indexWidth != 1 && indexWidth != 2 && indexWidth != 4)
+            throw new IllegalArgumentException("invalid index width: " + indexWidth);
+        if (indices == null || indices.length != rows * cols * indexWidth)
+            throw new IllegalArgumentException("index buffer does not match layer size");
+
+        PackedPixels p = withPalette(rows, cols, palette);
+        for (int r = 0, i = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++, i++) {
+                int index = read(indices, i, indexWidth);
+                if (index != 0) p.setIndex(r, c, index);
+            }
+        }
+        p.clearDirty();
+        return p;
+    }
+
+    /** Transparent buffer over an existing palette, for decoders to fill through setIndex. */
+    static PackedPixels withPalette(int rows, int cols, List<String> palette) {
+        return new PackedPixels(rows, cols, new ArrayList<>(palette));
+    }
+
+    public int getRows() { return rows; }
+    public int getCols() { return cols; }
+    public int getIndexWidth() { return indexWidth; }
+
+    /** Read-only view; index i > 0 maps to palette.get(i - 1). */
+    public List<String> getPalette() { return Collections.unmodifiableList(palette); }
+
+    public int size() { return rows * cols; }
+
+    /** Bytes held by allocated tiles; what this buffer costs in memory beyond its palette. */
+    public long byteSize() {
+        return (long) occupied.cardinality() * CELLS * indexWidth;
+    }
+
+    /** Index at a row-major offset. */
+    public int indexAt(int offset) {
+        return indexAt(offset / cols, offset % cols);
+    }
+
+    public int indexAt(int row, int col) {
+        byte[] tile = tiles[tileOf(row, col)];
+        return tile == null ? 0 : read(tile, cellOf(row, col), indexWidth);
+    }
+
+    public String colorOf(int index) {
+        return index == 0 ? null : palette.get(index - 1);
+    }
+
+    public String get(int row, int col) {
+        checkBounds(row, col);
+        return colorOf(indexAt(row, col));
+    }
+
+    public void set(int row, int col, String color) {
+        checkBounds(row, col);
+        setIndex(row, col, indexFor(color));
+    }
+
+    public List<List<String>> toGrid() {
+        List<List<String>> grid = new ArrayList<>(rows);
+        for (int r = 0; r < rows; r++) {
+            List<String> row = new ArrayList<>(cols);
+            for (int c = 0; c < cols; c++) row.add(colorOf(indexAt(r, c)));
+            grid.add(row);
+        }
+        return grid;
+    }
+
+    // ---------- tiles ----------
+    int tilesX() { return tilesX; }
+    int tileCount() { return tiles.length; }
+
+    static int tileRow(int tile, int tilesX) { return tile / tilesX; }
+    static int tileCol(int tile, int tilesX) { return tile % tilesX; }
+
+    /** The tile bitmap: tiles holding at least one visible pixel. A copy. */
+    BitSet occupiedTiles() { return (BitSet) occupied.clone(); }
+
+    /** Tiles written since the buffer was loaded or clearDirty() was last called. A copy. */
+    BitSet dirtyTiles() { return (BitSet) dirty.clone(); }
+
+    void clearDirty() { dirty.clear(); }
+
+    /** Index of a cell (row-major within the tile) of an allocated or empty tile. */
+    int tileIndexAt(int tile, int cell) {
+        byte[] t = tiles[tile];
+        return t == null ? 0 : read(t, cell, indexWidth);
+    }
+
+    /** Writes a palette index (0..palette size) and marks the tile dirty if it changed. */
+    void setIndex(int row, int col, int index) {
+        if (index < 0 || index > palette.size()) throw new IllegalArgumentException("index out of palette: " + index);
+        int n = tileOf(row, col);
+        int cell = cellOf(row, col);
+        byte[] tile = tiles[n];
+        if (tile == null) {
+            if (index == 0) return;
+            tile = tiles[n] = new byte[CELLS * indexWidth];
+            occupied.set(n);
+        } else if (read(tile, cell, indexWidth) == index) {
+            return;
+        }
+        write(tile, cell, index, indexWidth);
+        dirty.set(n);
+        // An erase that clears the last pixel gives the tile back.
+        if (index == 0 && isClear(tile)) {
+            tiles[n] = null;
+            occupied.clear(n);
+        }
+    }
+
+    private int indexFor(String color) {
+        if (color == null) return 0;
+        if (lookup == null) {
+            lookup = new HashMap<>();
+            for (int i = 0; i < palette.size(); i++) lookup.putIfAbsent(palette.get(i), i + 1);
+        }
+        Integer existing = lookup.get(color);
+        if (existing != null) return existing;
+
+        palette.add(color);
+        int index = palette.size();
+        lookup.put(color, index);
+        if (widthFor(index) > indexWidth) widen(widthFor(index));
+        return index;
+    }
+
+    private void widen(int width) {
+        for (int n = occupied.nextSetBit(0); n >= 0; n = occupied.nextSetBit(n + 1)) {
+            byte[] wide = new byte[CELLS * width];
+            for (int cell = 0; cell < CELLS; cell++) write(wide, cell, read(tiles[n], cell, indexWidth), width);
+            tiles[n] = wide;
+        }
+        indexWidth = width;
+    }
+
+    private int tileOf(int row, int col) {
+        return (row >> SHIFT) * tilesX + (col >> SHIFT);
+    }
+
+    private static int cellOf(int row, int col) {
+        return ((row & (TILE - 1)) << SHIFT) | (col & (TILE - 1));
+    }
+
+    private static int widthFor(int maxIndex) {
+        return maxIndex <= 0xFF ? 1 : maxIndex <= 0xFFFF ? 2 : 4;
+    }
+
+    private static boolean isClear(byte[] tile) {
+        for (byte b : tile) if (b != 0) return false;
+        return true;
+    }
+
+    private static int read(byte[] buf, int i, int width) {
+        return switch (width) {
+            case 1 -> buf[i] & 0xFF;
+            case 2 -> ((buf[i * 2] & 0xFF) << 8) | (buf[i * 2 + 1] & 0xFF);
+            default -> ((buf[i * 4] & 0xFF) << 24) | ((buf[i * 4 + 1] & 0xFF) << 16)
+                    | ((buf[i * 4 + 2] & 0xFF) << 8) | (buf[i * 4 + 3] & 0xFF);
+        };
+    }
+
+    private static void write(byte[] buf, int i, int index, int width) {
+        switch (width) {
+            case 1 -> buf[i] = (byte) index;
+            case 2 -> {
+                buf[i * 2] = (byte) (index >>> 8);
+                buf[i * 2 + 1] = (byte) index;
+            }
+            default -> {
+                buf[i * 4] = (byte) (index >>> 24);
+                buf[i * 4 + 1] = (byte) (index >>> 16);
+                buf[i * 4 + 2] = (byte) (index >>> 8);
+                buf[i * 4 + 3] = (byte) index;
+            }
+        }
+    }
+
+    private void checkBounds(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols)
+            throw new IllegalArgumentException("pixel out of bounds: " + col + "," + row);
+    }
+}
@@ -0,0 +1,395 @@
+package com.pixology.backend.project;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pixology.backend.project.thumbnail.ThumbnailGenerator;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Write-behind for autosaves. An autosave is checked like a direct save, appended to the local
+ * SaveJournal and acknowledged as soon as the journal has it on disk; a background replayer
+ * writes the latest one per project to Mongo every autosave-interval, so a slow Atlas delays
+ * the replay, not the response, and a burst of autosaves costs one write. That is the weaker
+ * guarantee: an acknowledged autosave is durable on this instance's disk, not yet in Mongo.
+ * A commit (a save without ?autosave) gets no such shortcut; ProjectService flushes the
+ * pending autosave and writes it directly, like every other write, before answering.
+ *
+ * A project's lock guards only its pending entry and journal appends; no Mongo call is made
+ * under it. Replays of a project are serialized by a second lock, which saves never take: the
+ * replay takes the pending save, writes it, and then clears it only if no newer save replaced
+ * it meanwhile. A newer one was acknowledged against the same stored version, so it is rebased
+ * onto the one just written and journaled again. Reads are answered from the pending save (see
+ * ProjectService), and every other write of the project replays it first, so writes land in
+ * the order they were acknowledged. A save is acknowledged with the version the project will
+ * have once it is replayed, and an If-Match of either it or the stored version is accepted
+ * while the save is pending.
+ * The first save of a project reads its header before taking the lock; after a replay the
+ * header is known locally, so an editing session keeps saving without waiting on Mongo.
+ *
+ * A replay that Mongo rejects (the project was deleted, changed elsewhere or renamed onto an
+ * existing name) drops the save with a warning. A conflict is also remembered, and the owner's
+ * next read or save of the project answers 409 once (checkRejected), so an acknowledged save
+ * is never lost without the editor hearing of it. One that fails on the connection stays pending,
+ * and Mongo calls go through the RepositoryCircuitBreaker, so while Mongo is down saves of
+ * projects with a pending or known header are still journaled and acknowledged, and the rest
+ * are answered 503. The journal is replayed on startup and drained on shutdown.
+ */
+@Component
+public class PendingSaves {
+
+    private static final Logger log = LoggerFactory.getLogger(PendingSaves.class);
+
+    private static final int STRIPES = 64;
+    private static final Pattern SAFE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    /** An acknowledged save: content to write over the project, whose header was stored when acknowledged. */
+    record Pending(long seq, Project stored, Project content) {
+        long base() {
+            return stored.getVersion();
+        }
+    }
+
+    private record Rejection(String userId, long version, String reason) {}
+
+    private final ProjectRepository repo;
+    private final MongoTemplate mongo;
+    private final LayerBlobStore blobs;
+    private final ProjectCache cache;
+    private final ThumbnailGenerator thumbnailGenerator;
+    private final RepositoryCircuitBreaker breaker;
+    private final SaveJournal journal;
+    private final long autosaveNanos;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final ReentrantLock[] replaying = new ReentrantLock[STRIPES]; // held across a replay's Mongo write
+    // Headers (owner, kind, version, name) of projects this instance last wrote.
+    private final Cache<String, Project> known = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .build();
+    // Conflicting replays not yet reported to their owner.
+    private final Cache<String, Rejection> rejected = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofDays(1))
+            .build();
+    private final Thread replayer;
+    private volatile boolean running = true;
+
+    public PendingSaves(ProjectRepository repo, MongoTemplate mongo, LayerBlobStore blobs, ProjectCache cache,
+                        ThumbnailGenerator thumbnailGenerator, RepositoryCircuitBreaker breaker,
+                        @Value("${pixology.journal.dir}") Path dir,
+                        @Value("${pixology.journal.compact-at:64MB}") DataSize compactAt,
+                        @Value("${pixology.journal.autosave-interval:PT10S}") Duration autosaveInterval) {
+        if (!dir.isAbsolute()) {
+            throw new IllegalArgumentException("pixology.journal.dir must be an absolute path, not " + dir);
+        }
+        this.repo = repo;
+        this.mongo = mongo;
+        this.blobs = blobs;
+        this.cache = cache;
+        this.thumbnailGenerator = thumbnailGenerator;
+        this.breaker = breaker;
+        this.autosaveNanos = autosaveInterval.toNanos();
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+            replaying[i] = new ReentrantLock();
+        }
+        this.journal = new SaveJournal(dir, compactAt.toBytes());
+        recover();
+        this.replayer = Thread.ofPlatform().name("save-replayer").daemon().start(this::replayLoop);
+    }
+
+    /**
+     * Journals content (a full static or animation project with its id set) as userId's latest
+     * autosave of it and fills in its version (the one it will be stored at), createdAt and
+     * thumbnail. Throws, like a direct save, if the project is missing, someone else's, of the
+     * other kind, or not at expectedVersion (when given). Only the replay can tell whether a new
+     * name is taken; one that is comes back through checkRejected.
+     */
+    public void save(String userId, Long expectedVersion, Project content) {
+        String id = content.getId();
+        if (id == null || !SAFE_ID.matcher(id).matches()) throw new ProjectNotFoundException();
+        checkRejected(id, userId);
+
+        ReentrantLock lock = lockFor(id);
+        Project fetched = null;
+        while (true) {
+            if (fetched == null && !pending.containsKey(id) && known.getIfPresent(id) == null) {
+                fetched = breaker.call(() -> repo.findHeaderById(id)).orElseThrow(ProjectNotFoundException::new);
+            }
+            lock.lock();
+            try {
+                Pending current = pending.get(id);
+                Project stored;
+                if (current == null) {
+                    stored = known.getIfPresent(id); // newer than fetched if a replay finished since
+                    if (stored == null) stored = fetched;
+                    if (stored == null) continue; // a replay cleared the save and its header expired
+                    if (!stored.getUserId().equals(userId) || !ProjectMapping.isKind(stored, content.getKind())
+                            || (expectedVersion != null && expectedVersion != stored.getVersion())) {
+                        throw ProjectMapping.writeFailure(stored, userId, content.getKind(), null);
+                    }
+                } else {
+                    if (!current.stored().getUserId().equals(userId)) throw new IllegalStateException("forbidden");
+                    if (current.stored().getKind() != content.getKind()) {
+                        throw new IllegalArgumentException(current.stored().getKind() == ProjectKind.ANIMATION
+                                ? "not a static project" : "not an animation project");
+                    }
+                    stored = current.stored();
+                    long base = current.base();
+                    if (expectedVersion != null && expectedVersion != base && expectedVersion != base + 1) {
+                        throw new OptimisticLockingFailureException("version conflict, current version is " + (base + 1));
+                    }
+                }
+
+                content.setVersion(stored.getVersion() + 1);
+                content.setCreatedAt(stored.getCreatedAt());
+                content.setThumbnailHash(stored.getThumbnailHash());
+                long seq = journal.append(record(id, stored, content));
+                pending.put(id, new Pending(seq, stored, content));
+                if (current != null) journal.done(current.seq());
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Throws OptimisticLockingFailureException if a save userId was acknowledged for the project
+     * has since been rejected by Mongo on replay (changed elsewhere, or renamed onto a taken name).
+     * The message starts with "save rejected", so the editor can tell it from a stale If-Match
+     * ("version conflict") or a taken name. Reported once; the next call passes and the client
+     * reloads what Mongo has.
+     */
+    public void checkRejected(String projectId, String userId) {
+        Rejection r = rejected.getIfPresent(projectId);
+        if (r == null || !r.userId().equals(userId) || !rejected.asMap().remove(projectId, r)) return;
+        throw new OptimisticLockingFailureException("save rejected: version " + r.version()
+                + " was not stored: " + r.reason());
+    }
+
+    /** Content of the project's pending save, at the version it will be stored at; callers must not modify it. */
+    public Optional<Project> pending(String projectId) {
+        Pending p = pending.get(projectId);
+        return p == null ? Optional.empty() : Optional.of(p.content());
+    }
+
+    /**
+     * Writes the project's pending save, if any, before the caller writes the project itself.
+     * Throws if Mongo is unreachable (StorageUnavailableException while the breaker is open);
+     * the save then stays pending.
+     */
+    public void flush(String projectId) {
+        replay(projectId);
+        known.invalidate(projectId); // the caller's write moves the version on
+    }
+
+    /** Drops the project's pending save; for deletes. */
+    public void discard(String projectId) {
+        known.invalidate(projectId);
+        rejected.invalidate(projectId);
+        if (!pending.containsKey(projectId)) return;
+        ReentrantLock lock = lockFor(projectId);
+        lock.lock();
+        try {
+            Pending p = pending.remove(projectId);
+            if (p != null) journal.done(p.seq());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Replays every pending save; stops at the first one Mongo could not take. */
+    public void flushAll() {
+        for (String id : List.copyOf(pending.keySet())) {
+            if (!replayQuietly(id)) return;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        replayer.interrupt();
+        try {
+            replayer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+        journal.close();
+        if (!pending.isEmpty()) log.warn("{} saves left in the journal for the next start", pending.size());
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    private void replay(String projectId) {
+        if (!pending.containsKey(projectId)) return;
+        ReentrantLock replayLock = replaying[stripe(projectId)];
+        replayLock.lock();
+        try {
+            Pending p = pending.get(projectId);
+            if (p == null) return;
+            RuntimeException refused = null;
+            try {
+                breaker.run(() -> write(projectId, p));
+            } catch (OptimisticLockingFailureException | DuplicateKeyException | IllegalArgumentException
+                     | IllegalStateException e) {
+                refused = e;
+            }
+            settle(projectId, p, refused);
+        } finally {
+            replayLock.unlock();
+        }
+    }
+
+    // Clears a replayed save, unless a newer one took its place while it was being written.
+    private void settle(String projectId, Pending p, RuntimeException refused) {
+        ReentrantLock lock = lockFor(projectId);
+        lock.lock();
+        try {
+            Pending now = pending.get(projectId);
+            if (refused != null) {
+                log.warn("dropped save of project {} at version {}: {}", projectId, p.base(), refused.getMessage());
+                known.invalidate(projectId);
+                if (refused instanceof OptimisticLockingFailureException || refused instanceof DuplicateKeyException) {
+                    rejected.put(projectId, new Rejection(p.stored().getUserId(), p.base() + 1,
+                            refused.getMessage()));
+                }
+                if (now != null && now.seq() == p.seq()) pending.remove(projectId);
+            } else {
+                Project after = headerAfter(p);
+                known.put(projectId, after);
+                if (now != null && now.seq() == p.seq()) {
+                    pending.remove(projectId);
+                } else if (now != null) {
+                    now.content().setVersion(after.getVersion() + 1);
+                    long seq = journal.append(record(projectId, after, now.content()));
+                    pending.put(projectId, new Pending(seq, after, now.content()));
+                    journal.done(now.seq());
+                }
+            }
+            journal.done(p.seq());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // False when Mongo could not be reached; the save stays pending for the next round.
+    private boolean replayQuietly(String projectId) {
+        try {
+            replay(projectId);
+            return true;
+        } catch (StorageUnavailableException e) {
+            return false;
+        } catch (DataAccessException e) {
+            log.warn("replay stopped, {} saves pending: {}", pending.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void replayLoop() {
+        while (running) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(autosaveNanos);
+                flushAll();
+            } catch (InterruptedException e) {
+                // shutdown() drains what is left
+            } catch (RuntimeException e) {
+                log.error("save replay failed", e);
+            }
+        }
+    }
+
+    // What ProjectService.replaceContent does for a direct save, at the version the save was acknowledged against.
+    private void write(String projectId, Pending p) {
+        Project content = p.content();
+        ProjectKind kind = p.stored().getKind();
+        String userId = p.stored().getUserId();
+        if (content.getKind() == ProjectKind.ANIMATION) blobs.store(content.getFrames());
+        cache.invalidate(projectId);
+        repo.replaceContent(projectId, userId, kind, p.base(), content)
+                .orElseThrow(() -> ProjectMapping.writeFailure(repo.findHeaderById(projectId).orElse(null),
+                        userId, kind, null));
+        thumbnailGenerator.refresh(projectId);
+    }
+
+    private static Project headerAfter(Pending p) {
+        Project h = header(p.stored().getUserId(), p.stored().getKind(), p.base() + 1,
+                p.content().getNormalizedName());
+        h.setCreatedAt(p.stored().getCreatedAt());
+        h.setThumbnailHash(p.stored().getThumbnailHash());
+        return h;
+    }
+
+    private static Project header(String userId, ProjectKind kind, long version, String normalizedName) {
+        Project h = new Project();
+        h.setUserId(userId);
+        h.setKind(kind);
+        h.setVersion(version);
+        h.setName(normalizedName); // normalizing is idempotent; only normalizedName is compared
+        return h;
+    }
+
+    private ReentrantLock lockFor(String projectId) {
+        return locks[stripe(projectId)];
+    }
+
+    private static int stripe(String projectId) {
+        return Math.floorMod(projectId.hashCode(), STRIPES);
+    }
+
+    // ---------- journal records ----------
+    private Document record(String projectId, Project stored, Project content) {
+        Document d = new Document();
+        mongo.getConverter().write(content, d);
+        return new Document("projectId", projectId)
+                .append("userId", stored.getUserId())
+                .append("kind", stored.getKind().name())
+                .append("base", stored.getVersion())
+                .append("storedName", stored.getNormalizedName())
+                .append("content", d);
+    }
+
+    private void recover() {
+        for (Document d : journal.recovered()) {
+            String id = d.getString("projectId");
+            try {
+                Project content = mongo.getConverter().read(Project.class, d.get("content", Document.class));
+                content.setId(id);
+                Project stored = header(d.getString("userId"), ProjectKind.valueOf(d.getString("kind")),
+                        d.getLong("base"), d.getString("storedName"));
+                stored.setCreatedAt(content.getCreatedAt());
+                stored.setThumbnailHash(content.getThumbnailHash());
+                Pending previous = pending.put(id, new Pending(d.getLong("seq"), stored, content));
+                if (previous != null) journal.done(previous.seq());
+            } catch (RuntimeException e) {
+                log.warn("skipped unreadable journaled save of project {}: {}", id, e.getMessage());
+                journal.done(d.getLong("seq"));
+            }
+        }
+        if (!pending.isEmpty()) log.info("recovered {} saves from the journal", pending.size());
+    }
+}
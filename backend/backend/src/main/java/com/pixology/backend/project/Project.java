@@ -3,12 +3,23 @@ package com.pixology.backend.project;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 import java.time.Instant;
 import java.util.List;
+import java.util.Locale;
 
 @Document(collection = "Projects")
+// Library keyset pagination: newest first, _id breaks ties between equal timestamps.
+@CompoundIndex(name = "user_updated", def = "{'userId': 1, 'updatedAt': -1, '_id': -1}")
+@CompoundIndex(name = "user_favorite_updated", def = "{'userId': 1, 'favorite': 1, 'updatedAt': -1, '_id': -1}")
+// Name uniqueness per user (case-insensitive through normalizedName; see ProjectNameMigration).
+@CompoundIndex(name = "user_name_unique", def = "{'userId': 1, 'normalizedName': 1}", unique = true,
+        partialFilter = "{ 'normalizedName': { '$exists': true } }")
+// Frame layers stored in LayerBlobs, by hash; LayerBlobStore.collect asks which are still referenced.
+@CompoundIndex(name = "frame_layer_blobs", def = "{'frames.layers.blob': 1}", sparse = true)
 public class Project {
 
     @Id
@@ -19,6 +30,9 @@ public class Project {
 
     private String name;
 
+    // Lower-cased trimmed name, kept in step by setName; backs the unique name index.
+    private String normalizedName;
+
     private int width;
     private int height;
 
@@ -36,9 +50,21 @@ public class Project {
     private List<AnimationBlock> animations;
 
     // ---------- Common ----------
-    private String previewPng;
+    // Hash of the stored ProjectThumbnail (null when there is none); the bytes live apart.
+    private String thumbnailHash;
     private boolean favorite;
 
+    /**
+     * Content revision, bumped on every save that changes pixels or structure (0 for old docs).
+     * Clients send it back as If-Match; writes only apply while it is unchanged.
+     */
+    @Version
+    private long version;
+
+    // Revision token, not a content hash: a hash of the content on full saves, of the change
+    // (field, element, timestamp) on targeted writes. Moves with every write; in the read ETag.
+    private String revisionTag;
+
     @CreatedDate
     private Instant createdAt;
 
@@ -53,7 +79,15 @@ public class Project {
     public void setUserId(String userId) { this.userId = userId; }
 
     public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
+    public void setName(String name) {
+        this.name = name;
+        this.normalizedName = normalizeName(name);
+    }
+    public String getNormalizedName() { return normalizedName; }
+
+    public static String normalizeName(String name) {
+        return name == null ? null : name.trim().toLowerCase(Locale.ROOT);
+    }
 
     public int getWidth() { return width; }
     public void setWidth(int width) { this.width = width; }
@@ -76,12 +110,18 @@ public class Project {
     public List<AnimationBlock> getAnimations() { return animations; }
     public void setAnimations(List<AnimationBlock> animations) { this.animations = animations; }
 
-    public String getPreviewPng() { return previewPng; }
-    public void setPreviewPng(String previewPng) { this.previewPng = previewPng; }
+    public String getThumbnailHash() { return thumbnailHash; }
+    public void setThumbnailHash(String thumbnailHash) { this.thumbnailHash = thumbnailHash; }
 
     public boolean isFavorite() { return favorite; }
     public void setFavorite(boolean favorite) { this.favorite = favorite; }
 
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
+    public String getRevisionTag() { return revisionTag; }
+    public void setRevisionTag(String revisionTag) { this.revisionTag = revisionTag; }
+
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
 
@@ -0,0 +1,81 @@
+package com.pixology.backend.project;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * In-process cache of full projects (layers or frames) for the detail reads.
+ * An entry is only served for the version it was loaded at, so a write elsewhere can never
+ * be hidden by it; reads still take favorite, thumbnail and timestamps from the validators.
+ * Entries are weighed by their pixel payload, and a project heavier than 1/16 of the budget
+ * is not cached at all, so a few huge animations can't push everything else out.
+ * Hits, misses and evictions are published as cache.* metrics with cache=projects.
+ */
+@Component
+public class ProjectCache {
+
+    private final Cache<String, Project> cache;
+    private final long maxEntryBytes;
+
+    public ProjectCache(@Value("${pixology.cache.projects.max-size:64MB}") DataSize maxSize,
+                        MeterRegistry registry) {
+        long maxBytes = maxSize.toBytes();
+        this.maxEntryBytes = maxBytes / 16;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String id, Project p) -> (int) Math.min(Integer.MAX_VALUE, weigh(p)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "projects");
+    }
+
+    /** The cached project if it is still at version. Callers must not modify it. */
+    public Optional<Project> get(String id, long version) {
+        Project p = cache.getIfPresent(id);
+        return p != null && p.getVersion() == version ? Optional.of(p) : Optional.empty();
+    }
+
+    public void put(Project p) {
+        if (fits(weigh(p))) cache.put(p.getId(), p);
+    }
+
+    public void invalidate(String id) {
+        cache.invalidate(id);
+    }
+
+    /** Whether a project of this many bytes would be admitted; lets streaming reads stop collecting early. */
+    public boolean fits(long bytes) {
+        return bytes <= maxEntryBytes;
+    }
+
+    static long weigh(Project p) {
+        long bytes = 256 + weigh(p.getLayers());
+        if (p.getFrames() != null) for (AnimationFrame f : p.getFrames()) bytes += weigh(f);
+        return bytes;
+    }
+
+    static long weigh(AnimationFrame f) {
+        return 64 + weigh(f.getLayers());
+    }
+
+    private static long weigh(List<ProjectLayer> layers) {
+        if (layers == null) return 0;
+        long bytes = 0;
+        for (ProjectLayer l : layers) {
+            bytes += 64;
+            PackedPixels p = l.getPacked();
+            if (p == null) continue;
+            bytes += p.byteSize();
+            for (String c : p.getPalette()) bytes += 16 + c.length();
+        }
+        return bytes;
+    }
+}
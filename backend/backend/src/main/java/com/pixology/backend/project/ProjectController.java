@@ -1,22 +1,36 @@
 package com.pixology.backend.project;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.pixology.backend.project.dto.*;
 import jakarta.validation.Valid;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.context.annotation.Profile;
 
-import java.util.List;
+import java.io.OutputStream;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/projects")
 public class ProjectController {
 
     private final ProjectService service;
+    private final ObjectMapper mapper;
+    private final ObjectMapper cborMapper;
 
-    public ProjectController(ProjectService service) {
+    public ProjectController(ProjectService service, ObjectMapper mapper, MappingJackson2CborHttpMessageConverter cbor) {
         this.service = service;
+        this.mapper = mapper;
+        this.cborMapper = cbor.getObjectMapper();
     }
 
     // ---------- STATIC ----------
@@ -36,43 +50,77 @@ public class ProjectController {
         }
     }
 
-    // PUT /api/projects/{id}?userId=...
+    // PUT /api/projects/{id}?userId=...   If-Match: "{version}" (or a read ETag) makes it conditional
+    // A commit: written through to Mongo before it is answered (200), else 409 on a stale version or a
+    // taken name, 404/403 for a missing or someone else's project, 503 while Mongo is unreachable.
+    // &autosave=true: journaled only (PendingSaves), 202 with the version it will get once written behind
     @PutMapping("/{id}")
     public ResponseEntity<?> update(@PathVariable String id,
                                     @RequestParam String userId,
+                                    @RequestParam(defaultValue = "false") boolean autosave,
+                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
                                     @Valid @RequestBody SaveProjectRequest req) {
+        if (autosave) {
+            return revision(HttpStatus.ACCEPTED, () -> service.autosave(id, userId, ETags.version(ifMatch), req),
+                    "failed to autosave project");
+        }
         try {
-            ProjectDetailResponse res = service.update(id, userId, req);
+            ProjectDetailResponse res = service.update(id, userId, ETags.version(ifMatch), req);
             return ResponseEntity.ok(res);
-        } catch (DuplicateKeyException e) {
+        } catch (DuplicateKeyException | OptimisticLockingFailureException e) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (IllegalStateException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (StorageUnavailableException e) {
+            return unavailable(e);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("failed to update project");
         }
     }
 
-    // GET /api/projects?userId=...&favorite=true&kind=static|animation
+    // PATCH /api/projects/{id}/pixels?userId=...
+    @PatchMapping("/{id}/pixels")
+    public ResponseEntity<?> patchPixels(@PathVariable String id,
+                                         @RequestParam String userId,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                         @Valid @RequestBody PatchPixelsRequest req) {
+        return revision(() -> service.patchPixels(id, userId, ETags.version(ifMatch), req), "failed to patch project");
+    }
+
+    // GET /api/projects?userId=...&favorite=true&kind=static|animation&cursor=...&size=50
     @GetMapping
     public ResponseEntity<?> list(@RequestParam String userId,
                                   @RequestParam(required = false) Boolean favorite,
-                                  @RequestParam(required = false) String kind) {
+                                  @RequestParam(required = false) String kind,
+                                  @RequestParam(required = false) String cursor,
+                                  @RequestParam(defaultValue = "50") int size) {
         try {
-            List<ProjectSummaryResponse> list = service.listForUser(userId, favorite, kind);
-            return ResponseEntity.ok(list);
+            PagedProjects page = service.pageForUser(userId, favorite, kind, cursor, size);
+            return ResponseEntity.ok(page);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
     // GET /api/projects/{id}?userId=...
+    // ETag from a small projection: an unchanged project is answered 304 without loading it.
     @GetMapping("/{id}")
-    public ResponseEntity<?> getOne(@PathVariable String id, @RequestParam String userId) {
-        return service.getByIdForUser(id, userId)
-                .<ResponseEntity<?>>map(ResponseEntity::ok)
+    public ResponseEntity<?> getOne(@PathVariable String id,
+                                    @RequestParam String userId,
+                                    @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ReadRepresentation rep = ReadRepresentation.of(accept, acceptEncoding);
+        Optional<Project> validators = service.findReadValidators(id, userId, ProjectKind.STATIC);
+        if (validators.isEmpty()) return ResponseEntity.status(HttpStatus.NOT_FOUND).body("project not found");
+        String etag = service.readEtag(validators.get(), rep.tag());
+        if (ETags.matches(ifNoneMatch, etag)) return notModified(etag);
+
+        ObjectMapper m = rep.binary() ? cborMapper : mapper;
+        return service.getByIdForUser(validators.get())
+                .<ResponseEntity<?>>map(detail -> read(rep, etag, out -> m.writeValue(out, detail)))
                 .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body("project not found"));
     }
 
@@ -98,6 +146,8 @@ public class ProjectController {
             return ResponseEntity.ok(res);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (StorageUnavailableException e) {
+            return unavailable(e);
         }
     }
 
@@ -118,42 +168,206 @@ public class ProjectController {
         }
     }
 
-    // PUT /api/projects/animations/{id}?userId=...
+    // PUT /api/projects/animations/{id}?userId=...   (&autosave=true as for static projects)
     @PutMapping("/animations/{id}")
     public ResponseEntity<?> updateAnimation(@PathVariable String id,
                                              @RequestParam String userId,
+                                             @RequestParam(defaultValue = "false") boolean autosave,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
                                              @Valid @RequestBody SaveAnimationRequest req) {
+        if (autosave) {
+            return revision(HttpStatus.ACCEPTED,
+                    () -> service.autosaveAnimation(id, userId, ETags.version(ifMatch), req),
+                    "failed to autosave animation");
+        }
         try {
-            AnimationDetailResponse res = service.updateAnimation(id, userId, req);
+            AnimationDetailResponse res = service.updateAnimation(id, userId, ETags.version(ifMatch), req);
             return ResponseEntity.ok(res);
-        } catch (DuplicateKeyException e) {
+        } catch (DuplicateKeyException | OptimisticLockingFailureException e) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (IllegalStateException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (StorageUnavailableException e) {
+            return unavailable(e);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("failed to update animation");
         }
     }
 
+    // PUT /api/projects/animations/{id}/frames/{frameId}?userId=...  (replace in place or append)
+    @PutMapping("/animations/{id}/frames/{frameId}")
+    public ResponseEntity<?> upsertFrame(@PathVariable String id,
+                                         @PathVariable String frameId,
+                                         @RequestParam String userId,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                         @Valid @RequestBody SaveAnimationRequest.FrameDto req) {
+        return revision(() -> service.upsertFrame(id, userId, frameId, ETags.version(ifMatch), req),
+                "failed to save frame");
+    }
+
+    // DELETE /api/projects/animations/{id}/frames/{frameId}?userId=...
+    @DeleteMapping("/animations/{id}/frames/{frameId}")
+    public ResponseEntity<?> deleteFrame(@PathVariable String id,
+                                         @PathVariable String frameId,
+                                         @RequestParam String userId,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return revision(() -> service.deleteFrame(id, userId, frameId, ETags.version(ifMatch)),
+                "failed to delete frame");
+    }
+
+    // PUT /api/projects/animations/{id}/frame-order?userId=...
+    @PutMapping("/animations/{id}/frame-order")
+    public ResponseEntity<?> reorderFrames(@PathVariable String id,
+                                           @RequestParam String userId,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                           @Valid @RequestBody ReorderRequest req) {
+        return revision(() -> service.reorderFrames(id, userId, ETags.version(ifMatch), req.getIds()),
+                "failed to reorder frames");
+    }
+
+    // PUT /api/projects/animations/{id}/blocks/{blockId}?userId=...  (replace in place or append)
+    @PutMapping("/animations/{id}/blocks/{blockId}")
+    public ResponseEntity<?> upsertBlock(@PathVariable String id,
+                                         @PathVariable String blockId,
+                                         @RequestParam String userId,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                         @Valid @RequestBody SaveAnimationRequest.AnimationBlockDto req) {
+        return revision(() -> service.upsertBlock(id, userId, blockId, ETags.version(ifMatch), req),
+                "failed to save animation");
+    }
+
+    // DELETE /api/projects/animations/{id}/blocks/{blockId}?userId=...
+    @DeleteMapping("/animations/{id}/blocks/{blockId}")
+    public ResponseEntity<?> deleteBlock(@PathVariable String id,
+                                         @PathVariable String blockId,
+                                         @RequestParam String userId,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return revision(() -> service.deleteBlock(id, userId, blockId, ETags.version(ifMatch)),
+                "failed to delete animation");
+    }
+
+    // PUT /api/projects/animations/{id}/block-order?userId=...
+    @PutMapping("/animations/{id}/block-order")
+    public ResponseEntity<?> reorderBlocks(@PathVariable String id,
+                                           @RequestParam String userId,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                           @Valid @RequestBody ReorderRequest req) {
+        return revision(() -> service.reorderBlocks(id, userId, ETags.version(ifMatch), req.getIds()),
+                "failed to reorder animations");
+    }
+
     // GET /api/projects/animations/{id}?userId=...
+    // Same validators as getOne; frames are streamed from a cursor, so large animations never sit in memory whole.
     @GetMapping("/animations/{id}")
-    public ResponseEntity<?> getOneAnimation(@PathVariable String id, @RequestParam String userId) {
-        return service.getAnimationByIdForUser(id, userId)
+    public ResponseEntity<?> getOneAnimation(@PathVariable String id,
+                                             @RequestParam String userId,
+                                             @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ReadRepresentation rep = ReadRepresentation.of(accept, acceptEncoding);
+        Optional<Project> validators = service.findReadValidators(id, userId, ProjectKind.ANIMATION);
+        if (validators.isEmpty()) return ResponseEntity.status(HttpStatus.NOT_FOUND).body("project not found");
+        String etag = service.readEtag(validators.get(), rep.tag());
+        if (ETags.matches(ifNoneMatch, etag)) return notModified(etag);
+
+        return service.findAnimationForRead(validators.get())
+                .<ResponseEntity<?>>map(project -> read(rep, etag,
+                        out -> service.writeAnimationDetail(project, validators.get(), out, rep.binary())))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body("project not found"));
+    }
+
+    // GET /api/projects/animations/{id}/manifest?userId=...
+    // Frame list and blocks without pixels; pair with the per-frame GET below.
+    @GetMapping("/animations/{id}/manifest")
+    public ResponseEntity<?> getAnimationManifest(@PathVariable String id, @RequestParam String userId) {
+        return service.getAnimationManifestForUser(id, userId)
                 .<ResponseEntity<?>>map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body("project not found"));
     }
 
-    // GET /api/projects/animations?userId=...&favorite=true
+    // GET /api/projects/animations/{id}/frames/{frameId}?userId=...
+    @GetMapping("/animations/{id}/frames/{frameId}")
+    public ResponseEntity<?> getFrame(@PathVariable String id,
+                                      @PathVariable String frameId,
+                                      @RequestParam String userId) {
+        return service.getFrameForUser(id, userId, frameId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body("frame not found"));
+    }
+
+    // GET /api/projects/animations?userId=...&favorite=true&cursor=...&size=50
     @GetMapping("/animations")
     public ResponseEntity<?> listAnimations(@RequestParam String userId,
-                                            @RequestParam(required = false) Boolean favorite) {
+                                            @RequestParam(required = false) Boolean favorite,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "50") int size) {
         try {
-            List<ProjectSummaryResponse> list = service.listForUser(userId, favorite, "animation");
-            return ResponseEntity.ok(list);
+            PagedProjects page = service.pageForUser(userId, favorite, "animation", cursor, size);
+            return ResponseEntity.ok(page);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
+
+    // Only reached by the reads: a save acknowledged earlier was rejected on replay (see PendingSaves).
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> conflict(OptimisticLockingFailureException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    // Shared error mapping for the incremental save endpoints.
+    private ResponseEntity<?> revision(Supplier<ProjectRevisionResponse> op, String failure) {
+        return revision(HttpStatus.OK, op, failure);
+    }
+
+    private ResponseEntity<?> revision(HttpStatus success, Supplier<ProjectRevisionResponse> op, String failure) {
+        try {
+            return ResponseEntity.status(success).body(op.get());
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (ProjectNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (StorageUnavailableException e) {
+            return unavailable(e);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(failure);
+        }
+    }
+
+    private static ResponseEntity<?> unavailable(StorageUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(e.getMessage());
+    }
+
+    // Project reads revalidate every time; the ETag makes that a 304 when nothing changed.
+    private static final CacheControl READ_CACHE = CacheControl.noCache().cachePrivate();
+
+    private static ResponseEntity<?> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(READ_CACHE)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .build();
+    }
+
+    private static ResponseEntity<?> read(ReadRepresentation rep, String etag, StreamingResponseBody body) {
+        ResponseEntity.BodyBuilder res = ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(READ_CACHE)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .contentType(rep.mediaType());
+        if (rep.gzip()) res.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return res.body((StreamingResponseBody) out -> {
+            try (OutputStream o = rep.wrap(out)) {
+                body.writeTo(o);
+            }
+        });
+    }
 }
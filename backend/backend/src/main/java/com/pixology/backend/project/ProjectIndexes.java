@@ -0,0 +1,86 @@
+package com.pixology.backend.project;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Creates the indexes declared on {@link Project} and {@link LayerBlob} (auto index creation is
+ * off in Boot). Versions and names are backfilled first: conditional writes match version
+ * exactly, and the unique name index must build over old documents.
+ *
+ * Name uniqueness rests on that index alone, so by default it is built on the startup thread,
+ * before the web server takes requests, and startup fails if it cannot be. With
+ * pixology.indexes.required=false (no Atlas, as in tests) startup goes on without it and
+ * retry() tries again every retry-interval until it is built.
+ */
+@Component
+public class ProjectIndexes implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(ProjectIndexes.class);
+
+    private final MongoTemplate mongo;
+    private final MongoMappingContext mappingContext;
+    private final ProjectNameMigration names;
+    private final ProjectVersionMigration versions;
+    private final boolean required;
+    private volatile boolean built;
+
+    public ProjectIndexes(MongoTemplate mongo, MongoMappingContext mappingContext, ProjectNameMigration names,
+                          ProjectVersionMigration versions,
+                          @Value("${pixology.indexes.required:true}") boolean required) {
+        this.mongo = mongo;
+        this.mappingContext = mappingContext;
+        this.names = names;
+        this.versions = versions;
+        this.required = required;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!required) return; // the first retry() runs once the scheduler starts
+        try {
+            ensureIndexes();
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("could not build the project indexes; "
+                    + "project names would not be kept unique", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pixology.indexes.retry-interval:PT1M}")
+    public void retry() {
+        if (built) return;
+        try {
+            ensureIndexes();
+        } catch (RuntimeException e) {
+            log.warn("could not build the project indexes, retrying: {}", e.getMessage());
+        }
+    }
+
+    boolean isBuilt() {
+        return built;
+    }
+
+    synchronized void ensureIndexes() {
+        if (built) return;
+        versions.backfill();
+        names.backfill();
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        for (Class<?> type : List.of(Project.class, LayerBlob.class)) {
+            IndexOperations ops = mongo.indexOps(type);
+            resolver.resolveIndexFor(type).forEach(ops::createIndex);
+        }
+        built = true;
+        log.info("project indexes are in place");
+    }
+}
@@ -1,6 +1,6 @@
 package com.pixology.backend.project;
 
-import org.springframework.data.mongodb.core.mapping.Field;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import java.util.List;
 
@@ -11,9 +11,17 @@ public class ProjectLayer {
     private boolean visible;
     private boolean locked;
 
-    // Use Lists so Mongo maps cleanly (List<List<String>>)
-    @Field("pixels")
-    private List<List<String>> pixels;
+    // Packed palette indices; the List<List<String>> grid only exists on the JSON boundary.
+    // Persisted through ProjectLayerConverters, which still reads the old "pixels" arrays.
+    private PackedPixels packed;
+
+    // Content hash of the encoded pixels when they are stored apart, in LayerBlobs (frames only).
+    // Read back without packed until LayerBlobStore resolves it.
+    private String blob;
+
+    // Read from the per-tile form (see ProjectLayerConverters), possibly only some tiles of it;
+    // a pixel patch then writes back just packed's dirty tiles.
+    private boolean tiled;
 
     // getters/setters
     public String getId() { return id; }
@@ -28,6 +36,22 @@ public class ProjectLayer {
     public boolean isLocked() { return locked; }
     public void setLocked(boolean locked) { this.locked = locked; }
 
-    public List<List<String>> getPixels() { return pixels; }
-    public void setPixels(List<List<String>> pixels) { this.pixels = pixels; }
+    public List<List<String>> getPixels() { return packed == null ? null : packed.toGrid(); }
+    public void setPixels(List<List<String>> pixels) { this.packed = PackedPixels.fromGrid(pixels); }
+
+    // Only serialized on the binary (CBOR) wire format, see BinaryLayerMixin.
+    @JsonIgnore
+    public byte[] getData() { return packed == null ? null : LayerCodec.encode(packed); }
+
+    @JsonIgnore
+    public PackedPixels getPacked() { return packed; }
+    public void setPacked(PackedPixels packed) { this.packed = packed; }
+
+    @JsonIgnore
+    public String getBlob() { return blob; }
+    public void setBlob(String blob) { this.blob = blob; }
+
+    @JsonIgnore
+    public boolean isTiled() { return tiled; }
+    public void setTiled(boolean tiled) { this.tiled = tiled; }
 }
@@ -0,0 +1,136 @@
+package com.pixology.backend.project;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mongo mapping for {@link ProjectLayer}.
+ * Layers are written as { _id, name, visible, locked, rows, cols, palette, tiles } where
+ * tiles maps "tileRow_tileCol" to the {@link LayerCodec} runs of each non-empty tile, so
+ * the document grows with the drawn area and a pixel patch can $set single tiles; or as
+ * { _id, name, visible, locked, blob } when the encoding lives in LayerBlobs under that hash.
+ * Older documents are still read: { data } holding the whole-layer LayerCodec encoding,
+ * the raw { rows, cols, palette, indexWidth, indices } form and, before that, a "pixels"
+ * array of string rows.
+ */
+public final class ProjectLayerConverters {
+
+    static final String TILES = "tiles";
+
+    private ProjectLayerConverters() {}
+
+    static String tileKey(int tileRow, int tileCol) {
+        return tileRow + "_" + tileCol;
+    }
+
+    static String tileKey(PackedPixels p, int tile) {
+        return tileKey(PackedPixels.tileRow(tile, p.tilesX()), PackedPixels.tileCol(tile, p.tilesX()));
+    }
+
+    // Tile number of a key, or -1 if it isn't one of p's tiles.
+    static int tileOf(PackedPixels p, String key) {
+        int sep = key.indexOf('_');
+        if (sep < 0 || p.tilesX() == 0) return -1;
+        try {
+            int row = Integer.parseInt(key.substring(0, sep));
+            int col = Integer.parseInt(key.substring(sep + 1));
+            int tile = row * p.tilesX() + col;
+            return row < 0 || col < 0 || col >= p.tilesX() || tile >= p.tileCount() ? -1 : tile;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static List<Object> all() {
+        return List.of(new LayerWriter(), new LayerReader());
+    }
+
+    @WritingConverter
+    static class LayerWriter implements Converter<ProjectLayer, Document> {
+        @Override
+        public Document convert(ProjectLayer l) {
+            Document d = new Document();
+            // "_id" keeps the key Spring's default mapping used for embedded ids.
+            d.put("_id", l.getId());
+            d.put("name", l.getName());
+            d.put("visible", l.isVisible());
+            d.put("locked", l.isLocked());
+
+            PackedPixels p = l.getPacked();
+            if (l.getBlob() != null) {
+                d.put("blob", l.getBlob());
+            } else if (p != null) {
+                List<String> palette = new ArrayList<>();
+                int[] remap = LayerCodec.compactPalette(p, palette);
+                Document tiles = new Document();
+                BitSet occupied = p.occupiedTiles();
+                for (int t = occupied.nextSetBit(0); t >= 0; t = occupied.nextSetBit(t + 1)) {
+                    byte[] tile = LayerCodec.encodeTile(p, t, remap);
+                    if (tile != null) tiles.put(tileKey(p, t), new Binary(tile));
+                }
+                d.put("rows", p.getRows());
+                d.put("cols", p.getCols());
+                d.put("palette", palette);
+                d.put(TILES, tiles);
+            }
+            return d;
+        }
+    }
+
+    @ReadingConverter
+    static class LayerReader implements Converter<Document, ProjectLayer> {
+        @Override
+        @SuppressWarnings("unchecked")
+        public ProjectLayer convert(Document d) {
+            ProjectLayer l = new ProjectLayer();
+            Object id = d.containsKey("_id") ? d.get("_id") : d.get("id");
+            l.setId(id == null ? null : id.toString());
+            l.setName(d.getString("name"));
+            l.setVisible(Boolean.TRUE.equals(d.getBoolean("visible")));
+            l.setLocked(Boolean.TRUE.equals(d.getBoolean("locked")));
+
+            if (d.get("blob") instanceof String blob) {
+                l.setBlob(blob); // pixels come from LayerBlobStore.resolve
+            } else if (d.get(TILES) instanceof Document tiles) {
+                l.setPacked(readTiles(d, tiles));
+                l.setTiled(true);
+            } else if (d.get("data") instanceof Binary data) {
+                l.setPacked(LayerCodec.decode(data.getData()));
+            } else if (d.get("indices") instanceof Binary bin) {
+                l.setPacked(PackedPixels.of(
+                        d.getInteger("rows", 0),
+                        d.getInteger("cols", 0),
+                        d.getList("palette", String.class, List.of()),
+                        d.getInteger("indexWidth", 1),
+                        bin.getData()));
+            } else if (d.get("pixels") instanceof List<?> legacy) {
+                l.setPixels((List<List<String>>) legacy);
+            }
+            return l;
+        }
+
+        // A projection may have kept only some of the tiles; the others read as transparent.
+        private static PackedPixels readTiles(Document d, Document tiles) {
+            PackedPixels p = PackedPixels.withPalette(
+                    d.getInteger("rows", 0),
+                    d.getInteger("cols", 0),
+                    d.getList("palette", String.class, List.of()));
+            for (Map.Entry<String, Object> e : tiles.entrySet()) {
+                int tile = tileOf(p, e.getKey());
+                if (tile < 0 || !(e.getValue() instanceof Binary bin))
+                    throw new IllegalArgumentException("corrupt layer tile: " + e.getKey());
+                LayerCodec.decodeTile(p, tile, bin.getData());
+            }
+            p.clearDirty();
+            return p;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.pixology.backend.project;
+
+import com.pixology.backend.project.dto.*;
+import com.pixology.backend.project.thumbnail.ThumbnailService;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.util.StringUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Request validation, DTO mapping and the checks that need no I/O, shared by the
+ * blocking and the reactive project services.
+ */
+final class ProjectMapping {
+
+    static final int MAX_PAGE_SIZE = 200;
+
+    private ProjectMapping() {}
+
+    // ---------- requests -> documents ----------
+    /** A static project built from the request, revision tag included; no id or createdAt. */
+    static Project staticProject(String userId, SaveProjectRequest req, Instant now) {
+        Project p = new Project();
+        p.setKind(ProjectKind.STATIC);
+        p.setUserId(userId);
+        p.setName(req.getName().trim());
+        p.setWidth(req.getWidth());
+        p.setHeight(req.getHeight());
+        p.setSelectedLayerId(req.getSelectedLayerId());
+        p.setLayers(req.getLayers().stream().map(dto -> {
+            ProjectLayer l = new ProjectLayer();
+            l.setId(dto.getId());
+            l.setName(dto.getName());
+            l.setVisible(dto.isVisible());
+            l.setLocked(dto.isLocked());
+            l.setPacked(packLayer(dto.getPixels(), dto.getData(), req.getWidth(), req.getHeight()));
+            return l;
+        }).toList());
+        p.setFrames(null);
+        p.setAnimations(null);
+        p.setFavorite(Boolean.TRUE.equals(req.getFavorite()));
+        p.setUpdatedAt(now);
+
+        p.setRevisionTag(ContentHash.of(p));
+        return p;
+    }
+
+    /** An animation built from the request, revision tag included; no id or createdAt. */
+    static Project animationProject(String userId, SaveAnimationRequest req, Instant now) {
+        Project p = new Project();
+        p.setKind(ProjectKind.ANIMATION);
+        p.setUserId(userId);
+        p.setName(req.getName().trim());
+        p.setWidth(req.getWidth());
+        p.setHeight(req.getHeight());
+        p.setSelectedLayerId(null);
+        p.setLayers(null);
+        p.setFrames(req.getFrames().stream().map(f -> toFrame(f, req.getWidth(), req.getHeight())).toList());
+
+        if (req.getAnimations() != null) {
+            p.setAnimations(req.getAnimations().stream().map(ProjectMapping::toBlock).toList());
+        } else {
+            p.setAnimations(null);
+        }
+
+        p.setFavorite(Boolean.TRUE.equals(req.getFavorite()));
+        p.setUpdatedAt(now);
+
+        p.setRevisionTag(ContentHash.of(p));
+        return p;
+    }
+
+    static ProjectLayer toLayer(SaveAnimationRequest.FrameDto.LayerDto ldto, int width, int height) {
+        ProjectLayer l = new ProjectLayer();
+        l.setId(ldto.getId());
+        l.setName(ldto.getName());
+        l.setVisible(ldto.isVisible());
+        l.setLocked(ldto.isLocked());
+        l.setPacked(packLayer(ldto.getPixels(), ldto.getData(), width, height));
+        return l;
+    }
+
+    // Binary layers skip the per-cell string handling entirely. Either form must be the canvas
+    // size (width x height, bounded by request validation); it is checked before unpacking.
+    static PackedPixels packLayer(List<List<String>> pixels, byte[] data, int width, int height) {
+        if (data != null) return LayerCodec.decode(data, height, width);
+        if (pixels == null) throw new IllegalArgumentException("layer pixels or data is required");
+        int cols = 0;
+        for (List<String> row : pixels) {
+            if (row != null) cols = Math.max(cols, row.size());
+        }
+        LayerCodec.checkSize(pixels.size(), cols, height, width);
+        return PackedPixels.fromGrid(pixels);
+    }
+
+    /** A frame of a width x height canvas. */
+    static AnimationFrame toFrame(SaveAnimationRequest.FrameDto fdto, int width, int height) {
+        AnimationFrame f = new AnimationFrame();
+        f.setId(fdto.getId());
+        f.setName(fdto.getName());
+        f.setSelectedLayerId(fdto.getSelectedLayerId());
+        f.setLayers(fdto.getLayers().stream().map(l -> toLayer(l, width, height)).toList());
+        return f;
+    }
+
+    static AnimationBlock toBlock(SaveAnimationRequest.AnimationBlockDto adto) {
+        AnimationBlock b = new AnimationBlock();
+        b.setId(adto.getId());
+        b.setName(adto.getName());
+        b.setFrames(adto.getFrames());
+        b.setLoopMode(normalizeLoopMode(adto.getLoopMode()));
+        return b;
+    }
+
+    // ---------- validation ----------
+    static void validateProjectPayload(SaveProjectRequest req) {
+        if (!StringUtils.hasText(req.getName())) throw new IllegalArgumentException("name is required");
+        if (req.getWidth() <= 0 || req.getHeight() <= 0) throw new IllegalArgumentException("invalid canvas size");
+        if (req.getLayers() == null || req.getLayers().isEmpty())
+            throw new IllegalArgumentException("at least one layer is required");
+    }
+
+    static void validateAnimationPayload(SaveAnimationRequest req) {
+        if (!StringUtils.hasText(req.getName())) throw new IllegalArgumentException("name is required");
+        if (req.getWidth() <= 0 || req.getHeight() <= 0) throw new IllegalArgumentException("invalid canvas size");
+        if (req.getFrames() == null || req.getFrames().isEmpty())
+            throw new IllegalArgumentException("at least one frame is required");
+        for (SaveAnimationRequest.FrameDto f : req.getFrames()) {
+            if (f.getLayers() == null || f.getLayers().isEmpty())
+                throw new IllegalArgumentException("each frame must have at least one layer");
+        }
+        // Validate loop modes if blocks provided
+        if (req.getAnimations() != null) {
+            for (SaveAnimationRequest.AnimationBlockDto b : req.getAnimations()) {
+                normalizeLoopMode(b.getLoopMode()); // will throw if invalid
+            }
+        }
+    }
+
+    static void validatePermutation(List<String> current, List<String> order, String what) {
+        if (order.size() != current.size() || !new HashSet<>(order).containsAll(current))
+            throw new IllegalArgumentException(what + " order must list every " + what + " id exactly once");
+    }
+
+    // Accepts null/blank -> "forward"; validates allowed values.
+    static String normalizeLoopMode(String loopMode) {
+        String v = (loopMode == null) ? "" : loopMode.trim().toLowerCase();
+        if (v.isEmpty()) return "forward";
+        switch (v) {
+            case "forward":
+            case "backward":
+            case "pingpong":
+                return v;
+            default:
+                throw new IllegalArgumentException("invalid loopMode: " + loopMode);
+        }
+    }
+
+    static ProjectKind parseKind(String s) {
+        if (!StringUtils.hasText(s)) return null;
+        String v = s.trim().toUpperCase();
+        return switch (v) {
+            case "STATIC" -> ProjectKind.STATIC;
+            case "ANIMATION" -> ProjectKind.ANIMATION;
+            default -> throw new IllegalArgumentException("invalid kind");
+        };
+    }
+
+    /** Validated library listing parameters; page counts from 0 and is carried by the cursor. */
+    record LibraryQuery(ProjectKind kind, LibraryCursor after, int page, int size) {
+        /** The total carried in the cursor; -1 when it has to be counted (the first page). */
+        long knownTotal() {
+            return after == null ? -1 : after.total();
+        }
+    }
+
+    static LibraryQuery libraryQuery(String kindStr, String cursor, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) throw new IllegalArgumentException("size must be 1.." + MAX_PAGE_SIZE);
+
+        ProjectKind kind = parseKind(kindStr);
+        LibraryCursor after = StringUtils.hasText(cursor) ? LibraryCursor.decode(cursor) : null;
+        int page = after == null ? 0 : after.page() + 1;
+        return new LibraryQuery(kind, after, page, size);
+    }
+
+    // ---------- checks on loaded projections ----------
+    /** The If-Match version, else the one in the body; a pixel patch needs one of them. */
+    static long patchVersion(Long expectedVersion, PatchPixelsRequest req) {
+        Long expectedOrNull = expectedVersion != null ? expectedVersion : req.getExpectedVersion();
+        if (expectedOrNull == null) throw new IllegalArgumentException("expectedVersion or If-Match is required");
+        return expectedOrNull;
+    }
+
+    /** Keys of the tiles the edits fall in: all of a tiled layer a patch needs to load. */
+    static Set<String> patchTiles(PatchPixelsRequest req) {
+        Set<String> keys = new HashSet<>();
+        for (PatchPixelsRequest.LayerEdits le : req.getLayers()) {
+            for (PatchPixelsRequest.PixelEdit e : le.getEdits()) {
+                keys.add(ProjectLayerConverters.tileKey(
+                        Math.floorDiv(e.getY(), PackedPixels.TILE), Math.floorDiv(e.getX(), PackedPixels.TILE)));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Applies the pixel edits to p (from findLayersById) and returns the touched layers by
+     * array position; throws unless p is the user's static project at expected.
+     */
+    static Map<Integer, ProjectLayer> patchLayers(Project p, String userId, long expected, PatchPixelsRequest req) {
+        if (!p.getUserId().equals(userId)) throw new IllegalStateException("forbidden");
+        if (p.getKind() != null && p.getKind() != ProjectKind.STATIC)
+            throw new IllegalArgumentException("not a static project");
+
+        if (p.getVersion() != expected) {
+            throw new OptimisticLockingFailureException("version conflict, current version is " + p.getVersion());
+        }
+
+        List<ProjectLayer> layers = p.getLayers() == null ? List.of() : p.getLayers();
+        Map<Integer, ProjectLayer> touched = new HashMap<>();
+        for (PatchPixelsRequest.LayerEdits le : req.getLayers()) {
+            int index = indexOfLayer(layers, le.getLayerId());
+            if (index < 0) throw new IllegalArgumentException("layer not found: " + le.getLayerId());
+
+            ProjectLayer layer = layers.get(index);
+            if (layer.getPacked() == null) layer.setPacked(PackedPixels.empty(p.getHeight(), p.getWidth()));
+            for (PatchPixelsRequest.PixelEdit e : le.getEdits()) {
+                layer.getPacked().set(e.getY(), e.getX(), e.getColor());
+            }
+            touched.put(index, layer);
+        }
+        return touched;
+    }
+
+    /** Throws unless s (from findStructureById) is the user's animation, at expectedVersion if given. */
+    static Project ownedAnimationStructure(Project s, String userId, Long expectedVersion) {
+        if (!s.getUserId().equals(userId)) throw new IllegalStateException("forbidden");
+        if (s.getKind() != ProjectKind.ANIMATION) throw new IllegalArgumentException("not an animation project");
+        if (expectedVersion != null && s.getVersion() != expectedVersion) {
+            throw new OptimisticLockingFailureException("version conflict, current version is " + s.getVersion());
+        }
+        return s;
+    }
+
+    /** Validators for an owned project of the given kind; documents without a kind are static. */
+    static boolean isKind(Project p, ProjectKind kind) {
+        return kind == ProjectKind.ANIMATION
+                ? p.getKind() == ProjectKind.ANIMATION
+                : p.getKind() == null || p.getKind() == ProjectKind.STATIC;
+    }
+
+    // Explains why a conditional write matched nothing, from the project's header (null if none).
+    static RuntimeException writeFailure(Project header, String userId, ProjectKind kind, String missingElement) {
+        return writeFailure(header, userId, kind, null, missingElement);
+    }
+
+    // As above for a write conditional on both: a moved-on version is the conflict, not the element.
+    static RuntimeException writeFailure(Project header, String userId, ProjectKind kind, Long expectedVersion,
+                                         String missingElement) {
+        if (header == null) return new ProjectNotFoundException();
+        if (!header.getUserId().equals(userId)) return new IllegalStateException("forbidden");
+        if (kind == ProjectKind.ANIMATION && header.getKind() != ProjectKind.ANIMATION)
+            return new IllegalArgumentException("not an animation project");
+        if (kind == ProjectKind.STATIC && header.getKind() != null && header.getKind() != ProjectKind.STATIC)
+            return new IllegalArgumentException("not a static project");
+        boolean stale = expectedVersion != null && header.getVersion() != expectedVersion;
+        if (missingElement != null && !stale) return new ProjectNotFoundException(missingElement + " not found");
+        return new OptimisticLockingFailureException("version conflict, current version is " + header.getVersion());
+    }
+
+    // ---------- frame and block bookkeeping ----------
+    static List<String> frameIds(Project p) {
+        return p.getFrames() == null ? List.of() : p.getFrames().stream().map(AnimationFrame::getId).toList();
+    }
+
+    static List<String> blockIds(Project p) {
+        return p.getAnimations() == null ? List.of()
+                : p.getAnimations().stream().map(AnimationBlock::getId).toList();
+    }
+
+    // remap[oldIndex] = newIndex, or -1 to drop; out-of-range references are kept as they were.
+    static List<AnimationBlock> remapBlocks(List<AnimationBlock> blocks, int[] remap) {
+        if (blocks == null) return null;
+        for (AnimationBlock b : blocks) {
+            if (b.getFrames() == null) continue;
+            List<Integer> frames = new ArrayList<>();
+            for (Integer i : b.getFrames()) {
+                if (i == null || i < 0 || i >= remap.length) frames.add(i);
+                else if (remap[i] >= 0) frames.add(remap[i]);
+            }
+            b.setFrames(frames);
+        }
+        return blocks;
+    }
+
+    /** remap for deleting frameId: later frames shift down, references to it are dropped. */
+    static int[] removalRemap(List<String> ids, String frameId) {
+        int removed = ids.indexOf(frameId);
+        if (removed < 0) throw new ProjectNotFoundException("frame not found");
+        if (ids.size() == 1) throw new IllegalArgumentException("at least one frame is required");
+
+        int[] remap = new int[ids.size()];
+        for (int i = 0; i < remap.length; i++) remap[i] = i < removed ? i : i == removed ? -1 : i - 1;
+        return remap;
+    }
+
+    /** remap for a validated new frame order. */
+    static int[] reorderRemap(List<String> ids, List<String> order) {
+        int[] remap = new int[ids.size()];
+        for (int i = 0; i < remap.length; i++) remap[i] = order.indexOf(ids.get(i));
+        return remap;
+    }
+
+    static int indexOfLayer(List<ProjectLayer> layers, String layerId) {
+        for (int i = 0; i < layers.size(); i++) {
+            if (layerId.equals(layers.get(i).getId())) return i;
+        }
+        return -1;
+    }
+
+    // ---------- documents -> responses ----------
+    static ProjectRevisionResponse toRevision(Project p) {
+        return new ProjectRevisionResponse(p.getId(), p.getVersion(), p.getUpdatedAt());
+    }
+
+    static ProjectSummaryResponse toSummary(Project p) {
+        return new ProjectSummaryResponse(
+                p.getId(),
+                p.getName(),
+                p.getWidth(),
+                p.getHeight(),
+                p.isFavorite(),
+                ThumbnailService.url(p.getId(), p.getUserId(), p.getThumbnailHash()),
+                p.getThumbnailHash(),
+                p.getUpdatedAt()
+        );
+    }
+
+    /** A library page from up to q.size() + 1 summary rows; the extra row only signals a next page. */
+    static PagedProjects toPage(List<Project> rows, LibraryQuery q, long total) {
+        boolean hasNext = rows.size() > q.size();
+        if (hasNext) rows = rows.subList(0, q.size());
+
+        String next = null;
+        if (hasNext) {
+            Project last = rows.get(rows.size() - 1);
+            next = new LibraryCursor(last.getUpdatedAt(), last.getId(), q.page(), total).encode();
+        }
+        return new PagedProjects(rows.stream().map(ProjectMapping::toSummary).toList(), total, q.page(), q.size(),
+                hasNext, next);
+    }
+
+    /** Strong ETag of a project as read in one representation (format + encoding). */
+    static String readEtag(Project validators, String representation) {
+        return ETags.read(validators.getVersion(), ContentHash.ofParts(validators.getRevisionTag(),
+                validators.isFavorite(), validators.getThumbnailHash(), validators.getUpdatedAt(), representation));
+    }
+
+    static ProjectDetailResponse toDetail(Project p) {
+        return toDetail(p, p);
+    }
+
+    // Content from p; favorite, thumbnail and timestamps from v, which may be fresher
+    // (they change without a version bump).
+    static ProjectDetailResponse toDetail(Project p, Project v) {
+        ProjectDetailResponse r = new ProjectDetailResponse();
+        r.setId(p.getId());
+        r.setName(p.getName());
+        r.setWidth(p.getWidth());
+        r.setHeight(p.getHeight());
+        r.setSelectedLayerId(p.getSelectedLayerId());
+        r.setLayers(p.getLayers());
+        r.setFavorite(v.isFavorite());
+        r.setThumbnailUrl(ThumbnailService.url(p.getId(), p.getUserId(), v.getThumbnailHash()));
+        r.setThumbnailHash(v.getThumbnailHash());
+        r.setVersion(p.getVersion());
+        r.setCreatedAt(p.getCreatedAt());
+        r.setUpdatedAt(v.getUpdatedAt());
+        return r;
+    }
+
+    static AnimationDetailResponse toAnimationDetail(Project p) {
+        return toAnimationDetail(p, p);
+    }
+
+    static AnimationDetailResponse toAnimationDetail(Project p, Project v) {
+        AnimationDetailResponse r = new AnimationDetailResponse();
+        r.setId(p.getId());
+        r.setName(p.getName());
+        r.setWidth(p.getWidth());
+        r.setHeight(p.getHeight());
+        r.setFrames(p.getFrames());
+        r.setAnimations(p.getAnimations()); // includes loopMode now
+        r.setFavorite(v.isFavorite());
+        r.setThumbnailUrl(ThumbnailService.url(p.getId(), p.getUserId(), v.getThumbnailHash()));
+        r.setThumbnailHash(v.getThumbnailHash());
+        r.setVersion(p.getVersion());
+        r.setCreatedAt(p.getCreatedAt());
+        r.setUpdatedAt(v.getUpdatedAt());
+        return r;
+    }
+
+    static AnimationManifestResponse toManifest(Project p) {
+        AnimationManifestResponse r = new AnimationManifestResponse();
+        r.setId(p.getId());
+        r.setName(p.getName());
+        r.setWidth(p.getWidth());
+        r.setHeight(p.getHeight());
+        r.setFrames(p.getFrames() == null ? List.of() : p.getFrames().stream()
+                .map(f -> new AnimationManifestResponse.FrameInfo(f.getId(), f.getName(), f.getSelectedLayerId()))
+                .toList());
+        r.setAnimations(p.getAnimations());
+        r.setFavorite(p.isFavorite());
+        r.setThumbnailUrl(ThumbnailService.url(p.getId(), p.getUserId(), p.getThumbnailHash()));
+        r.setThumbnailHash(p.getThumbnailHash());
+        r.setVersion(p.getVersion());
+        r.setCreatedAt(p.getCreatedAt());
+        r.setUpdatedAt(p.getUpdatedAt());
+        return r;
+    }
+}
@@ -0,0 +1,112 @@
+package com.pixology.backend.project;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Makes project names unique per user, ignoring case, so the unique name index can be built.
+ * This renames user data: of the projects whose names differ only by case, the oldest keeps its
+ * name and the later ones become "name (2)", "name (3)", ... Every rename is logged with the
+ * project id and its old and new name.
+ *
+ * First normalizedName is filled in for projects saved before it existed; then projects that
+ * already share a normalizedName (saved by an instance running before the index existed) are
+ * renamed the same way. Runs from ProjectIndexes before the index is built. Idempotent: a
+ * rerun finds nothing to do. Throws if Mongo fails, leaving the rest for the next run.
+ */
+@Component
+public class ProjectNameMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(ProjectNameMigration.class);
+
+    private final MongoTemplate mongo;
+
+    public ProjectNameMigration(MongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    void backfill() {
+        String collection = mongo.getCollectionName(Project.class);
+        int migrated = 0;
+        int renamed = 0;
+
+        Query q = Query.query(where("normalizedName").exists(false).and("name").type(2)) // 2 = string
+                .with(Sort.by("createdAt", "_id"));
+        q.fields().include("_id", "userId", "name");
+        try (Stream<Document> docs = mongo.stream(q, Document.class, collection)) {
+            for (Document d : (Iterable<Document>) docs::iterator) {
+                // Only documents nobody has saved (and so normalized) in the meantime.
+                Criteria unchanged = where("normalizedName").exists(false).and("name").is(d.getString("name"));
+                Boolean changed = rename(collection, d, unchanged);
+                if (changed == null) continue;
+                migrated++;
+                if (changed) renamed++;
+            }
+        }
+
+        // Later duplicates of an already normalized name; the first id of each group is the oldest.
+        Aggregation duplicates = Aggregation.newAggregation(
+                Aggregation.match(where("normalizedName").exists(true)),
+                Aggregation.sort(Sort.by("createdAt", "_id")),
+                Aggregation.group("userId", "normalizedName").push("_id").as("ids").count().as("count"),
+                Aggregation.match(where("count").gt(1)));
+        for (Document group : mongo.aggregate(duplicates, collection, Document.class)) {
+            List<?> ids = group.getList("ids", Object.class);
+            for (Object id : ids.subList(1, ids.size())) {
+                Query one = Query.query(where("_id").is(id));
+                one.fields().include("_id", "userId", "name", "normalizedName");
+                Document d = mongo.findOne(one, Document.class, collection);
+                if (d == null) continue;
+                Criteria unchanged = where("normalizedName").is(d.getString("normalizedName"));
+                if (Boolean.TRUE.equals(rename(collection, d, unchanged))) renamed++;
+            }
+        }
+
+        if (migrated > 0 || renamed > 0) {
+            log.info("normalized {} project names, renamed {} duplicates", migrated, renamed);
+        }
+    }
+
+    /**
+     * Gives the project d the first of name, "name (2)", ... that no other project of its owner
+     * has, if it still matches unchanged. Returns whether it was renamed, or null if it no
+     * longer matched.
+     */
+    private Boolean rename(String collection, Document d, Criteria unchanged) {
+        Object id = d.get("_id");
+        String userId = d.getString("userId");
+        String name = d.getString("name");
+
+        String candidate = name;
+        for (int n = 2; taken(collection, userId, Project.normalizeName(candidate), id); n++) {
+            candidate = name.trim() + " (" + n + ")";
+        }
+
+        Query still = Query.query(where("_id").is(id)).addCriteria(unchanged);
+        Update u = new Update().set("name", candidate).set("normalizedName", Project.normalizeName(candidate));
+        if (mongo.updateFirst(still, u, collection).getModifiedCount() != 1) return null;
+        if (candidate.equals(name)) return false;
+        log.info("renamed project {} of user {} from \"{}\" to \"{}\": an older project has that name",
+                id, userId, name, candidate);
+        return true;
+    }
+
+    // Point lookup on (userId, normalizedName).
+    private boolean taken(String collection, String userId, String normalizedName, Object self) {
+        return mongo.exists(Query.query(where("userId").is(userId).and("normalizedName").is(normalizedName)
+                .and("_id").ne(self)), collection);
+    }
+}
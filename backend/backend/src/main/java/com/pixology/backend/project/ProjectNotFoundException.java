@@ -0,0 +1,15 @@
+package com.pixology.backend.project;
+
+/**
+ * Missing project, or a missing frame/block inside one.
+ * An IllegalArgumentException so existing handlers keep mapping it to 404.
+ */
+public class ProjectNotFoundException extends IllegalArgumentException {
+    public ProjectNotFoundException() {
+        super("project not found");
+    }
+
+    public ProjectNotFoundException(String message) {
+        super(message);
+    }
+}
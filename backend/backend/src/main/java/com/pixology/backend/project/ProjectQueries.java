@@ -0,0 +1,282 @@
+package com.pixology.backend.project;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.data.util.TypeInformation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * The queries and updates behind ProjectRepositoryCustom, built once for both the blocking
+ * repository and the reactive store. Embedded frame/block/layer ids are stored under "_id",
+ * so raw paths below use that key.
+ */
+final class ProjectQueries {
+
+    static final int FRAME_BATCH = 4;
+
+    /** A conditional write: the update applies to the first document matching query. */
+    record Write(Query query, UpdateDefinition update) {}
+
+    private ProjectQueries() {}
+
+    // ---------- reads ----------
+    static Query summaries(String userId, Boolean favorite, ProjectKind kind, LibraryCursor after, int limit) {
+        Criteria c = libraryCriteria(userId, favorite, kind);
+        if (after != null) {
+            c.orOperator(
+                    where("updatedAt").lt(after.updatedAt()),
+                    where("updatedAt").is(after.updatedAt()).and("_id").lt(after.id()));
+        }
+
+        Query q = Query.query(c)
+                .with(Sort.by(Sort.Direction.DESC, "updatedAt", "_id"))
+                .limit(limit);
+        q.fields().include("name", "width", "height", "kind", "favorite", "userId", "thumbnailHash", "updatedAt");
+        return q;
+    }
+
+    static Query library(String userId, Boolean favorite, ProjectKind kind) {
+        return Query.query(libraryCriteria(userId, favorite, kind));
+    }
+
+    // Canvas size included: a frame sent on its own is checked against it.
+    static Query header(String id) {
+        Query q = Query.query(where("_id").is(id));
+        q.fields().include("userId", "kind", "version", "normalizedName", "createdAt", "thumbnailHash",
+                "width", "height");
+        return q;
+    }
+
+    // Of the tiled layers only the given tiles are loaded; layers in an older form come whole.
+    static Query layers(String id, Collection<String> tileKeys) {
+        Query q = Query.query(where("_id").is(id));
+        q.fields().include("userId", "kind", "version", "width", "height",
+                "layers._id", "layers.name", "layers.visible", "layers.locked", "layers.rows", "layers.cols",
+                "layers.palette", "layers.data", "layers.indexWidth", "layers.indices", "layers.pixels");
+        for (String key : tileKeys) q.fields().include("layers." + ProjectLayerConverters.TILES + "." + key);
+        return q;
+    }
+
+    static Query structure(String id) {
+        Query q = Query.query(where("_id").is(id));
+        q.fields().include("userId", "kind", "version", "frames._id", "animations");
+        return q;
+    }
+
+    static Query validators(String id, String userId) {
+        Query q = Query.query(where("_id").is(id).and("userId").is(userId));
+        q.fields().include("userId", "kind", "version", "revisionTag", "favorite", "thumbnailHash", "updatedAt");
+        return q;
+    }
+
+    static Query owned(String id, String userId) {
+        return Query.query(where("_id").is(id).and("userId").is(userId));
+    }
+
+    static Query withoutFrames(String id) {
+        Query q = Query.query(where("_id").is(id));
+        q.fields().exclude("frames");
+        return q;
+    }
+
+    static Query manifest(String id, String userId) {
+        Query q = ownedAnimation(id, userId);
+        q.fields().exclude("frames.layers");
+        return q;
+    }
+
+    // $elemMatch returns just the matching frame; the other frames never leave the server.
+    static Query frame(String id, String userId, String frameId) {
+        Query q = ownedAnimation(id, userId);
+        q.fields().include("_id").elemMatch("frames", where("_id").is(frameId));
+        return q;
+    }
+
+    /** The frame a frame(...) query found, or null. */
+    static AnimationFrame firstFrame(Project p) {
+        if (p == null || p.getFrames() == null || p.getFrames().isEmpty()) return null;
+        return p.getFrames().get(0);
+    }
+
+    // Small batches keep at most a handful of frames in client memory at once.
+    static Aggregation frames(String id) {
+        return Aggregation.newAggregation(Project.class,
+                        Aggregation.match(where("_id").is(id)),
+                        Aggregation.project("frames").andExclude("_id"),
+                        Aggregation.unwind("frames"),
+                        Aggregation.replaceRoot("frames"))
+                .withOptions(AggregationOptions.builder().cursorBatchSize(FRAME_BATCH).build());
+    }
+
+    // ---------- writes ----------
+    static Write replaceContent(MongoConverter converter, String id, String userId, ProjectKind kind,
+                                Long expectedVersion, Project content) {
+        Query q = Query.query(where("_id").is(id).and("userId").is(userId).and("kind").in(kind, null));
+        if (expectedVersion != null) q.addCriteria(versionIs(expectedVersion));
+
+        Update u = new Update()
+                .set("kind", kind)
+                .set("name", content.getName())
+                .set("normalizedName", content.getNormalizedName())
+                .set("width", content.getWidth())
+                .set("height", content.getHeight())
+                .set("favorite", content.isFavorite())
+                .set("revisionTag", content.getRevisionTag())
+                .set("updatedAt", content.getUpdatedAt())
+                .inc("version", 1);
+        setOrUnset(u, "selectedLayerId", content.getSelectedLayerId());
+        setOrUnset(u, "layers", content.getLayers() == null ? null
+                : toMongo(converter, content.getLayers(), List.class));
+        setOrUnset(u, "frames", content.getFrames() == null ? null
+                : toMongo(converter, content.getFrames(), List.class));
+        setOrUnset(u, "animations", content.getAnimations() == null ? null
+                : toMongo(converter, content.getAnimations(), List.class));
+
+        q.fields().include("createdAt", "thumbnailHash");
+        return new Write(q, u);
+    }
+
+    static Write setFavorite(String id, String userId, boolean favorite, Instant updatedAt) {
+        Query q = owned(id, userId);
+        q.fields().include("userId", "name", "width", "height", "favorite", "thumbnailHash");
+        return new Write(q, new Update().set("favorite", favorite).set("updatedAt", updatedAt));
+    }
+
+    static Write setLayers(MongoConverter converter, String id, String userId, long expectedVersion,
+                           Map<Integer, ProjectLayer> layers, Instant updatedAt) {
+        Query q = Query.query(where("_id").is(id).and("userId").is(userId)).addCriteria(versionIs(expectedVersion));
+
+        Update u = new Update();
+        layers.forEach((index, layer) -> {
+            String path = "layers." + index;
+            PackedPixels p = layer.getPacked();
+            if (!layer.isTiled() || p == null) {
+                u.set(path, toMongo(converter, layer, ProjectLayer.class));
+                return;
+            }
+            // Just the tiles the edits wrote. The palette only grows, so the other tiles' indices hold.
+            u.set(path + ".palette", new ArrayList<>(p.getPalette()));
+            BitSet dirty = p.dirtyTiles();
+            for (int t = dirty.nextSetBit(0); t >= 0; t = dirty.nextSetBit(t + 1)) {
+                String tile = path + "." + ProjectLayerConverters.TILES + "." + ProjectLayerConverters.tileKey(p, t);
+                byte[] data = LayerCodec.encodeTile(p, t, null);
+                if (data == null) u.unset(tile);
+                else u.set(tile, new Binary(data));
+            }
+        });
+        u.inc("version", 1).set("updatedAt", updatedAt)
+                .set("revisionTag", ContentHash.ofParts("layers", layers.keySet(), expectedVersion, updatedAt));
+        return new Write(q, u);
+    }
+
+    /** Replaces the element with elementId in place; matches nothing if there is none. */
+    static Write replaceElement(Object doc, String id, String userId, String arrayField, String elementId,
+                                Long expectedVersion, Instant updatedAt) {
+        Query existing = ownedAnimation(id, userId).addCriteria(where(arrayField + "._id").is(elementId));
+        if (expectedVersion != null) existing.addCriteria(versionIs(expectedVersion));
+        Update replace = new Update().set(arrayField + ".$", doc).inc("version", 1).set("updatedAt", updatedAt)
+                .set("revisionTag", upsertTag(arrayField, elementId, updatedAt));
+        return new Write(existing, replace);
+    }
+
+    /** Appends the element; matches nothing if one with elementId is already there. */
+    static Write appendElement(Object doc, String id, String userId, String arrayField, String elementId,
+                               Long expectedVersion, Instant updatedAt) {
+        Query absent = ownedAnimation(id, userId).addCriteria(where(arrayField + "._id").ne(elementId));
+        if (expectedVersion != null) absent.addCriteria(versionIs(expectedVersion));
+        Update append = new Update().push(arrayField, doc).inc("version", 1).set("updatedAt", updatedAt)
+                .set("revisionTag", upsertTag(arrayField, elementId, updatedAt));
+        return new Write(absent, append);
+    }
+
+    static Write removeElement(MongoConverter converter, String id, String userId, String arrayField,
+                               String elementId, Long expectedVersion, List<AnimationBlock> blocks,
+                               Instant updatedAt) {
+        Query q = ownedAnimation(id, userId).addCriteria(where(arrayField + "._id").is(elementId));
+        if (expectedVersion != null) q.addCriteria(versionIs(expectedVersion));
+
+        Update u = new Update().pull(arrayField, new Document("_id", elementId))
+                .inc("version", 1).set("updatedAt", updatedAt)
+                .set("revisionTag", ContentHash.ofParts(arrayField, elementId, "remove", updatedAt));
+        if (blocks != null) u.set("animations", toMongo(converter, blocks, List.class));
+        return new Write(q, u);
+    }
+
+    static Write reorderElements(MongoConverter converter, String id, String userId, String arrayField,
+                                 List<String> order, long expectedVersion, List<AnimationBlock> blocks,
+                                 Instant updatedAt) {
+        Query q = ownedAnimation(id, userId).addCriteria(versionIs(expectedVersion));
+
+        // { $map: { input: order, as: "eid", in: { $arrayElemAt: [ "$arr", { $indexOfArray: [ "$arr._id", "$$eid" ] } ] } } }
+        Document reordered = new Document("$map", new Document("input", new Document("$literal", order))
+                .append("as", "eid")
+                .append("in", new Document("$arrayElemAt", List.of("$" + arrayField,
+                        new Document("$indexOfArray", List.of("$" + arrayField + "._id", "$$eid"))))));
+
+        Document set = new Document(arrayField, reordered)
+                .append("version", new Document("$add", List.of(new Document("$ifNull", List.of("$version", 0L)), 1L)))
+                .append("updatedAt", updatedAt)
+                .append("revisionTag", ContentHash.ofParts(arrayField, order, "reorder", updatedAt));
+        if (blocks != null) set.append("animations", new Document("$literal", toMongo(converter, blocks, List.class)));
+
+        return new Write(q, AggregationUpdate.from(List.of(Aggregation.stage(new Document("$set", set)))));
+    }
+
+    /**
+     * The query of a findAndModify, projected to what every caller reads back. Writes go
+     * through the raw collection: for a Project.class update the template adds its own
+     * @Version $inc, on top of ours (pipeline updates don't tell it which keys they touch).
+     */
+    static Query returningRevision(Query q) {
+        q.fields().include("version", "updatedAt");
+        return q;
+    }
+
+    static Object toMongo(MongoConverter converter, Object value, Class<?> type) {
+        return converter.convertToMongoType(value, TypeInformation.of(type));
+    }
+
+    private static String upsertTag(String arrayField, String elementId, Instant updatedAt) {
+        return ContentHash.ofParts(arrayField, elementId, "upsert", updatedAt);
+    }
+
+    private static void setOrUnset(Update u, String key, Object value) {
+        if (value == null) u.unset(key);
+        else u.set(key, value);
+    }
+
+    private static Criteria libraryCriteria(String userId, Boolean favorite, ProjectKind kind) {
+        Criteria c = where("userId").is(userId);
+        if (favorite != null) c.and("favorite").is(favorite);
+        if (kind == ProjectKind.STATIC) c.and("kind").in(ProjectKind.STATIC, null);
+        else if (kind != null) c.and("kind").is(kind);
+        return c;
+    }
+
+    private static Query ownedAnimation(String id, String userId) {
+        return Query.query(where("_id").is(id).and("userId").is(userId).and("kind").is(ProjectKind.ANIMATION));
+    }
+
+    // Exact: a document without the field matches no version. ProjectVersionMigration gives
+    // the ones saved before versioning version 0 at startup.
+    static Criteria versionIs(long version) {
+        return where("version").is(version);
+    }
+}
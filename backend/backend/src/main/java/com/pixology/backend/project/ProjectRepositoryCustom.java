@@ -0,0 +1,100 @@
+package com.pixology.backend.project;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/** Targeted Mongo operations that must not load or rewrite the whole document. */
+public interface ProjectRepositoryCustom {
+
+    /**
+     * One library page: only the fields a ProjectSummaryResponse needs, ordered by
+     * (updatedAt, _id) descending and starting strictly after the cursor (null = first page).
+     * favorite and kind are optional filters; documents without a kind count as STATIC.
+     */
+    List<Project> findSummaries(String userId, Boolean favorite, ProjectKind kind, LibraryCursor after, int limit);
+
+    long countSummaries(String userId, Boolean favorite, ProjectKind kind);
+
+    /** Owner, kind, version, name, creation time and thumbnail hash only. */
+    Optional<Project> findHeaderById(String id);
+
+    /**
+     * Owner, kind, version, size and static layers only (no frames, no preview). Of layers
+     * stored per tile only the listed tiles are read (see ProjectMapping.patchTiles), so the
+     * layers are fit for setLayers but not for display.
+     */
+    Optional<Project> findLayersById(String id, Collection<String> tiles);
+
+    /** Owner, kind, version, frame ids and animation blocks (no frame pixels). */
+    Optional<Project> findStructureById(String id);
+
+    /** The fields a read ETag is built from, for an owned project; no content is loaded. */
+    Optional<Project> findValidatorsById(String id, String userId);
+
+    /** Every field except frames. */
+    Optional<Project> findWithoutFramesById(String id);
+
+    /** An owned animation with frame id/name/selectedLayerId only (no layers). */
+    Optional<Project> findManifestById(String id, String userId);
+
+    /** A single frame of an owned animation, or empty if the project or frame does not exist. */
+    Optional<AnimationFrame> findFrameById(String id, String userId, String frameId);
+
+    /**
+     * The project's frames in order, fetched from a server-side cursor a few at a time.
+     * The stream holds the cursor open and must be closed.
+     */
+    Stream<AnimationFrame> streamFrames(String id);
+
+    /**
+     * Overwrites the content of an owned project whose kind is kind (or unset) in a single
+     * findAndModify, bumping version. Guarded by expectedVersion when it is non-null.
+     * Returns version, createdAt, updatedAt and thumbnailHash as stored, or empty if nothing matched.
+     */
+    Optional<Project> replaceContent(String id, String userId, ProjectKind kind, Long expectedVersion,
+                                     Project content);
+
+    /**
+     * Sets favorite and updatedAt on an owned project in one findAndModify; returns the
+     * summary fields only, or empty. No content is read or written.
+     */
+    Optional<Project> setFavorite(String id, String userId, boolean favorite, Instant updatedAt);
+
+    /** Deletes an owned project with a single deleteOne on _id and userId; false if there was none. */
+    boolean deleteOwned(String id, String userId);
+
+    /**
+     * $set the given layers by array position, bump version and updatedAt.
+     * Applies only if the project is still at expectedVersion; returns false otherwise.
+     */
+    boolean setLayers(String id, String userId, long expectedVersion,
+                      Map<Integer, ProjectLayer> layers, Instant updatedAt);
+
+    /**
+     * Replaces the element of an animation array ("frames" or "animations") with the same id
+     * through the positional operator, or appends it if there is none. Guarded by
+     * expectedVersion when it is non-null.
+     * Returns the new version/updatedAt, or empty if no owned animation matched.
+     */
+    Optional<Project> upsertAnimationElement(String id, String userId, String arrayField, String elementId,
+                                             Object element, Long expectedVersion, Instant updatedAt);
+
+    /**
+     * $pull the element with elementId from an animation array. When blocks is non-null the
+     * animation blocks are replaced in the same update (frame indices shift on frame removal).
+     * Guarded by expectedVersion when it is non-null.
+     */
+    Optional<Project> removeAnimationElement(String id, String userId, String arrayField, String elementId,
+                                             Long expectedVersion, List<AnimationBlock> blocks, Instant updatedAt);
+
+    /**
+     * Reorders an animation array server-side by element id, so pixel data never leaves Mongo.
+     * order must list every current id exactly once. Guarded by expectedVersion.
+     */
+    Optional<Project> reorderAnimationElements(String id, String userId, String arrayField, List<String> order,
+                                               long expectedVersion, List<AnimationBlock> blocks, Instant updatedAt);
+}
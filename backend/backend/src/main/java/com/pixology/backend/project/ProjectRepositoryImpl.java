@@ -0,0 +1,132 @@
+package com.pixology.backend.project;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// Queries and updates come from ProjectQueries; the reactive store runs the same ones.
+class ProjectRepositoryImpl implements ProjectRepositoryCustom {
+
+    private final MongoTemplate mongo;
+
+    ProjectRepositoryImpl(MongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    @Override
+    public List<Project> findSummaries(String userId, Boolean favorite, ProjectKind kind, LibraryCursor after, int limit) {
+        return mongo.find(ProjectQueries.summaries(userId, favorite, kind, after, limit), Project.class);
+    }
+
+    @Override
+    public long countSummaries(String userId, Boolean favorite, ProjectKind kind) {
+        return mongo.count(ProjectQueries.library(userId, favorite, kind), Project.class);
+    }
+
+    @Override
+    public Optional<Project> findHeaderById(String id) {
+        return Optional.ofNullable(mongo.findOne(ProjectQueries.header(id), Project.class));
+    }
+
+    @Override
+    public Optional<Project> findLayersById(String id, Collection<String> tiles) {
+        return Optional.ofNullable(mongo.findOne(ProjectQueries.layers(id, tiles), Project.class));
+    }
+
+    @Override
+    public Optional<Project> findStructureById(String id) {
+        return Optional.ofNullable(mongo.findOne(ProjectQueries.structure(id), Project.class));
+    }
+
+    @Override
+    public Optional<Project> findValidatorsById(String id, String userId) {
+        return Optional.ofNullable(mongo.findOne(ProjectQueries.validators(id, userId), Project.class));
+    }
+
+    @Override
+    public Optional<Project> findWithoutFramesById(String id) {
+        return Optional.ofNullable(mongo.findOne(ProjectQueries.withoutFrames(id), Project.class));
+    }
+
+    @Override
+    public Optional<Project> findManifestById(String id, String userId) {
+        return Optional.ofNullable(mongo.findOne(ProjectQueries.manifest(id, userId), Project.class));
+    }
+
+    @Override
+    public Optional<AnimationFrame> findFrameById(String id, String userId, String frameId) {
+        Project p = mongo.findOne(ProjectQueries.frame(id, userId, frameId), Project.class);
+        return Optional.ofNullable(ProjectQueries.firstFrame(p));
+    }
+
+    @Override
+    public Stream<AnimationFrame> streamFrames(String id) {
+        return mongo.aggregateStream(ProjectQueries.frames(id), mongo.getCollectionName(Project.class),
+                AnimationFrame.class);
+    }
+
+    @Override
+    public Optional<Project> replaceContent(String id, String userId, ProjectKind kind, Long expectedVersion,
+                                            Project content) {
+        return Optional.ofNullable(modify(ProjectQueries.replaceContent(mongo.getConverter(), id, userId, kind,
+                expectedVersion, content)));
+    }
+
+    @Override
+    public Optional<Project> setFavorite(String id, String userId, boolean favorite, Instant updatedAt) {
+        return Optional.ofNullable(modify(ProjectQueries.setFavorite(id, userId, favorite, updatedAt)));
+    }
+
+    @Override
+    public boolean deleteOwned(String id, String userId) {
+        return mongo.remove(ProjectQueries.owned(id, userId), Project.class).getDeletedCount() == 1;
+    }
+
+    @Override
+    public boolean setLayers(String id, String userId, long expectedVersion,
+                             Map<Integer, ProjectLayer> layers, Instant updatedAt) {
+        ProjectQueries.Write w = ProjectQueries.setLayers(mongo.getConverter(), id, userId, expectedVersion,
+                layers, updatedAt);
+        return mongo.updateFirst(w.query(), w.update(), Project.class).getModifiedCount() == 1;
+    }
+
+    @Override
+    public Optional<Project> upsertAnimationElement(String id, String userId, String arrayField, String elementId,
+                                                    Object element, Long expectedVersion, Instant updatedAt) {
+        Object doc = ProjectQueries.toMongo(mongo.getConverter(), element, element.getClass());
+
+        Project res = modify(ProjectQueries.replaceElement(doc, id, userId, arrayField, elementId,
+                expectedVersion, updatedAt));
+        if (res != null) return Optional.of(res);
+
+        return Optional.ofNullable(modify(ProjectQueries.appendElement(doc, id, userId, arrayField, elementId,
+                expectedVersion, updatedAt)));
+    }
+
+    @Override
+    public Optional<Project> removeAnimationElement(String id, String userId, String arrayField, String elementId,
+                                                    Long expectedVersion, List<AnimationBlock> blocks, Instant updatedAt) {
+        return Optional.ofNullable(modify(ProjectQueries.removeElement(mongo.getConverter(), id, userId, arrayField,
+                elementId, expectedVersion, blocks, updatedAt)));
+    }
+
+    @Override
+    public Optional<Project> reorderAnimationElements(String id, String userId, String arrayField, List<String> order,
+                                                      long expectedVersion, List<AnimationBlock> blocks, Instant updatedAt) {
+        return Optional.ofNullable(modify(ProjectQueries.reorderElements(mongo.getConverter(), id, userId, arrayField,
+                order, expectedVersion, blocks, updatedAt)));
+    }
+
+    private Project modify(ProjectQueries.Write w) {
+        Document res = mongo.findAndModify(ProjectQueries.returningRevision(w.query()), w.update(),
+                FindAndModifyOptions.options().returnNew(true), Document.class, mongo.getCollectionName(Project.class));
+        return res == null ? null : mongo.getConverter().read(Project.class, res);
+    }
+}
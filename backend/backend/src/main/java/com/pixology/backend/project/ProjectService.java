@@ -1,361 +1,405 @@
 package com.pixology.backend.project;
 
 import com.pixology.backend.project.dto.*;
-import com.pixology.backend.user.UserRepository;
+import com.pixology.backend.project.thumbnail.ThumbnailGenerator;
+import com.pixology.backend.project.thumbnail.ThumbnailService;
+import com.pixology.backend.user.UserExistenceCache;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 public class ProjectService {
 
     private final ProjectRepository repo;
-    private final UserRepository userRepo;
-
-    public ProjectService(ProjectRepository repo, UserRepository userRepo) {
+    private final UserExistenceCache knownUsers;
+    private final ThumbnailService thumbnails;
+    private final ThumbnailGenerator thumbnailGenerator;
+    private final AnimationDetailWriter detailWriter;
+    private final ProjectCache cache;
+    private final LayerBlobStore blobs;
+    private final PendingSaves saves;
+
+    public ProjectService(ProjectRepository repo, UserExistenceCache knownUsers,
+                          ThumbnailService thumbnails, ThumbnailGenerator thumbnailGenerator,
+                          AnimationDetailWriter detailWriter, ProjectCache cache, LayerBlobStore blobs,
+                          PendingSaves saves) {
         this.repo = repo;
-        this.userRepo = userRepo;
+        this.knownUsers = knownUsers;
+        this.thumbnails = thumbnails;
+        this.thumbnailGenerator = thumbnailGenerator;
+        this.detailWriter = detailWriter;
+        this.cache = cache;
+        this.blobs = blobs;
+        this.saves = saves;
     }
 
     // ---------- STATIC ----------
     public ProjectDetailResponse create(String userId, SaveProjectRequest req) {
         validateUser(userId);
-        validateProjectPayload(req);
+        ProjectMapping.validateProjectPayload(req);
+
+        Instant now = Instant.now();
+        Project p = ProjectMapping.staticProject(userId, req, now);
+        p.setCreatedAt(now);
+        Project saved = uniqueName(() -> repo.save(p));
+        thumbnailGenerator.refresh(saved.getId());
+        return ProjectMapping.toDetail(saved);
+    }
 
-        if (repo.existsByUserIdAndNameIgnoreCase(userId, req.getName().trim())) {
-            throw new DuplicateKeyException("project name already exists");
-        }
+    // A commit: in Mongo before it is answered (one conditional findAndModify, after any pending
+    // autosave), so a taken name or a stale version answers 409 here. expectedVersion (from If-Match) is optional.
+    public ProjectDetailResponse update(String projectId, String userId, Long expectedVersion,
+                                        SaveProjectRequest req) {
+        validateUser(userId);
+        ProjectMapping.validateProjectPayload(req);
 
-        Project p = new Project();
-        p.setKind(ProjectKind.STATIC);
-        p.setUserId(userId);
-        p.setName(req.getName().trim());
-        p.setWidth(req.getWidth());
-        p.setHeight(req.getHeight());
-        p.setSelectedLayerId(req.getSelectedLayerId());
-        p.setLayers(req.getLayers().stream().map(dto -> {
-            ProjectLayer l = new ProjectLayer();
-            l.setId(dto.getId());
-            l.setName(dto.getName());
-            l.setVisible(dto.isVisible());
-            l.setLocked(dto.isLocked());
-            l.setPixels(dto.getPixels());
-            return l;
-        }).toList());
-        p.setFrames(null);
-        p.setAnimations(null);
-        p.setPreviewPng(normalizeDataUrl(req.getPreviewPng()));
-        p.setFavorite(Boolean.TRUE.equals(req.getFavorite()));
-        p.setCreatedAt(Instant.now());
-        p.setUpdatedAt(Instant.now());
-
-        Project saved = repo.save(p);
-        return toDetail(saved);
+        Project p = ProjectMapping.staticProject(userId, req, Instant.now());
+        p.setId(projectId);
+        replaceContent(p, expectedVersion);
+        return ProjectMapping.toDetail(p);
     }
 
-    public ProjectDetailResponse update(String projectId, String userId, SaveProjectRequest req) {
+    // Acknowledged once journaled; PendingSaves writes the latest one to Mongo within its
+    // autosave interval, and a commit or any other write of the project flushes it first.
+    public ProjectRevisionResponse autosave(String projectId, String userId, Long expectedVersion,
+                                            SaveProjectRequest req) {
         validateUser(userId);
-        validateProjectPayload(req);
+        ProjectMapping.validateProjectPayload(req);
 
-        Project p = repo.findById(projectId)
-                .orElseThrow(() -> new IllegalArgumentException("project not found"));
-        if (!p.getUserId().equals(userId)) throw new IllegalStateException("forbidden");
-        if (p.getKind() != null && p.getKind() != ProjectKind.STATIC)
-            throw new IllegalArgumentException("not a static project");
+        Project p = ProjectMapping.staticProject(userId, req, Instant.now());
+        p.setId(projectId);
+        saves.save(userId, expectedVersion, p);
+        return new ProjectRevisionResponse(projectId, p.getVersion(), p.getUpdatedAt());
+    }
 
-        if (!p.getName().equalsIgnoreCase(req.getName().trim())
-                && repo.existsByUserIdAndNameIgnoreCase(userId, req.getName().trim())) {
-            throw new DuplicateKeyException("project name already exists");
-        }
+    // Applies sparse pixel edits with targeted $set on the touched layers only.
+    // expectedVersion comes from If-Match, or else from the request body; one of them is required.
+    public ProjectRevisionResponse patchPixels(String projectId, String userId, Long expectedVersion,
+                                               PatchPixelsRequest req) {
+        validateUser(userId);
+        saves.flush(projectId);
+        long expected = ProjectMapping.patchVersion(expectedVersion, req);
+
+        Project p = repo.findLayersById(projectId, ProjectMapping.patchTiles(req)).orElseThrow(ProjectNotFoundException::new);
+        Map<Integer, ProjectLayer> touched = ProjectMapping.patchLayers(p, userId, expected, req);
 
-        p.setKind(ProjectKind.STATIC);
-        p.setName(req.getName().trim());
-        p.setWidth(req.getWidth());
-        p.setHeight(req.getHeight());
-        p.setSelectedLayerId(req.getSelectedLayerId());
-        p.setLayers(req.getLayers().stream().map(dto -> {
-            ProjectLayer l = new ProjectLayer();
-            l.setId(dto.getId());
-            l.setName(dto.getName());
-            l.setVisible(dto.isVisible());
-            l.setLocked(dto.isLocked());
-            l.setPixels(dto.getPixels());
-            return l;
-        }).toList());
-        p.setFrames(null);
-        p.setAnimations(null);
-        p.setPreviewPng(normalizeDataUrl(req.getPreviewPng()));
-        p.setFavorite(Boolean.TRUE.equals(req.getFavorite()));
-        p.setUpdatedAt(Instant.now());
-
-        return toDetail(repo.save(p));
+        Instant now = Instant.now();
+        if (!repo.setLayers(projectId, userId, expected, touched, now)) {
+            throw writeFailure(projectId, userId, ProjectKind.STATIC, null);
+        }
+        thumbnailGenerator.refresh(projectId);
+        return new ProjectRevisionResponse(projectId, expected + 1, now);
     }
 
     // ---------- ANIMATION ----------
     public AnimationDetailResponse createAnimation(String userId, SaveAnimationRequest req) {
         validateUser(userId);
-        validateAnimationPayload(req);
+        ProjectMapping.validateAnimationPayload(req);
+
+        Instant now = Instant.now();
+        Project p = ProjectMapping.animationProject(userId, req, now);
+        p.setCreatedAt(now);
+        blobs.store(p.getFrames());
+        Project saved = uniqueName(() -> repo.save(p));
+        thumbnailGenerator.refresh(saved.getId());
+        return ProjectMapping.toAnimationDetail(saved);
+    }
 
-        if (repo.existsByUserIdAndNameIgnoreCase(userId, req.getName().trim())) {
-            throw new DuplicateKeyException("project name already exists");
-        }
+    public AnimationDetailResponse updateAnimation(String projectId, String userId, Long expectedVersion,
+                                                   SaveAnimationRequest req) {
+        validateUser(userId);
+        ProjectMapping.validateAnimationPayload(req);
 
-        Project p = new Project();
-        p.setKind(ProjectKind.ANIMATION);
-        p.setUserId(userId);
-        p.setName(req.getName().trim());
-        p.setWidth(req.getWidth());
-        p.setHeight(req.getHeight());
-        p.setSelectedLayerId(null);
-        p.setLayers(null);
-        p.setFrames(req.getFrames().stream().map(fdto -> {
-            AnimationFrame f = new AnimationFrame();
-            f.setId(fdto.getId());
-            f.setName(fdto.getName());
-            f.setSelectedLayerId(fdto.getSelectedLayerId());
-            f.setLayers(fdto.getLayers().stream().map(ldto -> {
-                ProjectLayer l = new ProjectLayer();
-                l.setId(ldto.getId());
-                l.setName(ldto.getName());
-                l.setVisible(ldto.isVisible());
-                l.setLocked(ldto.isLocked());
-                l.setPixels(ldto.getPixels());
-                return l;
-            }).toList());
-            return f;
-        }).toList());
-
-        if (req.getAnimations() != null) {
-            p.setAnimations(req.getAnimations().stream().map(adto -> {
-                AnimationBlock b = new AnimationBlock();
-                b.setId(adto.getId());
-                b.setName(adto.getName());
-                b.setFrames(adto.getFrames());
-                // NEW: loopMode
-                b.setLoopMode(normalizeLoopMode(adto.getLoopMode()));
-                return b;
-            }).toList());
-        } else {
-            p.setAnimations(null);
-        }
+        Project p = ProjectMapping.animationProject(userId, req, Instant.now());
+        p.setId(projectId);
+        blobs.store(p.getFrames());
+        replaceContent(p, expectedVersion);
+        return ProjectMapping.toAnimationDetail(p);
+    }
 
-        p.setPreviewPng(normalizeDataUrl(req.getPreviewPng()));
-        p.setFavorite(Boolean.TRUE.equals(req.getFavorite()));
-        p.setCreatedAt(Instant.now());
-        p.setUpdatedAt(Instant.now());
+    public ProjectRevisionResponse autosaveAnimation(String projectId, String userId, Long expectedVersion,
+                                                     SaveAnimationRequest req) {
+        validateUser(userId);
+        ProjectMapping.validateAnimationPayload(req);
 
-        Project saved = repo.save(p);
-        return toAnimationDetail(saved);
+        Project p = ProjectMapping.animationProject(userId, req, Instant.now());
+        p.setId(projectId);
+        saves.save(userId, expectedVersion, p);
+        return new ProjectRevisionResponse(projectId, p.getVersion(), p.getUpdatedAt());
     }
 
-    public AnimationDetailResponse updateAnimation(String projectId, String userId, SaveAnimationRequest req) {
-        validateUser(userId);
-        validateAnimationPayload(req);
+    // Writes p's content over the stored project and fills in what the store owns.
+    // A pending save goes first, so an If-Match of the version it was acknowledged with holds;
+    // one rejected on replay is reported instead of being overwritten unseen.
+    private void replaceContent(Project p, Long expectedVersion) {
+        saves.flush(p.getId());
+        saves.checkRejected(p.getId(), p.getUserId());
+        cache.invalidate(p.getId());
+        Project stored = uniqueName(() ->
+                        repo.replaceContent(p.getId(), p.getUserId(), p.getKind(), expectedVersion, p))
+                .orElseThrow(() -> writeFailure(p.getId(), p.getUserId(), p.getKind(), null));
+        p.setVersion(stored.getVersion());
+        p.setCreatedAt(stored.getCreatedAt());
+        p.setThumbnailHash(stored.getThumbnailHash());
+        thumbnailGenerator.refresh(p.getId());
+    }
 
-        Project p = repo.findById(projectId)
-                .orElseThrow(() -> new IllegalArgumentException("project not found"));
-        if (!p.getUserId().equals(userId)) throw new IllegalStateException("forbidden");
-        if (p.getKind() != null && p.getKind() != ProjectKind.ANIMATION)
-            throw new IllegalArgumentException("not an animation project");
+    // ---------- ANIMATION incremental saves ----------
+    public ProjectRevisionResponse upsertFrame(String projectId, String userId, String frameId,
+                                               Long expectedVersion, SaveAnimationRequest.FrameDto dto) {
+        validateUser(userId);
+        saves.flush(projectId);
+        if (!frameId.equals(dto.getId())) throw new IllegalArgumentException("frame id does not match path");
+
+        Project canvas = repo.findHeaderById(projectId).orElseThrow(ProjectNotFoundException::new);
+        AnimationFrame frame = ProjectMapping.toFrame(dto, canvas.getWidth(), canvas.getHeight());
+        blobs.store(List.of(frame));
+        ProjectRevisionResponse r = repo.upsertAnimationElement(projectId, userId, "frames", frameId,
+                        frame, expectedVersion, Instant.now())
+                .map(ProjectMapping::toRevision)
+                .orElseThrow(() -> writeFailure(projectId, userId, ProjectKind.ANIMATION, null));
+        thumbnailGenerator.refresh(projectId); // the first frame may have changed
+        return r;
+    }
 
-        if (!p.getName().equalsIgnoreCase(req.getName().trim())
-                && repo.existsByUserIdAndNameIgnoreCase(userId, req.getName().trim())) {
-            throw new DuplicateKeyException("project name already exists");
-        }
+    public ProjectRevisionResponse deleteFrame(String projectId, String userId, String frameId, Long expectedVersion) {
+        validateUser(userId);
+        saves.flush(projectId);
+        Project s = loadOwnedAnimationStructure(projectId, userId, expectedVersion);
 
-        p.setKind(ProjectKind.ANIMATION);
-        p.setName(req.getName().trim());
-        p.setWidth(req.getWidth());
-        p.setHeight(req.getHeight());
-        p.setSelectedLayerId(null);
-        p.setLayers(null);
-        p.setFrames(req.getFrames().stream().map(fdto -> {
-            AnimationFrame f = new AnimationFrame();
-            f.setId(fdto.getId());
-            f.setName(fdto.getName());
-            f.setSelectedLayerId(fdto.getSelectedLayerId());
-            f.setLayers(fdto.getLayers().stream().map(ldto -> {
-                ProjectLayer l = new ProjectLayer();
-                l.setId(ldto.getId());
-                l.setName(ldto.getName());
-                l.setVisible(ldto.isVisible());
-                l.setLocked(ldto.isLocked());
-                l.setPixels(ldto.getPixels());
-                return l;
-            }).toList());
-            return f;
-        }).toList());
-
-        if (req.getAnimations() != null) {
-            p.setAnimations(req.getAnimations().stream().map(adto -> {
-                AnimationBlock b = new AnimationBlock();
-                b.setId(adto.getId());
-                b.setName(adto.getName());
-                b.setFrames(adto.getFrames());
-                // NEW: loopMode
-                b.setLoopMode(normalizeLoopMode(adto.getLoopMode()));
-                return b;
-            }).toList());
-        } else {
-            p.setAnimations(null);
-        }
+        // Frames after the removed one shift down; block references to it are dropped.
+        int[] remap = ProjectMapping.removalRemap(ProjectMapping.frameIds(s), frameId);
 
-        p.setPreviewPng(normalizeDataUrl(req.getPreviewPng()));
-        p.setFavorite(Boolean.TRUE.equals(req.getFavorite()));
-        p.setUpdatedAt(Instant.now());
+        ProjectRevisionResponse r = repo.removeAnimationElement(projectId, userId, "frames", frameId, s.getVersion(),
+                        ProjectMapping.remapBlocks(s.getAnimations(), remap), Instant.now())
+                .map(ProjectMapping::toRevision)
+                .orElseThrow(() -> writeFailure(projectId, userId, ProjectKind.ANIMATION, null));
+        thumbnailGenerator.refresh(projectId);
+        return r;
+    }
 
-        return toAnimationDetail(repo.save(p));
+    public ProjectRevisionResponse reorderFrames(String projectId, String userId, Long expectedVersion,
+                                                 List<String> order) {
+        validateUser(userId);
+        saves.flush(projectId);
+        Project s = loadOwnedAnimationStructure(projectId, userId, expectedVersion);
+
+        List<String> ids = ProjectMapping.frameIds(s);
+        ProjectMapping.validatePermutation(ids, order, "frame");
+        int[] remap = ProjectMapping.reorderRemap(ids, order);
+
+        ProjectRevisionResponse r = repo.reorderAnimationElements(projectId, userId, "frames", order, s.getVersion(),
+                        ProjectMapping.remapBlocks(s.getAnimations(), remap), Instant.now())
+                .map(ProjectMapping::toRevision)
+                .orElseThrow(() -> writeFailure(projectId, userId, ProjectKind.ANIMATION, null));
+        thumbnailGenerator.refresh(projectId);
+        return r;
     }
 
-    public Optional<AnimationDetailResponse> getAnimationByIdForUser(String id, String userId) {
-        return repo.findByIdAndUserId(id, userId)
-                .filter(p -> (p.getKind() == ProjectKind.ANIMATION))
-                .map(this::toAnimationDetail);
+    public ProjectRevisionResponse upsertBlock(String projectId, String userId, String blockId,
+                                               Long expectedVersion, SaveAnimationRequest.AnimationBlockDto dto) {
+        validateUser(userId);
+        saves.flush(projectId);
+        if (!blockId.equals(dto.getId())) throw new IllegalArgumentException("animation id does not match path");
+
+        return repo.upsertAnimationElement(projectId, userId, "animations", blockId, ProjectMapping.toBlock(dto),
+                        expectedVersion, Instant.now())
+                .map(ProjectMapping::toRevision)
+                .orElseThrow(() -> writeFailure(projectId, userId, ProjectKind.ANIMATION, null));
     }
 
-    // ---------- SHARED list/get/delete/favorite ----------
-    public List<ProjectSummaryResponse> listForUser(String userId, Boolean favorite) {
-        return listForUser(userId, favorite, null);
+    public ProjectRevisionResponse deleteBlock(String projectId, String userId, String blockId, Long expectedVersion) {
+        validateUser(userId);
+        saves.flush(projectId);
+
+        return repo.removeAnimationElement(projectId, userId, "animations", blockId, expectedVersion, null,
+                        Instant.now())
+                .map(ProjectMapping::toRevision)
+                .orElseThrow(() -> ProjectMapping.writeFailure(repo.findHeaderById(projectId).orElse(null), userId,
+                        ProjectKind.ANIMATION, expectedVersion, "animation"));
     }
 
-    public List<ProjectSummaryResponse> listForUser(String userId, Boolean favorite, String kindStr) {
+    public ProjectRevisionResponse reorderBlocks(String projectId, String userId, Long expectedVersion,
+                                                 List<String> order) {
         validateUser(userId);
+        saves.flush(projectId);
+        Project s = loadOwnedAnimationStructure(projectId, userId, expectedVersion);
 
-        ProjectKind kindFilter = parseKind(kindStr);
-        List<Project> rows = (favorite == null)
-                ? repo.findAllByUserIdOrderByUpdatedAtDesc(userId)
-                : repo.findAllByUserIdAndFavoriteOrderByUpdatedAtDesc(userId, favorite);
+        ProjectMapping.validatePermutation(ProjectMapping.blockIds(s), order, "animation");
 
-        if (kindFilter != null) {
-            rows = rows.stream()
-                    .filter(p -> (p.getKind() == null ? ProjectKind.STATIC : p.getKind()) == kindFilter)
-                    .toList();
-        }
-        return rows.stream().map(this::toSummary).toList();
+        return repo.reorderAnimationElements(projectId, userId, "animations", order, s.getVersion(), null, Instant.now())
+                .map(ProjectMapping::toRevision)
+                .orElseThrow(() -> writeFailure(projectId, userId, ProjectKind.ANIMATION, null));
     }
 
-    public Optional<ProjectDetailResponse> getByIdForUser(String id, String userId) {
-        return repo.findByIdAndUserId(id, userId)
-                .filter(p -> (p.getKind() == null || p.getKind() == ProjectKind.STATIC))
-                .map(this::toDetail);
+    /**
+     * The animation to answer a detail read with: the cached project when it holds this
+     * version, else everything but frames (those follow through writeAnimationDetail).
+     */
+    public Optional<Project> findAnimationForRead(Project validators) {
+        Optional<Project> pending = pendingAt(validators);
+        if (pending.isPresent()) return pending;
+        Optional<Project> cached = cache.get(validators.getId(), validators.getVersion());
+        if (cached.isPresent()) return cached;
+        return repo.findWithoutFramesById(validators.getId())
+                .filter(p -> validators.getUserId().equals(p.getUserId()) && p.getKind() == ProjectKind.ANIMATION);
     }
 
-    public void deleteForUser(String id, String userId) {
-        Project p = repo.findByIdAndUserId(id, userId)
-                .orElseThrow(() -> new IllegalArgumentException("project not found"));
-        repo.delete(p);
+    /**
+     * Writes the project from findAnimationForRead as one AnimationDetailResponse document
+     * (CBOR when binary). Without cached frames they come from a cursor, kept aside as they
+     * pass so that a small enough animation lands in the cache afterwards.
+     */
+    public void writeAnimationDetail(Project project, Project validators, OutputStream out, boolean binary)
+            throws IOException {
+        AnimationDetailResponse header = ProjectMapping.toAnimationDetail(project, validators);
+        header.setFrames(null); // written separately below
+        if (project.getFrames() != null) {
+            detailWriter.write(header, project.getFrames().stream(), out, binary);
+            return;
+        }
+
+        List<AnimationFrame> seen = new ArrayList<>();
+        long[] bytes = {ProjectCache.weigh(project)};
+        try (Stream<AnimationFrame> frames = blobs.resolveInBatches(repo.streamFrames(project.getId()))) {
+            detailWriter.write(header, frames.peek(f -> {
+                if (bytes[0] < 0) return;
+                bytes[0] += ProjectCache.weigh(f);
+                if (cache.fits(bytes[0])) {
+                    seen.add(f);
+                } else {
+                    bytes[0] = -1; // too big to cache; stop holding on to frames
+                    seen.clear();
+                }
+            }), out, binary);
+        }
+        // The cursor is no snapshot: a write racing it bumps the version, so the entry
+        // is at worst never served.
+        if (bytes[0] >= 0) {
+            project.setFrames(seen);
+            cache.put(project);
+        }
     }
 
-    public ProjectSummaryResponse setFavorite(String id, String userId, boolean favorite) {
-        Project p = repo.findByIdAndUserId(id, userId)
-                .orElseThrow(() -> new IllegalArgumentException("project not found"));
-        p.setFavorite(favorite);
-        p.setUpdatedAt(Instant.now());
-        return toSummary(repo.save(p));
+    public Optional<AnimationManifestResponse> getAnimationManifestForUser(String id, String userId) {
+        Optional<Project> pending = pendingFor(id, userId, ProjectKind.ANIMATION);
+        if (pending.isPresent()) return pending.map(ProjectMapping::toManifest);
+        return repo.findManifestById(id, userId).map(ProjectMapping::toManifest);
     }
 
-    // ---------- validators & helpers ----------
-    private void validateUser(String userId) {
-        if (!StringUtils.hasText(userId)) throw new IllegalArgumentException("userId is required");
-        if (!userRepo.existsById(userId)) throw new IllegalArgumentException("user not found");
+    public Optional<AnimationFrame> getFrameForUser(String id, String userId, String frameId) {
+        Optional<Project> pending = pendingFor(id, userId, ProjectKind.ANIMATION);
+        if (pending.isPresent()) {
+            return pending.get().getFrames().stream().filter(f -> frameId.equals(f.getId())).findFirst();
+        }
+        Optional<AnimationFrame> frame = repo.findFrameById(id, userId, frameId);
+        frame.ifPresent(blobs::resolve);
+        return frame;
     }
 
-    private void validateProjectPayload(SaveProjectRequest req) {
-        if (!StringUtils.hasText(req.getName())) throw new IllegalArgumentException("name is required");
-        if (req.getWidth() <= 0 || req.getHeight() <= 0) throw new IllegalArgumentException("invalid canvas size");
-        if (req.getLayers() == null || req.getLayers().isEmpty())
-            throw new IllegalArgumentException("at least one layer is required");
+    // ---------- SHARED list/get/delete/favorite ----------
+    public PagedProjects pageForUser(String userId, Boolean favorite, String kindStr, String cursor, int size) {
+        validateUser(userId);
+        ProjectMapping.LibraryQuery q = ProjectMapping.libraryQuery(kindStr, cursor, size);
+
+        // One extra row tells us whether another page exists. Only the first page counts;
+        // later ones take the total from the cursor.
+        List<Project> rows = repo.findSummaries(userId, favorite, q.kind(), q.after(), size + 1);
+        long total = q.knownTotal() >= 0 ? q.knownTotal() : repo.countSummaries(userId, favorite, q.kind());
+        return ProjectMapping.toPage(rows, q, total);
     }
 
-    private void validateAnimationPayload(SaveAnimationRequest req) {
-        if (!StringUtils.hasText(req.getName())) throw new IllegalArgumentException("name is required");
-        if (req.getWidth() <= 0 || req.getHeight() <= 0) throw new IllegalArgumentException("invalid canvas size");
-        if (req.getFrames() == null || req.getFrames().isEmpty())
-            throw new IllegalArgumentException("at least one frame is required");
-        for (SaveAnimationRequest.FrameDto f : req.getFrames()) {
-            if (f.getLayers() == null || f.getLayers().isEmpty())
-                throw new IllegalArgumentException("each frame must have at least one layer");
-        }
-        // Validate loop modes if blocks provided
-        if (req.getAnimations() != null) {
-            for (SaveAnimationRequest.AnimationBlockDto b : req.getAnimations()) {
-                normalizeLoopMode(b.getLoopMode()); // will throw if invalid
-            }
-        }
+    /**
+     * Version, revision tag and the other fields a read ETag is built from, for an owned
+     * project of the given kind; empty if there is none. One _id lookup, no content; none at
+     * all while a save of the project is pending, whose content carries them.
+     */
+    public Optional<Project> findReadValidators(String id, String userId, ProjectKind kind) {
+        Optional<Project> pending = pendingFor(id, userId, kind);
+        if (pending.isPresent()) return pending;
+        return repo.findValidatorsById(id, userId).filter(p -> ProjectMapping.isKind(p, kind));
     }
 
-    private String normalizeDataUrl(String s) {
-        if (s == null) return null;
-        return s.trim();
+    /** Strong ETag of a project as read in one representation (format + encoding). */
+    public String readEtag(Project validators, String representation) {
+        return ProjectMapping.readEtag(validators, representation);
     }
 
-    private ProjectKind parseKind(String s) {
-        if (!StringUtils.hasText(s)) return null;
-        String v = s.trim().toUpperCase();
-        return switch (v) {
-            case "STATIC" -> ProjectKind.STATIC;
-            case "ANIMATION" -> ProjectKind.ANIMATION;
-            default -> throw new IllegalArgumentException("invalid kind");
-        };
+    public Optional<ProjectDetailResponse> getByIdForUser(Project validators) {
+        Optional<Project> pending = pendingAt(validators);
+        if (pending.isPresent()) return Optional.of(ProjectMapping.toDetail(pending.get(), validators));
+        Optional<Project> cached = cache.get(validators.getId(), validators.getVersion());
+        if (cached.isPresent()) return Optional.of(ProjectMapping.toDetail(cached.get(), validators));
+
+        return repo.findByIdAndUserId(validators.getId(), validators.getUserId())
+                .filter(p -> ProjectMapping.isKind(p, ProjectKind.STATIC))
+                .map(p -> {
+                    cache.put(p);
+                    return ProjectMapping.toDetail(p, validators);
+                });
     }
 
-    private ProjectSummaryResponse toSummary(Project p) {
-        return new ProjectSummaryResponse(
-                p.getId(),
-                p.getName(),
-                p.getWidth(),
-                p.getHeight(),
-                p.isFavorite(),
-                p.getPreviewPng(),
-                p.getUpdatedAt()
-        );
+    // Neither path loads the project: one deleteOne / one projected findAndModify on _id and userId.
+    public void deleteForUser(String id, String userId) {
+        if (!repo.deleteOwned(id, userId)) throw new ProjectNotFoundException();
+        saves.discard(id);
+        cache.invalidate(id);
+        thumbnails.delete(id);
     }
 
-    private ProjectDetailResponse toDetail(Project p) {
-        ProjectDetailResponse r = new ProjectDetailResponse();
-        r.setId(p.getId());
-        r.setName(p.getName());
-        r.setWidth(p.getWidth());
-        r.setHeight(p.getHeight());
-        r.setSelectedLayerId(p.getSelectedLayerId());
-        r.setLayers(p.getLayers());
-        r.setFavorite(p.isFavorite());
-        r.setPreviewPng(p.getPreviewPng());
-        r.setCreatedAt(p.getCreatedAt());
-        r.setUpdatedAt(p.getUpdatedAt());
-        return r;
+    // The cached content stays valid: version is unchanged, and reads take favorite from the validators.
+    public ProjectSummaryResponse setFavorite(String id, String userId, boolean favorite) {
+        saves.flush(id); // a later replay would write its favorite over this one
+        return repo.setFavorite(id, userId, favorite, Instant.now())
+                .map(ProjectMapping::toSummary)
+                .orElseThrow(ProjectNotFoundException::new);
     }
 
-    private AnimationDetailResponse toAnimationDetail(Project p) {
-        AnimationDetailResponse r = new AnimationDetailResponse();
-        r.setId(p.getId());
-        r.setName(p.getName());
-        r.setWidth(p.getWidth());
-        r.setHeight(p.getHeight());
-        r.setFrames(p.getFrames());
-        r.setAnimations(p.getAnimations()); // includes loopMode now
-        r.setFavorite(p.isFavorite());
-        r.setPreviewPng(p.getPreviewPng());
-        r.setCreatedAt(p.getCreatedAt());
-        r.setUpdatedAt(p.getUpdatedAt());
-        return r;
+    // ---------- validators & helpers ----------
+    // Reads are answered from a pending save, so a user sees their latest save before Mongo has it;
+    // one whose replay was rejected is reported here first (409) rather than read around.
+    private Optional<Project> pendingFor(String id, String userId, ProjectKind kind) {
+        saves.checkRejected(id, userId);
+        return saves.pending(id).filter(p -> p.getUserId().equals(userId) && ProjectMapping.isKind(p, kind));
+    }
+
+    // The pending save, if it is still the one the validators came from.
+    private Optional<Project> pendingAt(Project validators) {
+        return saves.pending(validators.getId()).filter(p -> p.getVersion() == validators.getVersion());
     }
 
-    // Accepts null/blank -> "forward"; validates allowed values.
-    private String normalizeLoopMode(String loopMode) {
-        String v = (loopMode == null) ? "" : loopMode.trim().toLowerCase();
-        if (v.isEmpty()) return "forward";
-        switch (v) {
-            case "forward":
-            case "backward":
-            case "pingpong":
-                return v;
-            default:
-                throw new IllegalArgumentException("invalid loopMode: " + loopMode);
+    // The unique (userId, normalizedName) index is the name check; no lookup before the write.
+    private static <T> T uniqueName(Supplier<T> write) {
+        try {
+            return write.get();
+        } catch (DuplicateKeyException e) {
+            throw new DuplicateKeyException("project name already exists", e);
         }
     }
+
+    private void validateUser(String userId) {
+        if (!StringUtils.hasText(userId)) throw new IllegalArgumentException("userId is required");
+        if (!knownUsers.exists(userId)) throw new IllegalArgumentException("user not found");
+    }
+
+    private Project loadOwnedAnimationStructure(String projectId, String userId, Long expectedVersion) {
+        Project s = repo.findStructureById(projectId).orElseThrow(ProjectNotFoundException::new);
+        return ProjectMapping.ownedAnimationStructure(s, userId, expectedVersion);
+    }
+
+    // Explains why a conditional write matched nothing; only hit on the failure path.
+    private RuntimeException writeFailure(String projectId, String userId, ProjectKind kind, String missingElement) {
+        return ProjectMapping.writeFailure(repo.findHeaderById(projectId).orElse(null), userId, kind, missingElement);
+    }
 }
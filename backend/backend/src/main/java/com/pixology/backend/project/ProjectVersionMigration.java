@@ -0,0 +1,41 @@
+package com.pixology.backend.project;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Sets version 0 on projects saved before versioning, so conditional writes can match the
+ * field exactly (ProjectQueries.versionIs) rather than also matching documents without it,
+ * and moves the revision token from its old field, contentHash, to revisionTag so the read
+ * ETags of untouched projects stay the same. Runs from ProjectIndexes; idempotent. Through the collection name, so the template does not
+ * add its own version increment to the update.
+ */
+@Component
+public class ProjectVersionMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(ProjectVersionMigration.class);
+
+    private final MongoTemplate mongo;
+
+    public ProjectVersionMigration(MongoTemplate mongo) {
+        this.mongo = mongo;
+    }
+
+    /** Throws if Mongo fails; ProjectIndexes decides whether startup goes on. */
+    void backfill() {
+        long n = mongo.updateMulti(Query.query(where("version").exists(false)),
+                new Update().set("version", 0L), mongo.getCollectionName(Project.class)).getModifiedCount();
+        if (n > 0) log.info("set version 0 on {} projects saved before versioning", n);
+
+        long moved = mongo.updateMulti(Query.query(where("contentHash").exists(true)),
+                new Update().rename("contentHash", "revisionTag"), mongo.getCollectionName(Project.class))
+                .getModifiedCount();
+        if (moved > 0) log.info("moved contentHash to revisionTag on {} projects", moved);
+    }
+}
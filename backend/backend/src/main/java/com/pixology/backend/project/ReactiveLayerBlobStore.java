@@ -0,0 +1,66 @@
+package com.pixology.backend.project;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/** LayerBlobStore's store and resolve on the reactive driver; shares its cache of decoded blobs. */
+@Component
+@Profile("reactive")
+class ReactiveLayerBlobStore {
+
+    private final ReactiveMongoTemplate mongo;
+    private final LayerBlobStore blobs;
+
+    ReactiveLayerBlobStore(ReactiveMongoTemplate mongo, LayerBlobStore blobs) {
+        this.mongo = mongo;
+        this.blobs = blobs;
+    }
+
+    /** See LayerBlobStore.store. */
+    Mono<Void> store(Collection<AnimationFrame> frames) {
+        return Mono.defer(() -> {
+            Map<String, byte[]> pending = LayerBlobs.externalize(frames);
+            if (pending.isEmpty()) return Mono.empty();
+
+            Instant now = Instant.now();
+            return mongo.updateMulti(LayerBlobs.ids(pending.keySet()), LayerBlobs.touch(now), LayerBlob.class)
+                    .thenMany(mongo.find(LayerBlobs.existing(pending.keySet()), LayerBlob.class))
+                    .map(LayerBlob::getId)
+                    .collect(Collectors.toSet())
+                    .map(present -> LayerBlobs.minus(pending.keySet(), present))
+                    .filter(missing -> !missing.isEmpty())
+                    .flatMap(missing -> {
+                        ReactiveBulkOperations ops = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, LayerBlob.class);
+                        for (String hash : missing) ops.upsert(LayerBlobs.one(hash), LayerBlobs.insert(pending.get(hash), now));
+                        return ops.execute();
+                    })
+                    .then();
+        });
+    }
+
+    /** See LayerBlobStore.resolve. */
+    Mono<Void> resolve(Collection<AnimationFrame> frames) {
+        return Mono.defer(() -> {
+            Set<String> wanted = LayerBlobs.unresolved(frames);
+            if (wanted.isEmpty()) return Mono.empty();
+
+            Map<String, PackedPixels> found = blobs.cached(wanted);
+            Set<String> fetch = LayerBlobs.minus(wanted, found.keySet());
+            Mono<Void> load = fetch.isEmpty() ? Mono.empty()
+                    : mongo.find(LayerBlobs.ids(fetch), LayerBlob.class)
+                    .doOnNext(b -> found.put(b.getId(), blobs.remember(b)))
+                    .then();
+            return load.then(Mono.fromRunnable(() -> LayerBlobs.apply(frames, found)));
+        });
+    }
+}
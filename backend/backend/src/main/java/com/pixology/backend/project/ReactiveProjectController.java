@@ -0,0 +1,347 @@
+package com.pixology.backend.project;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pixology.backend.project.dto.*;
+import jakarta.validation.Valid;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ProjectController for the "reactive" profile: same endpoints, DTOs and status codes, served
+ * by WebFlux on ReactiveProjectService. Differences: GET /api/projects also streams a page as
+ * NDJSON (Accept: application/x-ndjson), and PUT .../animations/{id}/frames takes many frames
+ * as a JSON array or NDJSON and writes them one by one as the body arrives.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/projects")
+public class ReactiveProjectController {
+
+    private final ReactiveProjectService service;
+    private final ObjectMapper mapper;
+    private final ObjectMapper cborMapper;
+
+    public ReactiveProjectController(ReactiveProjectService service, ObjectMapper mapper,
+                                     MappingJackson2CborHttpMessageConverter cbor) {
+        this.service = service;
+        this.mapper = mapper;
+        this.cborMapper = cbor.getObjectMapper();
+    }
+
+    // ---------- STATIC ----------
+    // POST /api/projects?userId=...
+    @PostMapping
+    public Mono<ResponseEntity<?>> create(@RequestParam String userId,
+                                          @Valid @RequestBody SaveProjectRequest req) {
+        return created(service.create(userId, req), "failed to save project");
+    }
+
+    // PUT /api/projects/{id}?userId=...   If-Match: "{version}" (or a read ETag) makes it conditional
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<?>> update(@PathVariable String id,
+                                          @RequestParam String userId,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                          @Valid @RequestBody SaveProjectRequest req) {
+        return updated(service.update(id, userId, ETags.version(ifMatch), req), "failed to update project");
+    }
+
+    // PATCH /api/projects/{id}/pixels?userId=...
+    @PatchMapping("/{id}/pixels")
+    public Mono<ResponseEntity<?>> patchPixels(@PathVariable String id,
+                                               @RequestParam String userId,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                               @Valid @RequestBody PatchPixelsRequest req) {
+        return revision(service.patchPixels(id, userId, ETags.version(ifMatch), req), "failed to patch project");
+    }
+
+    // GET /api/projects?userId=...&favorite=true&kind=static|animation&cursor=...&size=50
+    @GetMapping
+    public Mono<ResponseEntity<?>> list(@RequestParam String userId,
+                                        @RequestParam(required = false) Boolean favorite,
+                                        @RequestParam(required = false) String kind,
+                                        @RequestParam(required = false) String cursor,
+                                        @RequestParam(defaultValue = "50") int size) {
+        return page(service.pageForUser(userId, favorite, kind, cursor, size));
+    }
+
+    // GET /api/projects?userId=...   Accept: application/x-ndjson
+    // One summary per line, written as the rows come off the cursor; bad parameters fail
+    // before the first line and land in badRequest below.
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ProjectSummaryResponse> stream(@RequestParam String userId,
+                                               @RequestParam(required = false) Boolean favorite,
+                                               @RequestParam(required = false) String kind,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(defaultValue = "50") int size) {
+        return service.streamForUser(userId, favorite, kind, cursor, size);
+    }
+
+    // GET /api/projects/{id}?userId=...
+    // ETag from a small projection: an unchanged project is answered 304 without loading it.
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> getOne(@PathVariable String id,
+                                                         @RequestParam String userId,
+                                                         @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                         @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ReadRepresentation rep = ReadRepresentation.of(accept, acceptEncoding);
+        return service.findReadValidators(id, userId, ProjectKind.STATIC)
+                .flatMap(v -> {
+                    String etag = service.readEtag(v, rep.tag());
+                    if (ETags.matches(ifNoneMatch, etag)) return Mono.just(notModified(etag));
+                    ObjectMapper m = rep.binary() ? cborMapper : mapper;
+                    return service.getByIdForUser(v)
+                            .map(detail -> read(rep, etag, Mono.fromCallable(() -> {
+                                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                                try (OutputStream o = rep.wrap(buf)) {
+                                    m.writeValue(o, detail);
+                                }
+                                return buf.toByteArray();
+                            }).flux()));
+                })
+                .defaultIfEmpty(notFound("project not found"));
+    }
+
+    // DELETE /api/projects/{id}?userId=...
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<?>> delete(@PathVariable String id, @RequestParam String userId) {
+        return service.deleteForUser(id, userId)
+                .then(Mono.<ResponseEntity<?>>fromSupplier(() -> ResponseEntity.noContent().build()))
+                .onErrorResume(IllegalArgumentException.class,
+                        e -> Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage())));
+    }
+
+    // PATCH /api/projects/{id}/favorite?userId=...
+    @PatchMapping("/{id}/favorite")
+    public Mono<ResponseEntity<?>> toggleFavorite(@PathVariable String id,
+                                                  @RequestParam String userId,
+                                                  @RequestBody ProjectController.FavoriteBody body) {
+        return service.setFavorite(id, userId, body.favorite)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(IllegalArgumentException.class,
+                        e -> Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage())));
+    }
+
+    // ---------- ANIMATION ----------
+    // POST /api/projects/animations?userId=...
+    @PostMapping("/animations")
+    public Mono<ResponseEntity<?>> createAnimation(@RequestParam String userId,
+                                                   @Valid @RequestBody SaveAnimationRequest req) {
+        return created(service.createAnimation(userId, req), "failed to save animation");
+    }
+
+    // PUT /api/projects/animations/{id}?userId=...
+    @PutMapping("/animations/{id}")
+    public Mono<ResponseEntity<?>> updateAnimation(@PathVariable String id,
+                                                   @RequestParam String userId,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                   @Valid @RequestBody SaveAnimationRequest req) {
+        return updated(service.updateAnimation(id, userId, ETags.version(ifMatch), req), "failed to update animation");
+    }
+
+    // PUT /api/projects/animations/{id}/frames?userId=...   body: [frame, ...] or NDJSON, one frame per line
+    // Each frame is upserted as in the single-frame PUT; the body is read no faster than Mongo takes the writes.
+    @PutMapping("/animations/{id}/frames")
+    public Mono<ResponseEntity<?>> upsertFrames(@PathVariable String id,
+                                                @RequestParam String userId,
+                                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                @RequestBody(required = false) Flux<SaveAnimationRequest.FrameDto> frames) {
+        return revision(service.upsertFrames(id, userId, ETags.version(ifMatch), frames), "failed to save frames");
+    }
+
+    // PUT /api/projects/animations/{id}/frames/{frameId}?userId=...  (replace in place or append)
+    @PutMapping("/animations/{id}/frames/{frameId}")
+    public Mono<ResponseEntity<?>> upsertFrame(@PathVariable String id,
+                                               @PathVariable String frameId,
+                                               @RequestParam String userId,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                               @Valid @RequestBody SaveAnimationRequest.FrameDto req) {
+        return revision(service.upsertFrame(id, userId, frameId, ETags.version(ifMatch), req), "failed to save frame");
+    }
+
+    // DELETE /api/projects/animations/{id}/frames/{frameId}?userId=...
+    @DeleteMapping("/animations/{id}/frames/{frameId}")
+    public Mono<ResponseEntity<?>> deleteFrame(@PathVariable String id,
+                                               @PathVariable String frameId,
+                                               @RequestParam String userId,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return revision(service.deleteFrame(id, userId, frameId, ETags.version(ifMatch)),
+                "failed to delete frame");
+    }
+
+    // PUT /api/projects/animations/{id}/frame-order?userId=...
+    @PutMapping("/animations/{id}/frame-order")
+    public Mono<ResponseEntity<?>> reorderFrames(@PathVariable String id,
+                                                 @RequestParam String userId,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                 @Valid @RequestBody ReorderRequest req) {
+        return revision(service.reorderFrames(id, userId, ETags.version(ifMatch), req.getIds()),
+                "failed to reorder frames");
+    }
+
+    // PUT /api/projects/animations/{id}/blocks/{blockId}?userId=...  (replace in place or append)
+    @PutMapping("/animations/{id}/blocks/{blockId}")
+    public Mono<ResponseEntity<?>> upsertBlock(@PathVariable String id,
+                                               @PathVariable String blockId,
+                                               @RequestParam String userId,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                               @Valid @RequestBody SaveAnimationRequest.AnimationBlockDto req) {
+        return revision(service.upsertBlock(id, userId, blockId, ETags.version(ifMatch), req),
+                "failed to save animation");
+    }
+
+    // DELETE /api/projects/animations/{id}/blocks/{blockId}?userId=...
+    @DeleteMapping("/animations/{id}/blocks/{blockId}")
+    public Mono<ResponseEntity<?>> deleteBlock(@PathVariable String id,
+                                               @PathVariable String blockId,
+                                               @RequestParam String userId,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return revision(service.deleteBlock(id, userId, blockId, ETags.version(ifMatch)),
+                "failed to delete animation");
+    }
+
+    // PUT /api/projects/animations/{id}/block-order?userId=...
+    @PutMapping("/animations/{id}/block-order")
+    public Mono<ResponseEntity<?>> reorderBlocks(@PathVariable String id,
+                                                 @RequestParam String userId,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                 @Valid @RequestBody ReorderRequest req) {
+        return revision(service.reorderBlocks(id, userId, ETags.version(ifMatch), req.getIds()),
+                "failed to reorder animations");
+    }
+
+    // GET /api/projects/animations/{id}?userId=...
+    // Same validators as getOne; frames go out one chunk each as the cursor yields them.
+    @GetMapping("/animations/{id}")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> getOneAnimation(@PathVariable String id,
+                                                                  @RequestParam String userId,
+                                                                  @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                  @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        ReadRepresentation rep = ReadRepresentation.of(accept, acceptEncoding);
+        return service.findReadValidators(id, userId, ProjectKind.ANIMATION)
+                .flatMap(v -> {
+                    String etag = service.readEtag(v, rep.tag());
+                    if (ETags.matches(ifNoneMatch, etag)) return Mono.just(notModified(etag));
+                    return service.findAnimationForRead(v)
+                            .map(project -> read(rep, etag, service.animationDetail(project, v, rep)));
+                })
+                .defaultIfEmpty(notFound("project not found"));
+    }
+
+    // GET /api/projects/animations/{id}/manifest?userId=...
+    @GetMapping("/animations/{id}/manifest")
+    public Mono<ResponseEntity<?>> getAnimationManifest(@PathVariable String id, @RequestParam String userId) {
+        return service.getAnimationManifestForUser(id, userId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).body("project not found"));
+    }
+
+    // GET /api/projects/animations/{id}/frames/{frameId}?userId=...
+    @GetMapping("/animations/{id}/frames/{frameId}")
+    public Mono<ResponseEntity<?>> getFrame(@PathVariable String id,
+                                            @PathVariable String frameId,
+                                            @RequestParam String userId) {
+        return service.getFrameForUser(id, userId, frameId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).body("frame not found"));
+    }
+
+    // GET /api/projects/animations?userId=...&favorite=true&cursor=...&size=50
+    @GetMapping("/animations")
+    public Mono<ResponseEntity<?>> listAnimations(@RequestParam String userId,
+                                                  @RequestParam(required = false) Boolean favorite,
+                                                  @RequestParam(required = false) String cursor,
+                                                  @RequestParam(defaultValue = "50") int size) {
+        return page(service.pageForUser(userId, favorite, "animation", cursor, size));
+    }
+
+    // Only reached by the NDJSON listing; everything else maps its errors itself.
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    // ---------- error mapping, as in ProjectController ----------
+    private static Mono<ResponseEntity<?>> created(Mono<?> op, String failure) {
+        return op.<ResponseEntity<?>>map(res -> ResponseEntity.status(HttpStatus.CREATED).body(res))
+                .onErrorResume(e -> Mono.just(
+                        e instanceof DuplicateKeyException ? status(HttpStatus.CONFLICT, e)
+                                : e instanceof IllegalArgumentException ? status(HttpStatus.BAD_REQUEST, e)
+                                : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(failure)));
+    }
+
+    private static Mono<ResponseEntity<?>> updated(Mono<?> op, String failure) {
+        return op.<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(e -> Mono.just(
+                        e instanceof DuplicateKeyException || e instanceof OptimisticLockingFailureException
+                                ? status(HttpStatus.CONFLICT, e)
+                                : e instanceof IllegalStateException ? status(HttpStatus.FORBIDDEN, e)
+                                : e instanceof IllegalArgumentException ? status(HttpStatus.NOT_FOUND, e)
+                                : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(failure)));
+    }
+
+    // Shared error mapping for the incremental save endpoints.
+    private static Mono<ResponseEntity<?>> revision(Mono<ProjectRevisionResponse> op, String failure) {
+        return op.<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(e -> Mono.just(
+                        e instanceof OptimisticLockingFailureException ? status(HttpStatus.CONFLICT, e)
+                                : e instanceof IllegalStateException ? status(HttpStatus.FORBIDDEN, e)
+                                : e instanceof ProjectNotFoundException ? status(HttpStatus.NOT_FOUND, e)
+                                : e instanceof IllegalArgumentException ? status(HttpStatus.BAD_REQUEST, e)
+                                : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(failure)));
+    }
+
+    private static Mono<ResponseEntity<?>> page(Mono<PagedProjects> op) {
+        return op.<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(status(HttpStatus.BAD_REQUEST, e)));
+    }
+
+    private static ResponseEntity<?> status(HttpStatus status, Throwable e) {
+        return ResponseEntity.status(status).body(e.getMessage());
+    }
+
+    // Project reads revalidate every time; the ETag makes that a 304 when nothing changed.
+    private static final CacheControl READ_CACHE = CacheControl.noCache().cachePrivate();
+
+    private static ResponseEntity<Flux<DataBuffer>> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(READ_CACHE)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .build();
+    }
+
+    private static ResponseEntity<Flux<DataBuffer>> read(ReadRepresentation rep, String etag, Flux<byte[]> body) {
+        ResponseEntity.BodyBuilder res = ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(READ_CACHE)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .contentType(rep.mediaType());
+        if (rep.gzip()) res.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return res.body(body.map(DefaultDataBufferFactory.sharedInstance::wrap));
+    }
+
+    // The reads return raw buffers, so their error bodies are written as such.
+    private static ResponseEntity<Flux<DataBuffer>> notFound(String message) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(message.getBytes(StandardCharsets.UTF_8))));
+    }
+}
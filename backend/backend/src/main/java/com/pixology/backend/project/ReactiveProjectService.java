@@ -0,0 +1,438 @@
+package com.pixology.backend.project;
+
+import com.pixology.backend.project.dto.*;
+import com.pixology.backend.project.thumbnail.ProjectThumbnail;
+import com.pixology.backend.project.thumbnail.ThumbnailGenerator;
+import com.pixology.backend.user.User;
+import com.pixology.backend.user.UserExistenceCache;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.bson.Document;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * ProjectService on the reactive Mongo driver, for the "reactive" profile. Same queries,
+ * checks and responses (ProjectQueries, ProjectMapping); nothing here blocks a thread
+ * while Mongo works, so a few event-loop threads carry many concurrent autosaves.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveProjectService {
+
+    private final ReactiveMongoTemplate mongo;
+    private final UserExistenceCache knownUsers;
+    private final ThumbnailGenerator thumbnailGenerator;
+    private final AnimationDetailWriter detailWriter;
+    private final ProjectCache cache;
+    private final ReactiveLayerBlobStore blobs;
+    private final Validator validator;
+
+    public ReactiveProjectService(ReactiveMongoTemplate mongo, UserExistenceCache knownUsers,
+                                  ThumbnailGenerator thumbnailGenerator, AnimationDetailWriter detailWriter,
+                                  ProjectCache cache, ReactiveLayerBlobStore blobs, Validator validator) {
+        this.mongo = mongo;
+        this.knownUsers = knownUsers;
+        this.thumbnailGenerator = thumbnailGenerator;
+        this.detailWriter = detailWriter;
+        this.cache = cache;
+        this.blobs = blobs;
+        this.validator = validator;
+    }
+
+    // ---------- STATIC ----------
+    public Mono<ProjectDetailResponse> create(String userId, SaveProjectRequest req) {
+        return validateUser(userId)
+                .then(Mono.fromCallable(() -> {
+                    ProjectMapping.validateProjectPayload(req);
+                    Instant now = Instant.now();
+                    Project p = ProjectMapping.staticProject(userId, req, now);
+                    p.setCreatedAt(now);
+                    return p;
+                }))
+                .flatMap(p -> uniqueName(mongo.insert(p)))
+                .doOnNext(saved -> thumbnailGenerator.refresh(saved.getId()))
+                .map(ProjectMapping::toDetail);
+    }
+
+    public Mono<ProjectDetailResponse> update(String projectId, String userId, Long expectedVersion,
+                                              SaveProjectRequest req) {
+        return validateUser(userId)
+                .then(Mono.fromCallable(() -> {
+                    ProjectMapping.validateProjectPayload(req);
+                    Project p = ProjectMapping.staticProject(userId, req, Instant.now());
+                    p.setId(projectId);
+                    return p;
+                }))
+                .flatMap(p -> replaceContent(p, expectedVersion))
+                .map(ProjectMapping::toDetail);
+    }
+
+    public Mono<ProjectRevisionResponse> patchPixels(String projectId, String userId, Long expectedVersion,
+                                                     PatchPixelsRequest req) {
+        return validateUser(userId)
+                .then(Mono.fromCallable(() -> ProjectMapping.patchVersion(expectedVersion, req)))
+                .flatMap(expected -> mongo.findOne(ProjectQueries.layers(projectId, ProjectMapping.patchTiles(req)), Project.class)
+                        .switchIfEmpty(Mono.error(ProjectNotFoundException::new))
+                        .flatMap(p -> {
+                            Instant now = Instant.now();
+                            ProjectQueries.Write w = ProjectQueries.setLayers(mongo.getConverter(), projectId, userId,
+                                    expected, ProjectMapping.patchLayers(p, userId, expected, req), now);
+                            return mongo.updateFirst(w.query(), w.update(), Project.class)
+                                    .flatMap(r -> r.getModifiedCount() == 1
+                                            ? Mono.just(new ProjectRevisionResponse(projectId, expected + 1, now))
+                                            : writeFailure(projectId, userId, ProjectKind.STATIC, null));
+                        }))
+                .doOnNext(r -> thumbnailGenerator.refresh(projectId));
+    }
+
+    // ---------- ANIMATION ----------
+    public Mono<AnimationDetailResponse> createAnimation(String userId, SaveAnimationRequest req) {
+        return validateUser(userId)
+                .then(Mono.fromCallable(() -> {
+                    ProjectMapping.validateAnimationPayload(req);
+                    Instant now = Instant.now();
+                    Project p = ProjectMapping.animationProject(userId, req, now);
+                    p.setCreatedAt(now);
+                    return p;
+                }))
+                .flatMap(p -> blobs.store(p.getFrames()).then(uniqueName(mongo.insert(p))))
+                .doOnNext(saved -> thumbnailGenerator.refresh(saved.getId()))
+                .map(ProjectMapping::toAnimationDetail);
+    }
+
+    public Mono<AnimationDetailResponse> updateAnimation(String projectId, String userId, Long expectedVersion,
+                                                         SaveAnimationRequest req) {
+        return validateUser(userId)
+                .then(Mono.fromCallable(() -> {
+                    ProjectMapping.validateAnimationPayload(req);
+                    Project p = ProjectMapping.animationProject(userId, req, Instant.now());
+                    p.setId(projectId);
+                    return p;
+                }))
+                .flatMap(p -> blobs.store(p.getFrames()).then(replaceContent(p, expectedVersion)))
+                .map(ProjectMapping::toAnimationDetail);
+    }
+
+    // Writes p's content over the stored project and fills in what the store owns.
+    private Mono<Project> replaceContent(Project p, Long expectedVersion) {
+        return Mono.defer(() -> {
+            cache.invalidate(p.getId());
+            return uniqueName(modify(ProjectQueries.replaceContent(mongo.getConverter(), p.getId(), p.getUserId(),
+                    p.getKind(), expectedVersion, p)));
+        })
+                .switchIfEmpty(writeFailure(p.getId(), p.getUserId(), p.getKind(), null))
+                .map(stored -> {
+                    p.setVersion(stored.getVersion());
+                    p.setCreatedAt(stored.getCreatedAt());
+                    p.setThumbnailHash(stored.getThumbnailHash());
+                    thumbnailGenerator.refresh(p.getId());
+                    return p;
+                });
+    }
+
+    // ---------- ANIMATION incremental saves ----------
+    public Mono<ProjectRevisionResponse> upsertFrame(String projectId, String userId, String frameId,
+                                                     Long expectedVersion, SaveAnimationRequest.FrameDto dto) {
+        return validateUser(userId)
+                .then(Mono.fromRunnable(() -> {
+                    if (!frameId.equals(dto.getId())) throw new IllegalArgumentException("frame id does not match path");
+                }))
+                .then(canvas(projectId))
+                .map(c -> ProjectMapping.toFrame(dto, c.getWidth(), c.getHeight()))
+                .flatMap(f -> blobs.store(List.of(f))
+                        .then(upsertElement(projectId, userId, "frames", frameId, f, expectedVersion)))
+                .doOnNext(r -> thumbnailGenerator.refresh(projectId)); // the first frame may have changed
+    }
+
+    /**
+     * Upserts frames one by one as they are decoded from the request body; the next frame
+     * is not read until the previous one is written, so a large upload never sits in memory
+     * whole. With expectedVersion the first write is guarded by it and each later write by
+     * the version the one before produced. Returns the last revision.
+     */
+    public Mono<ProjectRevisionResponse> upsertFrames(String projectId, String userId, Long expectedVersion,
+                                                      Flux<SaveAnimationRequest.FrameDto> frames) {
+        return validateUser(userId).then(canvas(projectId)).flatMap(c -> {
+            AtomicReference<Long> expected = new AtomicReference<>(expectedVersion);
+            return frames
+                    .concatMap(dto -> Mono.fromCallable(() ->
+                                    ProjectMapping.toFrame(validFrame(dto), c.getWidth(), c.getHeight()))
+                            .flatMap(f -> blobs.store(List.of(f))
+                                    .then(Mono.defer(() -> upsertElement(projectId, userId, "frames", f.getId(), f,
+                                            expected.get()))))
+                            .doOnNext(r -> {
+                                if (expected.get() != null) expected.set(r.getVersion());
+                            }), 1)
+                    .reduce((previous, last) -> last)
+                    .switchIfEmpty(Mono.error(() -> new IllegalArgumentException("at least one frame is required")));
+        }).doOnNext(r -> thumbnailGenerator.refresh(projectId));
+    }
+
+    public Mono<ProjectRevisionResponse> deleteFrame(String projectId, String userId, String frameId,
+                                                     Long expectedVersion) {
+        return validateUser(userId)
+                .then(loadOwnedAnimationStructure(projectId, userId, expectedVersion))
+                .flatMap(s -> {
+                    // Frames after the removed one shift down; block references to it are dropped.
+                    int[] remap = ProjectMapping.removalRemap(ProjectMapping.frameIds(s), frameId);
+                    return modify(ProjectQueries.removeElement(mongo.getConverter(), projectId, userId, "frames",
+                            frameId, s.getVersion(), ProjectMapping.remapBlocks(s.getAnimations(), remap),
+                            Instant.now()));
+                })
+                .switchIfEmpty(writeFailure(projectId, userId, ProjectKind.ANIMATION, null))
+                .map(ProjectMapping::toRevision)
+                .doOnNext(r -> thumbnailGenerator.refresh(projectId));
+    }
+
+    public Mono<ProjectRevisionResponse> reorderFrames(String projectId, String userId, Long expectedVersion,
+                                                       List<String> order) {
+        return validateUser(userId)
+                .then(loadOwnedAnimationStructure(projectId, userId, expectedVersion))
+                .flatMap(s -> {
+                    List<String> ids = ProjectMapping.frameIds(s);
+                    ProjectMapping.validatePermutation(ids, order, "frame");
+                    int[] remap = ProjectMapping.reorderRemap(ids, order);
+                    return modify(ProjectQueries.reorderElements(mongo.getConverter(), projectId, userId, "frames",
+                            order, s.getVersion(), ProjectMapping.remapBlocks(s.getAnimations(), remap),
+                            Instant.now()));
+                })
+                .switchIfEmpty(writeFailure(projectId, userId, ProjectKind.ANIMATION, null))
+                .map(ProjectMapping::toRevision)
+                .doOnNext(r -> thumbnailGenerator.refresh(projectId));
+    }
+
+    public Mono<ProjectRevisionResponse> upsertBlock(String projectId, String userId, String blockId,
+                                                     Long expectedVersion, SaveAnimationRequest.AnimationBlockDto dto) {
+        return validateUser(userId)
+                .then(Mono.fromCallable(() -> {
+                    if (!blockId.equals(dto.getId())) throw new IllegalArgumentException("animation id does not match path");
+                    return ProjectMapping.toBlock(dto);
+                }))
+                .flatMap(b -> upsertElement(projectId, userId, "animations", blockId, b, expectedVersion));
+    }
+
+    public Mono<ProjectRevisionResponse> deleteBlock(String projectId, String userId, String blockId,
+                                                     Long expectedVersion) {
+        return validateUser(userId)
+                .then(modify(ProjectQueries.removeElement(mongo.getConverter(), projectId, userId, "animations",
+                        blockId, expectedVersion, null, Instant.now())))
+                .switchIfEmpty(writeFailure(projectId, userId, ProjectKind.ANIMATION, expectedVersion, "animation"))
+                .map(ProjectMapping::toRevision);
+    }
+
+    public Mono<ProjectRevisionResponse> reorderBlocks(String projectId, String userId, Long expectedVersion,
+                                                       List<String> order) {
+        return validateUser(userId)
+                .then(loadOwnedAnimationStructure(projectId, userId, expectedVersion))
+                .flatMap(s -> {
+                    ProjectMapping.validatePermutation(ProjectMapping.blockIds(s), order, "animation");
+                    return modify(ProjectQueries.reorderElements(mongo.getConverter(), projectId, userId,
+                            "animations", order, s.getVersion(), null, Instant.now()));
+                })
+                .switchIfEmpty(writeFailure(projectId, userId, ProjectKind.ANIMATION, null))
+                .map(ProjectMapping::toRevision);
+    }
+
+    /** See ProjectService.findAnimationForRead. */
+    public Mono<Project> findAnimationForRead(Project validators) {
+        return cache.get(validators.getId(), validators.getVersion())
+                .map(Mono::just)
+                .orElseGet(() -> mongo.findOne(ProjectQueries.withoutFrames(validators.getId()), Project.class)
+                        .filter(p -> validators.getUserId().equals(p.getUserId())
+                                && p.getKind() == ProjectKind.ANIMATION));
+    }
+
+    /**
+     * The project from findAnimationForRead as one AnimationDetailResponse document, in
+     * chunks: frames come from the cache or straight off the aggregation cursor, and in the
+     * latter case are kept aside so that a small enough animation is cached afterwards.
+     */
+    Flux<byte[]> animationDetail(Project project, Project validators, ReadRepresentation rep) {
+        AnimationDetailResponse header = ProjectMapping.toAnimationDetail(project, validators);
+        header.setFrames(null); // written separately
+        if (project.getFrames() != null) {
+            return detailWriter.chunks(header, Flux.fromIterable(project.getFrames()), rep);
+        }
+
+        return detailWriter.chunks(header, Flux.defer(() -> {
+            List<AnimationFrame> seen = new ArrayList<>();
+            long[] bytes = {ProjectCache.weigh(project)};
+            return mongo.aggregate(ProjectQueries.frames(project.getId()), mongo.getCollectionName(Project.class),
+                            AnimationFrame.class)
+                    .buffer(LayerBlobs.RESOLVE_BATCH) // one blob query per batch of frames
+                    .concatMap(batch -> blobs.resolve(batch).thenMany(Flux.fromIterable(batch)))
+                    .doOnNext(f -> {
+                        if (bytes[0] < 0) return;
+                        bytes[0] += ProjectCache.weigh(f);
+                        if (cache.fits(bytes[0])) {
+                            seen.add(f);
+                        } else {
+                            bytes[0] = -1; // too big to cache; stop holding on to frames
+                            seen.clear();
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (bytes[0] >= 0) {
+                            project.setFrames(seen);
+                            cache.put(project);
+                        }
+                    });
+        }), rep);
+    }
+
+    public Mono<AnimationManifestResponse> getAnimationManifestForUser(String id, String userId) {
+        return mongo.findOne(ProjectQueries.manifest(id, userId), Project.class).map(ProjectMapping::toManifest);
+    }
+
+    public Mono<AnimationFrame> getFrameForUser(String id, String userId, String frameId) {
+        return mongo.findOne(ProjectQueries.frame(id, userId, frameId), Project.class)
+                .mapNotNull(ProjectQueries::firstFrame)
+                .flatMap(f -> blobs.resolve(List.of(f)).thenReturn(f));
+    }
+
+    // ---------- SHARED list/get/delete/favorite ----------
+    // The first page and its total are queried side by side; later pages take the total from the cursor.
+    public Mono<PagedProjects> pageForUser(String userId, Boolean favorite, String kindStr, String cursor, int size) {
+        return validateUser(userId)
+                .then(Mono.fromCallable(() -> ProjectMapping.libraryQuery(kindStr, cursor, size)))
+                .flatMap(q -> Mono.zip(
+                                mongo.find(ProjectQueries.summaries(userId, favorite, q.kind(), q.after(), size + 1),
+                                        Project.class).collectList(),
+                                q.knownTotal() >= 0 ? Mono.just(q.knownTotal())
+                                        : mongo.count(ProjectQueries.library(userId, favorite, q.kind()), Project.class))
+                        .map(t -> ProjectMapping.toPage(t.getT1(), q, t.getT2())));
+    }
+
+    /** One library page as its rows come off the cursor; no total, and no next cursor. */
+    public Flux<ProjectSummaryResponse> streamForUser(String userId, Boolean favorite, String kindStr,
+                                                      String cursor, int size) {
+        return validateUser(userId)
+                .then(Mono.fromCallable(() -> ProjectMapping.libraryQuery(kindStr, cursor, size)))
+                .flatMapMany(q -> mongo.find(ProjectQueries.summaries(userId, favorite, q.kind(), q.after(), size),
+                        Project.class))
+                .map(ProjectMapping::toSummary);
+    }
+
+    /** See ProjectService.findReadValidators. */
+    public Mono<Project> findReadValidators(String id, String userId, ProjectKind kind) {
+        return mongo.findOne(ProjectQueries.validators(id, userId), Project.class)
+                .filter(p -> ProjectMapping.isKind(p, kind));
+    }
+
+    public String readEtag(Project validators, String representation) {
+        return ProjectMapping.readEtag(validators, representation);
+    }
+
+    public Mono<ProjectDetailResponse> getByIdForUser(Project validators) {
+        return cache.get(validators.getId(), validators.getVersion())
+                .map(Mono::just)
+                .orElseGet(() -> mongo.findOne(ProjectQueries.owned(validators.getId(), validators.getUserId()),
+                                Project.class)
+                        .filter(p -> ProjectMapping.isKind(p, ProjectKind.STATIC))
+                        .doOnNext(cache::put))
+                .map(p -> ProjectMapping.toDetail(p, validators));
+    }
+
+    public Mono<Void> deleteForUser(String id, String userId) {
+        return mongo.remove(ProjectQueries.owned(id, userId), Project.class)
+                .flatMap(r -> r.getDeletedCount() == 0
+                        ? Mono.<Void>error(new ProjectNotFoundException())
+                        : Mono.fromRunnable(() -> cache.invalidate(id)))
+                .then(mongo.remove(Query.query(where("_id").is(id)), ProjectThumbnail.class))
+                .then();
+    }
+
+    public Mono<ProjectSummaryResponse> setFavorite(String id, String userId, boolean favorite) {
+        return modify(ProjectQueries.setFavorite(id, userId, favorite, Instant.now()))
+                .switchIfEmpty(Mono.error(ProjectNotFoundException::new))
+                .map(ProjectMapping::toSummary);
+    }
+
+    // ---------- validators & helpers ----------
+    // Same rule as ProjectService: the unique (userId, normalizedName) index is the name check.
+    private static <T> Mono<T> uniqueName(Mono<T> write) {
+        return write.onErrorMap(DuplicateKeyException.class,
+                e -> new DuplicateKeyException("project name already exists", e));
+    }
+
+    private Mono<Void> validateUser(String userId) {
+        if (!StringUtils.hasText(userId)) return Mono.error(new IllegalArgumentException("userId is required"));
+        if (knownUsers.isKnown(userId)) return Mono.empty();
+        return mongo.exists(Query.query(where("_id").is(userId)), User.class)
+                .flatMap(exists -> {
+                    if (!exists) return Mono.error(new IllegalArgumentException("user not found"));
+                    knownUsers.remember(userId);
+                    return Mono.empty();
+                });
+    }
+
+    // Bean validation for frames that arrive one by one, outside @Valid's reach.
+    private SaveAnimationRequest.FrameDto validFrame(SaveAnimationRequest.FrameDto dto) {
+        Set<ConstraintViolation<SaveAnimationRequest.FrameDto>> violations = validator.validate(dto);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<?> v = violations.iterator().next();
+            throw new IllegalArgumentException("invalid frame: " + v.getPropertyPath() + " " + v.getMessage());
+        }
+        return dto;
+    }
+
+    private Mono<ProjectRevisionResponse> upsertElement(String projectId, String userId, String arrayField,
+                                                        String elementId, Object element, Long expectedVersion) {
+        Object doc = ProjectQueries.toMongo(mongo.getConverter(), element, element.getClass());
+        Instant now = Instant.now();
+        return modify(ProjectQueries.replaceElement(doc, projectId, userId, arrayField, elementId, expectedVersion, now))
+                .switchIfEmpty(Mono.defer(() -> modify(ProjectQueries.appendElement(doc, projectId, userId,
+                        arrayField, elementId, expectedVersion, now))))
+                .switchIfEmpty(writeFailure(projectId, userId, ProjectKind.ANIMATION, null))
+                .map(ProjectMapping::toRevision);
+    }
+
+    // The canvas size (and owner) of a project, for frames sent on their own.
+    private Mono<Project> canvas(String projectId) {
+        return mongo.findOne(ProjectQueries.header(projectId), Project.class)
+                .switchIfEmpty(Mono.error(ProjectNotFoundException::new));
+    }
+
+    private Mono<Project> loadOwnedAnimationStructure(String projectId, String userId, Long expectedVersion) {
+        return mongo.findOne(ProjectQueries.structure(projectId), Project.class)
+                .switchIfEmpty(Mono.error(ProjectNotFoundException::new))
+                .map(s -> ProjectMapping.ownedAnimationStructure(s, userId, expectedVersion));
+    }
+
+    // Explains why a conditional write matched nothing; only subscribed to on the failure path.
+    private <T> Mono<T> writeFailure(String projectId, String userId, ProjectKind kind, String missingElement) {
+        return writeFailure(projectId, userId, kind, null, missingElement);
+    }
+
+    private <T> Mono<T> writeFailure(String projectId, String userId, ProjectKind kind, Long expectedVersion,
+                                     String missingElement) {
+        return mongo.findOne(ProjectQueries.header(projectId), Project.class)
+                .map(h -> ProjectMapping.writeFailure(h, userId, kind, expectedVersion, missingElement))
+                .defaultIfEmpty(ProjectMapping.writeFailure(null, userId, kind, expectedVersion, missingElement))
+                .flatMap(Mono::error);
+    }
+
+    // Through the raw collection, like ProjectRepositoryImpl.modify.
+    private Mono<Project> modify(ProjectQueries.Write w) {
+        return mongo.findAndModify(ProjectQueries.returningRevision(w.query()), w.update(),
+                        FindAndModifyOptions.options().returnNew(true), Document.class,
+                        mongo.getCollectionName(Project.class))
+                .map(doc -> mongo.getConverter().read(Project.class, doc));
+    }
+}
@@ -0,0 +1,131 @@
+package com.pixology.backend.project;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker for the journal's replay to Mongo only: the writes PendingSaves replays and
+ * the header read of a project's first autosave. Nothing else goes through it; reads, commits
+ * (past the flush of a pending autosave), pixel patches, frame and block edits, exports and
+ * thumbnails call Mongo directly and fail on their own while it is down.
+ * After {@code failures} calls in a row that failed on the connection (or took longer than
+ * {@code slow-call}) it opens and rejects calls with {@link StorageUnavailableException} for
+ * {@code open-for}; then one call goes through as a probe and closes it again if it succeeds.
+ * Rejections and logical failures (a conflict, a missing project) never count, nor do calls
+ * that were let through before the breaker last opened.
+ * The state is published as the store.breaker.open gauge (1 while open).
+ */
+@Component
+public class RepositoryCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(RepositoryCircuitBreaker.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private long openings; // calls record against the value they were let through at
+    private boolean probing;
+
+    @Autowired
+    public RepositoryCircuitBreaker(@Value("${pixology.journal.breaker.failures:5}") int failures,
+                                    @Value("${pixology.journal.breaker.slow-call:PT2S}") Duration slowCall,
+                                    @Value("${pixology.journal.breaker.open-for:PT30S}") Duration openFor,
+                                    MeterRegistry registry) {
+        this(failures, slowCall, openFor, System::nanoTime);
+        Gauge.builder("store.breaker.open", this, b -> b.state() == State.OPEN ? 1 : 0).register(registry);
+    }
+
+    RepositoryCircuitBreaker(int failures, Duration slowCall, Duration openFor, LongSupplier clock) {
+        if (failures < 1) throw new IllegalArgumentException("breaker failures must be at least 1");
+        this.failureThreshold = failures;
+        this.slowCallNanos = slowCall.toNanos();
+        this.openNanos = openFor.toNanos();
+        this.clock = clock;
+    }
+
+    /** Runs call unless the breaker is open; its exceptions pass through unchanged. */
+    public <T> T call(Supplier<T> call) {
+        long admitted = acquire();
+        long start = clock.getAsLong();
+        try {
+            T result = call.get();
+            record(admitted, clock.getAsLong() - start <= slowCallNanos);
+            return result;
+        } catch (ConcurrencyFailureException e) {
+            record(admitted, true); // a version conflict is transient, but no sign of an outage
+            throw e;
+        } catch (DataAccessResourceFailureException | TransientDataAccessException e) {
+            record(admitted, false);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            record(admitted, true); // Mongo answered, just not the way the caller hoped
+            throw e;
+        }
+    }
+
+    public void run(Runnable call) {
+        call(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /** Whether calls are being rejected right now; lets callers skip work that would only be rejected. */
+    public synchronized boolean isOpen() {
+        return state() == State.OPEN;
+    }
+
+    synchronized State state() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openNanos) state = State.HALF_OPEN;
+        return state;
+    }
+
+    private synchronized long acquire() {
+        switch (state()) {
+            case OPEN -> throw new StorageUnavailableException();
+            case HALF_OPEN -> {
+                if (probing) throw new StorageUnavailableException();
+                probing = true;
+            }
+            case CLOSED -> { }
+        }
+        return openings;
+    }
+
+    // Past the check, the call is either the half-open probe or one let through while closed.
+    private synchronized void record(long admitted, boolean ok) {
+        if (admitted != openings) return;
+        boolean probe = state == State.HALF_OPEN;
+        probing = false;
+        if (ok) {
+            if (probe) log.info("project storage is back, closing the circuit breaker");
+            state = State.CLOSED;
+            failures = 0;
+        } else if (probe || ++failures >= failureThreshold) {
+            log.warn("project storage is failing, opening the circuit breaker for {} ms", openNanos / 1_000_000);
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+            openings++;
+            failures = 0;
+        }
+    }
+}
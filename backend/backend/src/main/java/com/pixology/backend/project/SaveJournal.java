@@ -0,0 +1,285 @@
+package com.pixology.backend.project;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of acknowledged saves (see PendingSaves), one file written through a
+ * FileChannel. A record is [payload length][CRC32C][type][payload]; SAVE records carry a BSON
+ * document with a "seq" field, DONE records the seq of a save that was written or dropped.
+ *
+ * One writer thread owns the file. Appends queue up while it forces the previous batch, and the
+ * whole queue is then written with a single force (group commit): a SAVE is acknowledged once
+ * its batch is on disk. DONE records ride along with whatever batch comes next; one lost in a
+ * crash only means the save is replayed again, which its expected version turns into a no-op.
+ *
+ * On open the file is read up to the first torn or corrupt record and truncated there; the
+ * saves without a DONE are handed back through recovered(). The file is emptied whenever no
+ * save is live and rewritten with only the live ones once it grows past compactAt.
+ */
+final class SaveJournal implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SaveJournal.class);
+
+    static final String FILE = "saves.journal";
+    private static final byte SAVE = 1;
+    private static final byte DONE = 2;
+    private static final byte STOP = 0; // queue marker, never written
+    private static final int HEADER = 4 + 4 + 1;
+    private static final DocumentCodec CODEC = new DocumentCodec();
+
+    private record Append(byte type, long seq, byte[] payload, CompletableFuture<Void> durable) {}
+
+    private final Path file;
+    private final long compactAt;
+    private final AtomicLong seqs = new AtomicLong(1);
+    private final BlockingQueue<Append> queue = new LinkedBlockingQueue<>();
+    private final List<Document> recovered = new ArrayList<>();
+    private final Thread writer;
+
+    // Owned by the writer thread once it runs.
+    private FileChannel ch;
+    private long end;
+    private final Map<Long, long[]> live = new HashMap<>(); // seq -> {offset, length} of its SAVE record
+    private volatile boolean closed;
+
+    SaveJournal(Path dir, long compactAt) {
+        this.file = dir.resolve(FILE);
+        this.compactAt = compactAt;
+        try {
+            Files.createDirectories(dir);
+            ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not open save journal " + file, e);
+        }
+        writer = Thread.ofPlatform().name("save-journal").daemon().start(this::writeLoop);
+    }
+
+    /** Saves that were journaled but never marked done, in journal order; each has its "seq". */
+    List<Document> recovered() {
+        return recovered;
+    }
+
+    /** Journals a save and returns its seq once it is on disk. */
+    long append(Document save) {
+        long seq = seqs.getAndIncrement();
+        Document d = new Document(save).append("seq", seq);
+        RawBsonDocument raw = new RawBsonDocument(d, CODEC);
+        byte[] payload = new byte[raw.getByteBuffer().remaining()];
+        raw.getByteBuffer().get(payload);
+
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        submit(new Append(SAVE, seq, payload, durable));
+        try {
+            durable.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while journaling a save", e);
+        } catch (ExecutionException e) {
+            throw new UncheckedIOException("could not journal save", (IOException) e.getCause());
+        }
+        return seq;
+    }
+
+    /** Marks a save written (or given up on); does not wait for the disk. */
+    void done(long seq) {
+        submit(new Append(DONE, seq, ByteBuffer.allocate(8).putLong(seq).array(), null));
+    }
+
+    /** Writes out what is queued and closes the file. */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        queue.add(new Append(STOP, 0, null, null));
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            ch.close();
+        } catch (IOException e) {
+            log.warn("could not close save journal: {}", e.getMessage());
+        }
+    }
+
+    private void submit(Append a) {
+        if (closed) throw new IllegalStateException("save journal is closed");
+        queue.add(a);
+    }
+
+    // ---------- writer thread ----------
+    private void writeLoop() {
+        List<Append> batch = new ArrayList<>();
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue; // only close() stops the writer, through STOP
+            }
+            queue.drainTo(batch);
+            try {
+                for (Append a : batch) {
+                    if (a.type() == STOP) stop = true;
+                    else write(a);
+                }
+                ch.force(false);
+                for (Append a : batch) {
+                    if (a.durable() != null) a.durable().complete(null);
+                }
+                compact();
+            } catch (IOException e) {
+                log.error("save journal write failed: {}", e.getMessage());
+                for (Append a : batch) {
+                    if (a.durable() != null) a.durable().completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(Append a) throws IOException {
+        int length = HEADER + a.payload().length;
+        ByteBuffer buf = ByteBuffer.allocate(length)
+                .putInt(a.payload().length)
+                .putInt(checksum(a.type(), a.payload()))
+                .put(a.type())
+                .put(a.payload())
+                .flip();
+        writeFully(ch, buf, end);
+        if (a.type() == SAVE) live.put(a.seq(), new long[] {end, length});
+        else live.remove(a.seq());
+        end += length;
+    }
+
+    private void compact() throws IOException {
+        if (live.isEmpty()) {
+            if (end > 0) {
+                ch.truncate(0);
+                ch.force(false);
+                end = 0;
+            }
+            return;
+        }
+        if (end < compactAt) return;
+
+        // Copy the live SAVE records, oldest first, to a new file and swap it in.
+        Path tmp = file.resolveSibling(FILE + ".tmp");
+        Map<Long, long[]> moved = new HashMap<>();
+        long at = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Map.Entry<Long, long[]>> records = new ArrayList<>(live.entrySet());
+            records.sort(Map.Entry.comparingByKey(Comparator.naturalOrder()));
+            for (Map.Entry<Long, long[]> r : records) {
+                long offset = r.getValue()[0], length = r.getValue()[1];
+                for (long copied = 0; copied < length; ) {
+                    copied += ch.transferTo(offset + copied, length - copied, out.position(at + copied));
+                }
+                moved.put(r.getKey(), new long[] {at, length});
+                at += length;
+            }
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        ch.close();
+        ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        live.clear();
+        live.putAll(moved);
+        log.info("compacted save journal from {} to {} bytes", end, at);
+        end = at;
+    }
+
+    // ---------- recovery ----------
+    private void recover() throws IOException {
+        long size = ch.size();
+        Map<Long, Document> saves = new HashMap<>();
+        long maxSeq = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (end < size) {
+            header.clear();
+            if (size - end < HEADER || !readFully(ch, header, end)) break;
+            header.flip();
+            int payloadLength = header.getInt();
+            int crc = header.getInt();
+            byte type = header.get();
+            if (payloadLength < 0 || payloadLength > size - end - HEADER) break;
+
+            byte[] payload = new byte[payloadLength];
+            if (!readFully(ch, ByteBuffer.wrap(payload), end + HEADER) || checksum(type, payload) != crc) break;
+
+            long seq;
+            if (type == SAVE) {
+                Document d = new RawBsonDocument(payload).decode(CODEC);
+                seq = d.getLong("seq");
+                saves.put(seq, d);
+                live.put(seq, new long[] {end, HEADER + payloadLength});
+            } else if (type == DONE && payloadLength == 8) {
+                seq = ByteBuffer.wrap(payload).getLong();
+                saves.remove(seq);
+                live.remove(seq);
+            } else {
+                break;
+            }
+            maxSeq = Math.max(maxSeq, seq);
+            end += HEADER + payloadLength;
+        }
+        if (end < size) {
+            log.warn("save journal {} has a torn or corrupt record at {}; dropping its last {} bytes",
+                    file, end, size - end);
+            ch.truncate(end);
+            ch.force(true);
+        }
+        seqs.set(maxSeq + 1);
+        saves.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(e -> recovered.add(e.getValue()));
+    }
+
+    private static int checksum(byte type, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long at) throws IOException {
+        while (buf.hasRemaining()) at += ch.write(buf, at);
+    }
+
+    private static boolean readFully(FileChannel ch, ByteBuffer buf, long at) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, at);
+            if (n < 0) return false;
+            at += n;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,8 @@
+package com.pixology.backend.project;
+
+/** Mongo is failing or too slow and the circuit breaker is open; answered 503 so the client retries. */
+public class StorageUnavailableException extends RuntimeException {
+    public StorageUnavailableException() {
+        super("project storage is unavailable, try again shortly");
+    }
+}
@@ -14,7 +14,9 @@ public class AnimationDetailResponse {
     // NEW: timeline blocks returned to client
     private List<AnimationBlock> animations;
     private boolean favorite;
-    private String previewPng;
+    private String thumbnailUrl;
+    private String thumbnailHash;
+    private long version;
     private Instant createdAt;
     private Instant updatedAt;
 
@@ -41,8 +43,14 @@ public class AnimationDetailResponse {
     public boolean isFavorite() { return favorite; }
     public void setFavorite(boolean favorite) { this.favorite = favorite; }
 
-    public String getPreviewPng() { return previewPng; }
-    public void setPreviewPng(String previewPng) { this.previewPng = previewPng; }
+    public String getThumbnailUrl() { return thumbnailUrl; }
+    public String getThumbnailHash() { return thumbnailHash; }
+
+    public void setThumbnailUrl(String thumbnailUrl) { this.thumbnailUrl = thumbnailUrl; }
+    public void setThumbnailHash(String thumbnailHash) { this.thumbnailHash = thumbnailHash; }
+
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
 
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
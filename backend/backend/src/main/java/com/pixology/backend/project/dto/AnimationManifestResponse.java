@@ -0,0 +1,82 @@
+package com.pixology.backend.project.dto;
+
+import com.pixology.backend.project.AnimationBlock;
+import java.time.Instant;
+import java.util.List;
+
+/** Animation without pixels: enough to lay out the editor, frames are fetched one by one. */
+public class AnimationManifestResponse {
+    private String id;
+    private String name;
+    private int width;
+    private int height;
+    private List<FrameInfo> frames;
+    private List<AnimationBlock> animations;
+    private boolean favorite;
+    private String thumbnailUrl;
+    private String thumbnailHash;
+    private long version;
+    private Instant createdAt;
+    private Instant updatedAt;
+
+    public static class FrameInfo {
+        private String id;
+        private String name;
+        private String selectedLayerId;
+
+        public FrameInfo() {}
+
+        public FrameInfo(String id, String name, String selectedLayerId) {
+            this.id = id;
+            this.name = name;
+            this.selectedLayerId = selectedLayerId;
+        }
+
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getSelectedLayerId() { return selectedLayerId; }
+        public void setSelectedLayerId(String selectedLayerId) { this.selectedLayerId = selectedLayerId; }
+    }
+
+    public AnimationManifestResponse() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public int getWidth() { return width; }
+    public void setWidth(int width) { this.width = width; }
+
+    public int getHeight() { return height; }
+    public void setHeight(int height) { this.height = height; }
+
+    public List<FrameInfo> getFrames() { return frames; }
+    public void setFrames(List<FrameInfo> frames) { this.frames = frames; }
+
+    public List<AnimationBlock> getAnimations() { return animations; }
+    public void setAnimations(List<AnimationBlock> animations) { this.animations = animations; }
+
+    public boolean isFavorite() { return favorite; }
+    public void setFavorite(boolean favorite) { this.favorite = favorite; }
+
+    public String getThumbnailUrl() { return thumbnailUrl; }
+    public String getThumbnailHash() { return thumbnailHash; }
+
+    public void setThumbnailUrl(String thumbnailUrl) { this.thumbnailUrl = thumbnailUrl; }
+    public void setThumbnailHash(String thumbnailHash) { this.thumbnailHash = thumbnailHash; }
+
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
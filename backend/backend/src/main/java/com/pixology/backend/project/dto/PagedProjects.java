@@ -8,6 +8,8 @@ public class PagedProjects {
     private int page;
     private int size;
     private boolean hasNext;
+    // opaque keyset cursor for the next page; null on the last page
+    private String nextCursor;
 
     public PagedProjects() {}
 
@@ -19,15 +21,23 @@ public class PagedProjects {
         this.hasNext = hasNext;
     }
 
+    public PagedProjects(List<ProjectSummaryResponse> items, long total, int page, int size,
+                         boolean hasNext, String nextCursor) {
+        this(items, total, page, size, hasNext);
+        this.nextCursor = nextCursor;
+    }
+
     public List<ProjectSummaryResponse> getItems() { return items; }
     public long getTotal() { return total; }
     public int getPage() { return page; }
     public int getSize() { return size; }
     public boolean isHasNext() { return hasNext; }
+    public String getNextCursor() { return nextCursor; }
 
     public void setItems(List<ProjectSummaryResponse> items) { this.items = items; }
     public void setTotal(long total) { this.total = total; }
     public void setPage(int page) { this.page = page; }
     public void setSize(int size) { this.size = size; }
     public void setHasNext(boolean hasNext) { this.hasNext = hasNext; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
 }
@@ -0,0 +1,51 @@
+package com.pixology.backend.project.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+
+import java.util.List;
+
+public class PatchPixelsRequest {
+
+    // Project version the edits were made against; the patch is rejected if it moved on.
+    // May be left out when the request carries If-Match instead.
+    private Long expectedVersion;
+
+    @NotNull @Size(min = 1) @Valid
+    private List<LayerEdits> layers;
+
+    public static class LayerEdits {
+        @NotBlank
+        private String layerId;
+
+        @NotNull @Size(min = 1) @Valid
+        private List<PixelEdit> edits;
+
+        public String getLayerId() { return layerId; }
+        public void setLayerId(String layerId) { this.layerId = layerId; }
+        public List<PixelEdit> getEdits() { return edits; }
+        public void setEdits(List<PixelEdit> edits) { this.edits = edits; }
+    }
+
+    public static class PixelEdit {
+        @Min(0)
+        private int x;
+        @Min(0)
+        private int y;
+        // null erases the pixel
+        private String color;
+
+        public int getX() { return x; }
+        public void setX(int x) { this.x = x; }
+        public int getY() { return y; }
+        public void setY(int y) { this.y = y; }
+        public String getColor() { return color; }
+        public void setColor(String color) { this.color = color; }
+    }
+
+    public Long getExpectedVersion() { return expectedVersion; }
+    public void setExpectedVersion(Long expectedVersion) { this.expectedVersion = expectedVersion; }
+
+    public List<LayerEdits> getLayers() { return layers; }
+    public void setLayers(List<LayerEdits> layers) { this.layers = layers; }
+}
@@ -13,7 +13,9 @@ public class ProjectDetailResponse {
     private String selectedLayerId;
     private List<ProjectLayer> layers;
     private boolean favorite;
-    private String previewPng;
+    private String thumbnailUrl;
+    private String thumbnailHash;
+    private long version;
     private Instant createdAt;
     private Instant updatedAt;
 
@@ -27,7 +29,9 @@ public class ProjectDetailResponse {
     public String getSelectedLayerId() { return selectedLayerId; }
     public List<ProjectLayer> getLayers() { return layers; }
     public boolean isFavorite() { return favorite; }
-    public String getPreviewPng() { return previewPng; }
+    public String getThumbnailUrl() { return thumbnailUrl; }
+    public String getThumbnailHash() { return thumbnailHash; }
+    public long getVersion() { return version; }
     public Instant getCreatedAt() { return createdAt; }
     public Instant getUpdatedAt() { return updatedAt; }
 
@@ -38,7 +42,9 @@ public class ProjectDetailResponse {
     public void setSelectedLayerId(String selectedLayerId) { this.selectedLayerId = selectedLayerId; }
     public void setLayers(List<ProjectLayer> layers) { this.layers = layers; }
     public void setFavorite(boolean favorite) { this.favorite = favorite; }
-    public void setPreviewPng(String previewPng) { this.previewPng = previewPng; }
+    public void setThumbnailUrl(String thumbnailUrl) { this.thumbnailUrl = thumbnailUrl; }
+    public void setThumbnailHash(String thumbnailHash) { this.thumbnailHash = thumbnailHash; }
+    public void setVersion(long version) { this.version = version; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
     public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
 }
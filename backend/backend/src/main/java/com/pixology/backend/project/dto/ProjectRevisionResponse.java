@@ -0,0 +1,25 @@
+package com.pixology.backend.project.dto;
+
+import java.time.Instant;
+
+public class ProjectRevisionResponse {
+    private String id;
+    private long version;
+    private Instant updatedAt;
+
+    public ProjectRevisionResponse() {}
+
+    public ProjectRevisionResponse(String id, long version, Instant updatedAt) {
+        this.id = id;
+        this.version = version;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getId() { return id; }
+    public long getVersion() { return version; }
+    public Instant getUpdatedAt() { return updatedAt; }
+
+    public void setId(String id) { this.id = id; }
+    public void setVersion(long version) { this.version = version; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -8,19 +8,21 @@ public class ProjectSummaryResponse {
     private int width;
     private int height;
     private boolean favorite;
-    private String previewPng; // small data URL for quick thumbnails
+    private String thumbnailUrl;  // GET-able, cacheable preview (null when there is none)
+    private String thumbnailHash; // changes whenever the preview does
     private Instant updatedAt;
 
     public ProjectSummaryResponse() {}
 
     public ProjectSummaryResponse(String id, String name, int width, int height,
-                                  boolean favorite, String previewPng, Instant updatedAt) {
+                                  boolean favorite, String thumbnailUrl, String thumbnailHash, Instant updatedAt) {
         this.id = id;
         this.name = name;
         this.width = width;
         this.height = height;
         this.favorite = favorite;
-        this.previewPng = previewPng;
+        this.thumbnailUrl = thumbnailUrl;
+        this.thumbnailHash = thumbnailHash;
         this.updatedAt = updatedAt;
     }
 
@@ -29,7 +31,8 @@ public class ProjectSummaryResponse {
     public int getWidth() { return width; }
     public int getHeight() { return height; }
     public boolean isFavorite() { return favorite; }
-    public String getPreviewPng() { return previewPng; }
+    public String getThumbnailUrl() { return thumbnailUrl; }
+    public String getThumbnailHash() { return thumbnailHash; }
     public Instant getUpdatedAt() { return updatedAt; }
 
     public void setId(String id) { this.id = id; }
@@ -37,6 +40,7 @@ public class ProjectSummaryResponse {
     public void setWidth(int width) { this.width = width; }
     public void setHeight(int height) { this.height = height; }
     public void setFavorite(boolean favorite) { this.favorite = favorite; }
-    public void setPreviewPng(String previewPng) { this.previewPng = previewPng; }
+    public void setThumbnailUrl(String thumbnailUrl) { this.thumbnailUrl = thumbnailUrl; }
+    public void setThumbnailHash(String thumbnailHash) { this.thumbnailHash = thumbnailHash; }
     public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
 }
@@ -0,0 +1,14 @@
+package com.pixology.backend.project.dto;
+
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+public class ReorderRequest {
+    // every existing frame/block id exactly once, in the new order
+    @NotNull
+    private List<String> ids;
+
+    public List<String> getIds() { return ids; }
+    public void setIds(List<String> ids) { this.ids = ids; }
+}
@@ -20,9 +20,6 @@ public class SaveAnimationRequest {
     // Timeline blocks (optional). If provided, names required; frames can be empty.
     private List<AnimationBlockDto> animations;
 
-    // small preview (first frame or generated)
-    private String previewPng;
-
     private Boolean favorite = Boolean.FALSE;
 
     public static class FrameDto {
@@ -44,8 +41,9 @@ public class SaveAnimationRequest {
             private boolean visible;
             private boolean locked;
 
-            @NotNull
+            // Either a color grid, or LayerCodec bytes in data (compact, used by the CBOR format).
             private List<List<String>> pixels;
+            private byte[] data;
 
             public String getId() { return id; }
             public void setId(String id) { this.id = id; }
@@ -57,6 +55,8 @@ public class SaveAnimationRequest {
             public void setLocked(boolean locked) { this.locked = locked; }
             public List<List<String>> getPixels() { return pixels; }
             public void setPixels(List<List<String>> pixels) { this.pixels = pixels; }
+            public byte[] getData() { return data; }
+            public void setData(byte[] data) { this.data = data; }
         }
 
         public String getId() { return id; }
@@ -106,9 +106,6 @@ public class SaveAnimationRequest {
     public List<AnimationBlockDto> getAnimations() { return animations; }
     public void setAnimations(List<AnimationBlockDto> animations) { this.animations = animations; }
 
-    public String getPreviewPng() { return previewPng; }
-    public void setPreviewPng(String previewPng) { this.previewPng = previewPng; }
-
     public Boolean getFavorite() { return favorite; }
     public void setFavorite(Boolean favorite) { this.favorite = favorite; }
 }
@@ -20,9 +20,6 @@ public class SaveProjectRequest {
     @NotNull @Size(min = 1)
     private List<LayerDto> layers;
 
-    // data URL "data:image/png;base64,...." (optional but recommended)
-    private String previewPng;
-
     private Boolean favorite = Boolean.FALSE;
 
     public static class LayerDto {
@@ -33,8 +30,9 @@ public class SaveProjectRequest {
         private boolean visible;
         private boolean locked;
 
-        @NotNull
+        // Either a color grid, or LayerCodec bytes in data (compact, used by the CBOR format).
         private List<List<String>> pixels;
+        private byte[] data;
 
         public String getId() { return id; }
         public void setId(String id) { this.id = id; }
@@ -46,6 +44,8 @@ public class SaveProjectRequest {
         public void setLocked(boolean locked) { this.locked = locked; }
         public List<List<String>> getPixels() { return pixels; }
         public void setPixels(List<List<String>> pixels) { this.pixels = pixels; }
+        public byte[] getData() { return data; }
+        public void setData(byte[] data) { this.data = data; }
     }
 
     // getters/setters
@@ -64,9 +64,6 @@ public class SaveProjectRequest {
     public List<LayerDto> getLayers() { return layers; }
     public void setLayers(List<LayerDto> layers) { this.layers = layers; }
 
-    public String getPreviewPng() { return previewPng; }
-    public void setPreviewPng(String previewPng) { this.previewPng = previewPng; }
-
     public Boolean getFavorite() { return favorite; }
     public void setFavorite(Boolean favorite) { this.favorite = favorite; }
 }
@@ -0,0 +1,378 @@
+package com.pixology.backend.project.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pixology.backend.project.AnimationBlock;
+import com.pixology.backend.project.AnimationFrame;
+import com.pixology.backend.project.LayerBlobStore;
+import com.pixology.backend.project.LayerCompositor;
+import com.pixology.backend.project.PendingSaves;
+import com.pixology.backend.project.Project;
+import com.pixology.backend.project.ProjectKind;
+import com.pixology.backend.project.ProjectNotFoundException;
+import com.pixology.backend.project.ProjectRepository;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Renders animation projects to a sprite sheet (PNG + JSON atlas, zipped) or an animated GIF.
+ * Frames are composed in parallel on the common fork-join pool and the encoded output goes
+ * straight to the caller's stream rather than into a buffer.
+ */
+@Service
+public class AnimationExporter {
+
+    static final int MAX_SCALE = 16;
+    static final long MAX_OUTPUT_PIXELS = 64L * 1024 * 1024;
+
+    private final ProjectRepository repo;
+    private final LayerBlobStore blobs;
+    private final PendingSaves saves;
+    private final ObjectMapper mapper;
+
+    public AnimationExporter(ProjectRepository repo, LayerBlobStore blobs, PendingSaves saves,
+                             ObjectMapper mapper) {
+        this.repo = repo;
+        this.blobs = blobs;
+        this.saves = saves;
+        this.mapper = mapper;
+    }
+
+    /** What will be exported: the project plus one frame sequence per animation name. */
+    public record Plan(Project project, Map<String, List<Integer>> sequences, int scale) {
+        public String baseName() {
+            String n = project.getName() == null ? "" : project.getName().replaceAll("[^A-Za-z0-9._-]+", "_");
+            return n.isEmpty() ? "animation" : n;
+        }
+    }
+
+    /**
+     * Loads and validates everything before any bytes are written, so failures still map to
+     * a proper status. With a blockId only that block is exported; otherwise every block,
+     * or all frames in order when the project has no blocks.
+     */
+    public Plan plan(String projectId, String userId, String blockId, int scale) {
+        if (scale < 1 || scale > MAX_SCALE) throw new IllegalArgumentException("scale must be 1-" + MAX_SCALE);
+
+        // A save still pending is exported as acknowledged.
+        Project p = saves.pending(projectId).or(() -> repo.findById(projectId)).orElseThrow(ProjectNotFoundException::new);
+        if (!p.getUserId().equals(userId)) throw new IllegalStateException("forbidden");
+        if (p.getKind() != ProjectKind.ANIMATION) throw new IllegalArgumentException("not an animation project");
+
+        List<AnimationFrame> frames = p.getFrames() == null ? List.of() : p.getFrames();
+        if (frames.isEmpty()) throw new IllegalArgumentException("animation has no frames");
+        blobs.resolve(frames);
+
+        Map<String, List<Integer>> sequences = new LinkedHashMap<>();
+        List<AnimationBlock> blocks = p.getAnimations() == null ? List.of() : p.getAnimations();
+        if (blockId != null) {
+            AnimationBlock b = blocks.stream().filter(x -> blockId.equals(x.getId())).findFirst()
+                    .orElseThrow(() -> new ProjectNotFoundException("animation not found"));
+            sequences.put(nameOf(b), sequence(b.getFrames(), b.getLoopMode(), frames.size()));
+        } else if (!blocks.isEmpty()) {
+            for (AnimationBlock b : blocks) {
+                sequences.putIfAbsent(nameOf(b), sequence(b.getFrames(), b.getLoopMode(), frames.size()));
+            }
+        } else {
+            List<Integer> all = new ArrayList<>();
+            for (int i = 0; i < frames.size(); i++) all.add(i);
+            sequences.put("all", all);
+        }
+        if (sequences.values().stream().allMatch(List::isEmpty))
+            throw new IllegalArgumentException("nothing to export");
+
+        long outputPixels = (long) p.getWidth() * p.getHeight() * scale * scale * frames.size();
+        if (outputPixels > MAX_OUTPUT_PIXELS) throw new IllegalArgumentException("export too large");
+        return new Plan(p, sequences, scale);
+    }
+
+    private static String nameOf(AnimationBlock b) {
+        return b.getName() != null && !b.getName().isBlank() ? b.getName() : b.getId();
+    }
+
+    /**
+     * Playback order of a block: forward as listed, backward reversed, pingpong forward
+     * then back without repeating either end. Indices outside the frame list are dropped.
+     */
+    static List<Integer> sequence(List<Integer> frames, String loopMode, int frameCount) {
+        List<Integer> seq = new ArrayList<>();
+        if (frames != null) {
+            for (Integer f : frames) {
+                if (f != null && f >= 0 && f < frameCount) seq.add(f);
+            }
+        }
+        String mode = loopMode == null ? "forward" : loopMode.trim().toLowerCase();
+        switch (mode) {
+            case "backward" -> Collections.reverse(seq);
+            case "pingpong" -> {
+                for (int i = seq.size() - 2; i > 0; i--) seq.add(seq.get(i));
+            }
+            default -> { }
+        }
+        return seq;
+    }
+
+    // ---------- sprite sheet ----------
+
+    /**
+     * Writes a zip with sheet.png and atlas.json. Each distinct frame image occupies one
+     * cell of a near-square grid; frames with identical pixels share a cell.
+     */
+    public void writeSheet(Plan plan, OutputStream out) throws IOException {
+        Project p = plan.project();
+        int w = p.getWidth() * plan.scale();
+        int h = p.getHeight() * plan.scale();
+
+        List<Integer> used = plan.sequences().values().stream().flatMap(List::stream).distinct().sorted().toList();
+        Map<Integer, int[]> images = composeAll(p, used, plan.scale());
+
+        // Dedupe identical frames so the sheet only carries each image once.
+        Map<Integer, Integer> cellOf = new HashMap<>();
+        List<int[]> cells = new ArrayList<>();
+        Map<PixelsKey, Integer> seen = new HashMap<>();
+        for (Integer f : used) {
+            int[] px = images.get(f);
+            cellOf.put(f, seen.computeIfAbsent(new PixelsKey(px), k -> {
+                cells.add(px);
+                return cells.size() - 1;
+            }));
+        }
+
+        int columns = (int) Math.ceil(Math.sqrt(cells.size()));
+        int rows = (cells.size() + columns - 1) / columns;
+        BufferedImage sheet = new BufferedImage(columns * w, rows * h, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < cells.size(); i++) {
+            sheet.setRGB((i % columns) * w, (i / columns) * h, w, h, cells.get(i), 0, w);
+        }
+
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.putNextEntry(new ZipEntry("sheet.png"));
+        ImageIO.write(sheet, "png", new NonClosing(zip));
+        zip.closeEntry();
+
+        zip.putNextEntry(new ZipEntry("atlas.json"));
+        try (JsonGenerator g = mapper.getFactory().createGenerator(new NonClosing(zip))) {
+            g.useDefaultPrettyPrinter();
+            g.writeStartObject();
+
+            g.writeObjectFieldStart("frames");
+            for (Integer f : used) {
+                int cell = cellOf.get(f);
+                g.writeObjectFieldStart(frameName(f));
+                g.writeObjectFieldStart("frame");
+                g.writeNumberField("x", (cell % columns) * w);
+                g.writeNumberField("y", (cell / columns) * h);
+                g.writeNumberField("w", w);
+                g.writeNumberField("h", h);
+                g.writeEndObject();
+                g.writeStringField("frameId", p.getFrames().get(f).getId());
+                g.writeEndObject();
+            }
+            g.writeEndObject();
+
+            g.writeObjectFieldStart("animations");
+            for (Map.Entry<String, List<Integer>> e : plan.sequences().entrySet()) {
+                g.writeArrayFieldStart(e.getKey());
+                for (Integer f : e.getValue()) g.writeString(frameName(f));
+                g.writeEndArray();
+            }
+            g.writeEndObject();
+
+            g.writeObjectFieldStart("meta");
+            g.writeStringField("image", "sheet.png");
+            g.writeStringField("format", "RGBA8888");
+            g.writeObjectFieldStart("size");
+            g.writeNumberField("w", sheet.getWidth());
+            g.writeNumberField("h", sheet.getHeight());
+            g.writeEndObject();
+            g.writeNumberField("scale", plan.scale());
+            g.writeEndObject();
+
+            g.writeEndObject();
+        }
+        zip.closeEntry();
+        zip.finish();
+        zip.flush();
+    }
+
+    private static String frameName(int index) {
+        return "frame_" + index;
+    }
+
+    private static Map<Integer, int[]> composeAll(Project p, List<Integer> frames, int scale) {
+        Map<Integer, int[]> images = new HashMap<>();
+        List<CompletableFuture<int[]>> jobs = frames.stream()
+                .map(f -> CompletableFuture.supplyAsync(() -> compose(p, f, scale)))
+                .toList();
+        for (int i = 0; i < frames.size(); i++) images.put(frames.get(i), join(jobs.get(i)));
+        return images;
+    }
+
+    private static int[] compose(Project p, int frame, int scale) {
+        int w = p.getWidth();
+        int h = p.getHeight();
+        return LayerCompositor.composite(w, h, p.getFrames().get(frame).getLayers(), w * scale, h * scale);
+    }
+
+    private static <T> T join(CompletableFuture<T> job) {
+        try {
+            return job.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    // ---------- GIF ----------
+
+    /**
+     * Writes an endlessly looping GIF of the plan's first sequence at fps frames per second.
+     * A bounded window of frames is composed ahead in parallel while earlier ones are encoded.
+     */
+    public void writeGif(Plan plan, int fps, OutputStream out) throws IOException {
+        if (fps < 1 || fps > 50) throw new IllegalArgumentException("fps must be 1-50");
+        Project p = plan.project();
+        List<Integer> seq = plan.sequences().values().stream().filter(s -> !s.isEmpty()).findFirst().orElseThrow();
+        int w = p.getWidth() * plan.scale();
+        int h = p.getHeight() * plan.scale();
+        int delay = Math.max(2, Math.round(100f / fps)); // centiseconds; browsers clamp below 2
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        ImageOutputStream ios = new MemoryCacheImageOutputStream(out);
+        try {
+            writer.setOutput(ios);
+            writer.prepareWriteSequence(null);
+
+            int window = Runtime.getRuntime().availableProcessors() * 2;
+            Deque<CompletableFuture<BufferedImage>> ahead = new ArrayDeque<>();
+            int next = 0;
+            for (int written = 0; written < seq.size(); written++) {
+                while (next < seq.size() && ahead.size() < window) {
+                    int frame = seq.get(next++);
+                    ahead.add(CompletableFuture.supplyAsync(() -> toIndexed(compose(p, frame, plan.scale()), w, h)));
+                }
+                BufferedImage img = join(ahead.poll());
+                writer.writeToSequence(new IIOImage(img, null, gifFrameMetadata(writer, img, delay, written == 0)), null);
+                ios.flushBefore(ios.getStreamPosition());
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+            ios.flush();
+        }
+    }
+
+    /**
+     * GIF has 256 colors and 1-bit alpha: index 0 is transparent, pixels under half alpha map
+     * to it. Frames with more than 255 colors fall back to the JDK's fixed palette.
+     */
+    private static BufferedImage toIndexed(int[] argb, int w, int h) {
+        Map<Integer, Integer> index = new HashMap<>();
+        for (int c : argb) {
+            if ((c >>> 24) < 0x80) continue;
+            index.putIfAbsent(c | 0xFF000000, index.size() + 1);
+            if (index.size() > 255) break;
+        }
+
+        if (index.size() <= 255) {
+            int size = index.size() + 1;
+            byte[] r = new byte[size], g = new byte[size], b = new byte[size];
+            index.forEach((c, i) -> {
+                r[i] = (byte) (c >> 16);
+                g[i] = (byte) (c >> 8);
+                b[i] = (byte) (c & 0xFF);
+            });
+            IndexColorModel cm = new IndexColorModel(8, size, r, g, b, 0);
+            BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, cm);
+            byte[] px = new byte[argb.length];
+            for (int i = 0; i < argb.length; i++) {
+                int c = argb[i];
+                px[i] = (byte) ((c >>> 24) < 0x80 ? 0 : index.get(c | 0xFF000000));
+            }
+            img.getRaster().setDataElements(0, 0, w, h, px);
+            return img;
+        }
+
+        BufferedImage rgb = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        int[] clipped = Arrays.copyOf(argb, argb.length);
+        for (int i = 0; i < clipped.length; i++) clipped[i] = (clipped[i] >>> 24) < 0x80 ? 0 : clipped[i] | 0xFF000000;
+        rgb.setRGB(0, 0, w, h, clipped, 0, w);
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED);
+        img.getGraphics().drawImage(rgb, 0, 0, null);
+        return img;
+    }
+
+    private static IIOMetadata gifFrameMetadata(ImageWriter writer, BufferedImage img, int delay, boolean first)
+            throws IOException {
+        IIOMetadata meta = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(img), null);
+        String format = meta.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) meta.getAsTree(format);
+
+        IIOMetadataNode gce = child(root, "GraphicControlExtension");
+        gce.setAttribute("disposalMethod", "restoreToBackgroundColor");
+        gce.setAttribute("userInputFlag", "FALSE");
+        gce.setAttribute("delayTime", Integer.toString(delay));
+        boolean transparent = img.getColorModel() instanceof IndexColorModel icm && icm.getTransparentPixel() == 0;
+        gce.setAttribute("transparentColorFlag", transparent ? "TRUE" : "FALSE");
+        gce.setAttribute("transparentColorIndex", "0");
+
+        if (first) {
+            IIOMetadataNode apps = child(root, "ApplicationExtensions");
+            IIOMetadataNode app = new IIOMetadataNode("ApplicationExtension");
+            app.setAttribute("applicationID", "NETSCAPE");
+            app.setAttribute("authenticationCode", "2.0");
+            app.setUserObject(new byte[]{1, 0, 0}); // loop forever
+            apps.appendChild(app);
+        }
+        meta.setFromTree(format, root);
+        return meta;
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode root, String name) {
+        for (int i = 0; i < root.getLength(); i++) {
+            if (root.item(i).getNodeName().equalsIgnoreCase(name)) return (IIOMetadataNode) root.item(i);
+        }
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        root.appendChild(node);
+        return node;
+    }
+
+    // Identity of a frame image by content, for sheet deduplication.
+    private record PixelsKey(int[] px) {
+        @Override public boolean equals(Object o) { return o instanceof PixelsKey k && Arrays.equals(px, k.px); }
+        @Override public int hashCode() { return Arrays.hashCode(px); }
+    }
+
+    // ImageIO and Jackson close what they are given; zip entries must stay open.
+    private static final class NonClosing extends FilterOutputStream {
+        NonClosing(OutputStream out) { super(out); }
+        @Override public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); }
+        @Override public void close() throws IOException { flush(); }
+    }
+}
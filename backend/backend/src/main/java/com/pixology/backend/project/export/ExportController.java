@@ -0,0 +1,71 @@
+package com.pixology.backend.project.export;
+
+import com.pixology.backend.project.ProjectNotFoundException;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.context.annotation.Profile;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/projects")
+public class ExportController {
+
+    private final AnimationExporter exporter;
+
+    public ExportController(AnimationExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    // GET /api/projects/animations/{id}/export?userId=...&format=sheet|gif&block=...&scale=1&fps=12
+    @GetMapping("/animations/{id}/export")
+    public ResponseEntity<?> export(@PathVariable String id,
+                                    @RequestParam String userId,
+                                    @RequestParam(defaultValue = "sheet") String format,
+                                    @RequestParam(required = false) String block,
+                                    @RequestParam(defaultValue = "1") int scale,
+                                    @RequestParam(defaultValue = "12") int fps) {
+        AnimationExporter.Plan plan;
+        try {
+            plan = exporter.plan(id, userId, block, scale);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (ProjectNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("failed to export animation");
+        }
+
+        StreamingResponseBody body;
+        MediaType type;
+        String filename;
+        switch (format.trim().toLowerCase()) {
+            case "sheet" -> {
+                body = out -> exporter.writeSheet(plan, out);
+                type = MediaType.parseMediaType("application/zip");
+                filename = plan.baseName() + ".zip";
+            }
+            case "gif" -> {
+                if (fps < 1 || fps > 50) return ResponseEntity.badRequest().body("fps must be 1-50");
+                body = out -> exporter.writeGif(plan, fps, out);
+                type = MediaType.IMAGE_GIF;
+                filename = plan.baseName() + ".gif";
+            }
+            default -> {
+                return ResponseEntity.badRequest().body("invalid format");
+            }
+        }
+
+        return ResponseEntity.ok()
+                .contentType(type)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(filename).build().toString())
+                .body(body);
+    }
+}
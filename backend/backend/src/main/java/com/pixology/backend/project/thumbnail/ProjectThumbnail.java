@@ -0,0 +1,42 @@
+package com.pixology.backend.project.thumbnail;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/** Binary project preview, stored apart from the project so lists and saves stay small. */
+@Document(collection = "ProjectThumbnails")
+public class ProjectThumbnail {
+
+    // same id as the project
+    @Id
+    private String id;
+
+    private String userId;
+    private String contentType;
+    private byte[] data;
+
+    // content hash of data; doubles as the ETag and the cache-busting URL param
+    private String hash;
+
+    private Instant updatedAt;
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+
+    public byte[] getData() { return data; }
+    public void setData(byte[] data) { this.data = data; }
+
+    public String getHash() { return hash; }
+    public void setHash(String hash) { this.hash = hash; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
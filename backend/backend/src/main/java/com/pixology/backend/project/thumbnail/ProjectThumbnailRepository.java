@@ -0,0 +1,9 @@
+package com.pixology.backend.project.thumbnail;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Optional;
+
+public interface ProjectThumbnailRepository extends MongoRepository<ProjectThumbnail, String> {
+    Optional<ProjectThumbnail> findByIdAndUserId(String id, String userId);
+}
@@ -0,0 +1,49 @@
+package com.pixology.backend.project.thumbnail;
+
+import com.pixology.backend.project.ETags;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/projects")
+public class ThumbnailController {
+
+    private final ThumbnailService service;
+
+    public ThumbnailController(ThumbnailService service) {
+        this.service = service;
+    }
+
+    // GET /api/projects/{id}/thumbnail?userId=...&v=<hash>
+    @GetMapping("/{id}/thumbnail")
+    public ResponseEntity<?> get(@PathVariable String id,
+                                 @RequestParam String userId,
+                                 @RequestParam(required = false) String v,
+                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Optional<ProjectThumbnail> t = service.find(id, userId);
+        if (t.isEmpty()) return ResponseEntity.status(HttpStatus.NOT_FOUND).body("thumbnail not found");
+
+        ProjectThumbnail thumb = t.get();
+        String etag = "\"" + thumb.getHash() + "\"";
+        // A URL pinned to the current hash never changes; anything else must revalidate.
+        CacheControl cache = thumb.getHash().equals(v)
+                ? CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable()
+                : CacheControl.noCache().cachePrivate();
+
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cache).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(cache)
+                .contentType(MediaType.parseMediaType(thumb.getContentType()))
+                .body(thumb.getData());
+    }
+}
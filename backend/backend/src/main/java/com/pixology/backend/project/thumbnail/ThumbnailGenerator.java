@@ -0,0 +1,104 @@
+package com.pixology.backend.project.thumbnail;
+
+import com.pixology.backend.project.AnimationFrame;
+import com.pixology.backend.project.LayerBlobStore;
+import com.pixology.backend.project.Project;
+import com.pixology.backend.project.ProjectKind;
+import com.pixology.backend.project.ProjectLayer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Renders project thumbnails off the request thread.
+ * At most one render per project is queued or running; saves that land meanwhile
+ * only mark it for one more pass, which then reads the latest state.
+ */
+@Component
+public class ThumbnailGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailGenerator.class);
+
+    private final MongoTemplate mongo;
+    private final ThumbnailService thumbnails;
+    private final LayerBlobStore blobs;
+    private final Executor executor;
+
+    // projectId -> "saved again since this render started"
+    private final ConcurrentHashMap<String, Boolean> scheduled = new ConcurrentHashMap<>();
+
+    public ThumbnailGenerator(MongoTemplate mongo, ThumbnailService thumbnails, LayerBlobStore blobs,
+                              @Qualifier("applicationTaskExecutor") Executor executor) {
+        this.mongo = mongo;
+        this.thumbnails = thumbnails;
+        this.blobs = blobs;
+        this.executor = executor;
+    }
+
+    /** Queues a re-render of the project's thumbnail; cheap enough to call on every save. */
+    public void refresh(String projectId) {
+        boolean[] start = {false};
+        scheduled.compute(projectId, (id, again) -> {
+            if (again == null) {
+                start[0] = true;
+                return Boolean.FALSE;
+            }
+            return Boolean.TRUE;
+        });
+        if (start[0]) executor.execute(() -> run(projectId));
+    }
+
+    private void run(String projectId) {
+        do {
+            scheduled.put(projectId, Boolean.FALSE);
+            try {
+                render(projectId);
+            } catch (Exception e) {
+                log.warn("thumbnail render failed for project {}: {}", projectId, e.getMessage());
+            }
+        } while (!scheduled.remove(projectId, Boolean.FALSE));
+    }
+
+    void render(String projectId) {
+        Query q = Query.query(where("_id").is(projectId));
+        q.fields().include("userId", "kind", "width", "height", "layers").slice("frames", 1);
+        Project p = mongo.findOne(q, Project.class);
+        if (p == null) return;
+        if (p.getFrames() != null) blobs.resolve(p.getFrames());
+
+        List<ProjectLayer> layers = p.getKind() == ProjectKind.ANIMATION
+                ? firstFrameLayers(p.getFrames())
+                : p.getLayers();
+        byte[] png = ThumbnailRenderer.renderPng(p.getWidth(), p.getHeight(), layers);
+        if (png == null) return;
+
+        ProjectThumbnail t = new ProjectThumbnail();
+        t.setContentType("image/png");
+        t.setData(png);
+        t.setHash(ThumbnailService.hash(t.getContentType(), png));
+        thumbnails.save(projectId, p.getUserId(), t);
+
+        // Touches only thumbnailHash: neither a new version nor a new updatedAt. Written to the
+        // collection rather than Project.class so the template doesn't add a @Version $inc.
+        Update u = new Update().set("thumbnailHash", t.getHash());
+        if (mongo.updateFirst(Query.query(where("_id").is(projectId)), u, mongo.getCollectionName(Project.class))
+                .getMatchedCount() == 0) {
+            thumbnails.delete(projectId); // deleted while rendering
+        }
+    }
+
+    private static List<ProjectLayer> firstFrameLayers(List<AnimationFrame> frames) {
+        if (frames == null || frames.isEmpty()) return null;
+        return frames.get(0).getLayers();
+    }
+}
@@ -0,0 +1,61 @@
+package com.pixology.backend.project.thumbnail;
+
+import com.pixology.backend.project.Project;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Drops the client-made previews older saves inlined as Project.previewPng and renders
+ * a server-side thumbnail in their place.
+ * Idempotent: each migrated project loses its previewPng, so reruns find nothing.
+ */
+@Component
+public class ThumbnailMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailMigration.class);
+
+    private final MongoTemplate mongo;
+    private final ThumbnailGenerator generator;
+
+    public ThumbnailMigration(MongoTemplate mongo, ThumbnailGenerator generator) {
+        this.mongo = mongo;
+        this.generator = generator;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateInlinePreviews() {
+        String collection = mongo.getCollectionName(Project.class);
+        Query q = Query.query(where("previewPng").exists(true));
+        q.fields().include("_id");
+
+        int moved = 0;
+        try (Stream<Document> docs = mongo.stream(q, Document.class, collection)) {
+            for (Document d : (Iterable<Document>) docs::iterator) {
+                Object id = d.get("_id");
+                // Only claim documents a newer save has not already rewritten.
+                Query still = Query.query(where("_id").is(id).and("previewPng").exists(true));
+                if (mongo.updateFirst(still, new Update().unset("previewPng"), collection).getModifiedCount() == 1) {
+                    generator.refresh(id.toString());
+                }
+                moved++;
+            }
+        } catch (Exception e) {
+            log.warn("preview migration stopped after {} projects: {}", moved, e.getMessage());
+            return;
+        }
+        if (moved > 0) log.info("replaced {} inline previews with rendered thumbnails", moved);
+    }
+}
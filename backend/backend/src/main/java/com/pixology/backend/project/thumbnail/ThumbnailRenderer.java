@@ -0,0 +1,42 @@
+package com.pixology.backend.project.thumbnail;
+
+import com.pixology.backend.project.LayerCompositor;
+import com.pixology.backend.project.ProjectLayer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Flattens visible layers into a PNG no larger than MAX_SIZE on either side.
+ * Downscaling is nearest-neighbour so pixel art stays crisp; smaller sprites keep their size.
+ */
+final class ThumbnailRenderer {
+
+    static final int MAX_SIZE = 128;
+
+    private ThumbnailRenderer() {}
+
+    /** Layers are topmost first, as stored. Returns null when there is nothing to draw. */
+    static byte[] renderPng(int width, int height, List<ProjectLayer> layers) {
+        if (width <= 0 || height <= 0 || layers == null || layers.isEmpty()) return null;
+
+        double scale = Math.min(1.0, (double) MAX_SIZE / Math.max(width, height));
+        int tw = Math.max(1, (int) Math.round(width * scale));
+        int th = Math.max(1, (int) Math.round(height * scale));
+        int[] out = LayerCompositor.composite(width, height, layers, tw, th);
+
+        BufferedImage img = new BufferedImage(tw, th, BufferedImage.TYPE_INT_ARGB);
+        img.setRGB(0, 0, tw, th, out, 0, tw);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(img, "png", bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,60 @@
+package com.pixology.backend.project.thumbnail;
+
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+
+@Service
+public class ThumbnailService {
+
+    private final ProjectThumbnailRepository repo;
+
+    public ThumbnailService(ProjectThumbnailRepository repo) {
+        this.repo = repo;
+    }
+
+    public void save(String projectId, String userId, ProjectThumbnail t) {
+        t.setId(projectId);
+        t.setUserId(userId);
+        t.setUpdatedAt(Instant.now());
+        repo.save(t);
+    }
+
+    public Optional<ProjectThumbnail> find(String projectId, String userId) {
+        return repo.findByIdAndUserId(projectId, userId);
+    }
+
+    public void delete(String projectId) {
+        repo.deleteById(projectId);
+    }
+
+    /** Relative URL for the thumbnail; the hash makes it safe to cache forever. */
+    public static String url(String projectId, String userId, String hash) {
+        if (hash == null) return null;
+        return UriComponentsBuilder.fromPath("/api/projects/{id}/thumbnail")
+                .queryParam("userId", userId)
+                .queryParam("v", hash)
+                .buildAndExpand(projectId)
+                .encode()
+                .toUriString();
+    }
+
+    static String hash(String contentType, byte[] data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(contentType.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(data);
+            // 128 bits is plenty for a per-project validator and keeps URLs short
+            return HexFormat.of().formatHex(md.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
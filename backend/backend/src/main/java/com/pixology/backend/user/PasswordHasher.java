@@ -0,0 +1,99 @@
+package com.pixology.backend.user;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BCrypt on its own small pool. A hash at cost 12 is ~250 ms of CPU, so running it on request
+ * threads lets a burst of logins starve every other request; here at most {@code threads}
+ * hashes run at once and at most {@code queue} wait. Anything beyond that fails fast with
+ * {@link PasswordHasherBusyException} (503) instead of queueing behind the burst.
+ * The pool is published as executor.* metrics with name=password-hasher.
+ */
+@Component
+public class PasswordHasher {
+
+    private final int cost;
+    final ThreadPoolExecutor pool;
+
+    public PasswordHasher(@Value("${pixology.password.bcrypt-cost:12}") int cost,
+                          @Value("${pixology.password.threads:0}") int threads,
+                          @Value("${pixology.password.queue:32}") int queue,
+                          MeterRegistry registry) {
+        if (cost < 4 || cost > 31) throw new IllegalArgumentException("bcrypt cost must be between 4 and 31");
+        this.cost = cost;
+        // Default: leave one core for everything else.
+        int n = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(n, n, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queue)),
+                r -> {
+                    Thread t = new Thread(r, "password-hasher-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        ExecutorServiceMetrics.monitor(registry, pool, "password-hasher", List.of());
+    }
+
+    public String hash(String raw) {
+        return run(() -> BCrypt.hashpw(raw, BCrypt.gensalt(cost)));
+    }
+
+    public boolean matches(String raw, String hash) {
+        if (hash == null || hash.isEmpty()) return false;
+        return run(() -> BCrypt.checkpw(raw, hash));
+    }
+
+    /** Whether a stored hash was made at a different cost than the configured one. */
+    public boolean needsRehash(String hash) {
+        return costOf(hash) != cost;
+    }
+
+    // "$2a$12$<salt+hash>"; anything unparseable counts as outdated.
+    static int costOf(String hash) {
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$') return -1;
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // The caller waits (cheaply, on a virtual thread) but the CPU work is bounded by the pool.
+    <T> T run(Callable<T> task) {
+        Future<T> f;
+        try {
+            f = pool.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new PasswordHasherBusyException();
+        }
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+}
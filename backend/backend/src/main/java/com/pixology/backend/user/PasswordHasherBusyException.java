@@ -0,0 +1,8 @@
+package com.pixology.backend.user;
+
+/** Every hashing thread is busy and the queue is full; answered 503 so the client retries. */
+public class PasswordHasherBusyException extends RuntimeException {
+    public PasswordHasherBusyException() {
+        super("too many sign-ins right now, try again shortly");
+    }
+}
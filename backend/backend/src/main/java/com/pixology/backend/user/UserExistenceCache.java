@@ -0,0 +1,43 @@
+package com.pixology.backend.user;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers user ids that are known to exist, so request validation does not cost a
+ * Mongo round trip on every save. Users are never deleted, so a hit can't go stale;
+ * misses are not cached and always ask the database.
+ */
+@Component
+public class UserExistenceCache {
+
+    // Crude bound: start over rather than grow without limit.
+    static final int MAX_ENTRIES = 100_000;
+
+    private final UserRepository repo;
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+
+    public UserExistenceCache(UserRepository repo) {
+        this.repo = repo;
+    }
+
+    public boolean exists(String userId) {
+        if (known.contains(userId)) return true;
+        boolean exists = repo.existsById(userId);
+        if (exists) remember(userId);
+        return exists;
+    }
+
+    /** Cache only, never a query; for callers that look the user up themselves (the reactive stack). */
+    public boolean isKnown(String userId) {
+        return known.contains(userId);
+    }
+
+    /** Called where a user is seen anyway (register, login). */
+    public void remember(String userId) {
+        if (known.size() >= MAX_ENTRIES) known.clear();
+        known.add(userId);
+    }
+}
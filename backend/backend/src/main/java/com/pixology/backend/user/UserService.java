@@ -3,7 +3,6 @@ package com.pixology.backend.user;
 import com.pixology.backend.user.dto.RegisterRequest;
 import com.pixology.backend.user.dto.UserResponse;
 import org.springframework.dao.DuplicateKeyException;
-import org.springframework.security.crypto.bcrypt.BCrypt;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -12,9 +11,13 @@ import java.util.Optional;
 public class UserService {
 
     private final UserRepository repo;
+    private final UserExistenceCache knownUsers;
+    private final PasswordHasher hasher;
 
-    public UserService(UserRepository repo) {
+    public UserService(UserRepository repo, UserExistenceCache knownUsers, PasswordHasher hasher) {
         this.repo = repo;
+        this.knownUsers = knownUsers;
+        this.hasher = hasher;
     }
 
     public UserResponse register(RegisterRequest req) {
@@ -33,8 +36,9 @@ public class UserService {
             throw new DuplicateKeyException("email already exists");
         }
 
-        final String hash = BCrypt.hashpw(password, BCrypt.gensalt(12));
+        final String hash = hasher.hash(password);
         User saved = repo.save(new User(username, email.toLowerCase(), hash));
+        knownUsers.remember(saved.getId());
 
         return new UserResponse(saved.getId(), saved.getUsername(), saved.getEmail());
     }
@@ -44,8 +48,24 @@ public class UserService {
         final String pw = rawPassword == null ? "" : rawPassword;
         if (em.isBlank() || pw.isBlank()) return Optional.empty();
 
-        return repo.findByEmail(em)
-                .filter(u -> BCrypt.checkpw(pw, u.getPasswordHash()));
+        Optional<User> user = repo.findByEmail(em)
+                .filter(u -> hasher.matches(pw, u.getPasswordHash()));
+        user.ifPresent(u -> {
+            knownUsers.remember(u.getId());
+            if (hasher.needsRehash(u.getPasswordHash())) rehash(u, pw);
+        });
+        return user;
+    }
+
+    // The configured cost changed since this hash was made; the password is at hand, so move it over.
+    // Best effort: if the hasher is saturated, the next login tries again.
+    private void rehash(User u, String rawPassword) {
+        try {
+            u.setPasswordHash(hasher.hash(rawPassword));
+            repo.save(u);
+        } catch (PasswordHasherBusyException e) {
+            // keep the old hash
+        }
     }
 
     public Optional<UserResponse> login(String email, String rawPassword) {
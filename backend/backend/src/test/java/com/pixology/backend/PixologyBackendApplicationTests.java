@@ -3,7 +3,8 @@ package com.pixology.backend;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = {"pixology.journal.dir=${java.io.tmpdir}/pixology-test-journal",
+		"pixology.indexes.required=false"})
 class PixologyBackendApplicationTests {
 
 	@Test
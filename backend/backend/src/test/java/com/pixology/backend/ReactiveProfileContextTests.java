@@ -0,0 +1,16 @@
+package com.pixology.backend;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest(properties = {"pixology.journal.dir=${java.io.tmpdir}/pixology-test-journal",
+		"pixology.indexes.required=false"})
+@ActiveProfiles("reactive")
+class ReactiveProfileContextTests {
+
+	@Test
+	void contextLoads() {
+	}
+
+}
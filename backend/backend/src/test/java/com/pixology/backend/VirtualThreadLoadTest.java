@@ -0,0 +1,102 @@
+package com.pixology.backend;
+
+import com.pixology.backend.user.PasswordHasher;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Saves keep flowing while a burst of logins hashes passwords: requests run on virtual threads
+ * and BCrypt on its own pool (PasswordHasher), so the hashes never hold the carrier threads
+ * that every other request needs. Starts the app with a stand-in login (a real BCrypt check)
+ * and a stand-in save (blocked the way an Atlas write is) and times saves during the burst.
+ */
+class VirtualThreadLoadTest {
+
+	static final int LOGINS = 32; // the hasher's queue plus its one thread: none is turned away
+	static final long SAVE_MS = 20; // a typical Atlas round trip
+	static final long SAVE_P99_MS = 250;
+
+	@Test
+	void savesKeepTheirLatencyDuringALoginBurst() throws Exception {
+		try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(
+				PixologyBackendApplication.class, StandIns.class)
+				// Arguments, not properties(): those are defaults, below application.properties.
+				.run("--server.port=0", "--spring.threads.virtual.enabled=true",
+						"--pixology.password.bcrypt-cost=11", "--pixology.password.threads=1",
+						"--pixology.password.queue=" + LOGINS,
+						"--pixology.journal.dir=${java.io.tmpdir}/pixology-test-journal",
+						"--pixology.indexes.required=false")) {
+			int port = ((ServletWebServerApplicationContext) ctx).getWebServer().getPort();
+			HttpClient client = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_1_1)
+					.executor(Executors.newVirtualThreadPerTaskExecutor())
+					.build();
+			HttpRequest login = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/loadtest/login")).build();
+			HttpRequest save = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/loadtest/save")).build();
+
+			for (int i = 0; i < 20; i++) client.send(save, HttpResponse.BodyHandlers.discarding()); // warm up
+
+			long start = System.nanoTime();
+			List<CompletableFuture<HttpResponse<Void>>> logins = new ArrayList<>();
+			for (int i = 0; i < LOGINS; i++) logins.add(client.sendAsync(login, HttpResponse.BodyHandlers.discarding()));
+			CompletableFuture<Void> burst = CompletableFuture.allOf(logins.toArray(CompletableFuture[]::new));
+
+			List<Long> saveMillis = new ArrayList<>();
+			while (!burst.isDone()) {
+				long t = System.nanoTime();
+				assertThat(client.send(save, HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(200);
+				saveMillis.add((System.nanoTime() - t) / 1_000_000);
+			}
+			long burstMillis = (System.nanoTime() - start) / 1_000_000;
+
+			for (CompletableFuture<HttpResponse<Void>> l : logins) assertThat(l.join().statusCode()).isEqualTo(200);
+			// Otherwise a save stuck behind the whole burst would still pass.
+			assertThat(burstMillis).isGreaterThan(4 * SAVE_P99_MS);
+			assertThat(saveMillis).hasSizeGreaterThan(10);
+			assertThat(percentile(saveMillis, 0.99)).isLessThan(SAVE_P99_MS);
+		}
+	}
+
+	private static long percentile(List<Long> values, double p) {
+		List<Long> sorted = values.stream().sorted().toList();
+		return sorted.get((int) Math.ceil(p * sorted.size()) - 1);
+	}
+
+	// Stand in for AuthController and ProjectController, minus Atlas.
+	@RestController
+	static class StandIns {
+		private final PasswordHasher hasher;
+		private final String hash;
+
+		StandIns(PasswordHasher hasher) {
+			this.hasher = hasher;
+			this.hash = hasher.hash("secret123");
+		}
+
+		@GetMapping("/api/loadtest/login")
+		boolean login() {
+			return hasher.matches("secret123", hash);
+		}
+
+		@GetMapping("/api/loadtest/save")
+		String save() throws InterruptedException {
+			Thread.sleep(SAVE_MS);
+			return "ok";
+		}
+	}
+}
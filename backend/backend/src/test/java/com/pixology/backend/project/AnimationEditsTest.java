@@ -0,0 +1,182 @@
+package com.pixology.backend.project;
+
+import com.pixology.backend.project.thumbnail.ThumbnailGenerator;
+import com.pixology.backend.project.thumbnail.ThumbnailService;
+import com.pixology.backend.user.UserExistenceCache;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/** Frame and block edits by id: the writes they send, how block references follow, and If-Match. */
+class AnimationEditsTest {
+
+	private static final Instant T = Instant.parse("2025-06-01T12:00:00Z");
+
+	private final ProjectRepository repo = mock(ProjectRepository.class);
+	private final ProjectService service;
+
+	AnimationEditsTest() {
+		UserExistenceCache users = mock(UserExistenceCache.class);
+		when(users.exists("u")).thenReturn(true);
+		service = new ProjectService(repo, users, mock(ThumbnailService.class), mock(ThumbnailGenerator.class),
+				mock(AnimationDetailWriter.class), mock(ProjectCache.class), mock(LayerBlobStore.class),
+				mock(PendingSaves.class));
+	}
+
+	@Test
+	void replacesInPlaceOrPushesByElementId() {
+		Document frame = new Document("_id", "f2");
+
+		ProjectQueries.Write replace = ProjectQueries.replaceElement(frame, "p1", "u", "frames", "f2", 4L, T);
+		assertEquals("f2", replace.query().getQueryObject().get("frames._id"));
+		assertEquals(4L, replace.query().getQueryObject().get("version"));
+		assertEquals(frame, set(replace.update()).get("frames.$"), "positional, not by index");
+
+		ProjectQueries.Write append = ProjectQueries.appendElement(frame, "p1", "u", "frames", "f2", null, T);
+		assertEquals(new Document("$ne", "f2"), append.query().getQueryObject().get("frames._id"));
+		assertFalse(append.query().getQueryObject().containsKey("version"), "no If-Match, no condition");
+		assertEquals(frame, append.update().getUpdateObject().get("$push", Document.class).get("frames"));
+	}
+
+	@Test
+	void pullsAFrameAndShiftsLaterReferencesDown() {
+		int[] remap = ProjectMapping.removalRemap(List.of("a", "b", "c", "d"), "b");
+		assertArrayEquals(new int[] { 0, -1, 1, 2 }, remap);
+
+		List<AnimationBlock> blocks = ProjectMapping.remapBlocks(List.of(block("walk", 0, 1, 2, 3), block("b", 1),
+				block("odd", 7)), remap);
+		assertEquals(List.of(0, 1, 2), blocks.get(0).getFrames());
+		assertEquals(List.of(), blocks.get(1).getFrames());
+		assertEquals(List.of(7), blocks.get(2).getFrames(), "out of range is kept");
+
+		ProjectQueries.Write w = ProjectQueries.removeElement(converter(), "p1", "u", "frames", "b", 4L, blocks, T);
+		assertEquals("b", w.query().getQueryObject().get("frames._id"));
+		assertEquals(4L, w.query().getQueryObject().get("version"));
+		assertEquals(new Document("_id", "b"), w.update().getUpdateObject().get("$pull", Document.class).get("frames"));
+		Document walk = set(w.update()).getList("animations", Document.class).get(0);
+		assertEquals(List.of(0, 1, 2), walk.get("frames"), "references rewritten in the same write");
+
+		assertThrows(ProjectNotFoundException.class, () -> ProjectMapping.removalRemap(List.of("a"), "z"));
+		assertThrows(IllegalArgumentException.class, () -> ProjectMapping.removalRemap(List.of("a"), "a"));
+	}
+
+	@Test
+	void reordersFramesAndTheReferencesWithThem() {
+		List<String> ids = List.of("a", "b", "c", "d");
+		List<String> order = List.of("d", "a", "b", "c");
+		ProjectMapping.validatePermutation(ids, order, "frame");
+		assertThrows(IllegalArgumentException.class,
+				() -> ProjectMapping.validatePermutation(ids, List.of("d", "a", "a", "c"), "frame"));
+
+		int[] remap = ProjectMapping.reorderRemap(ids, order);
+		assertArrayEquals(new int[] { 1, 2, 3, 0 }, remap);
+		assertEquals(List.of(1, 0), ProjectMapping.remapBlocks(List.of(block("x", 0, 3)), remap).get(0).getFrames());
+
+		ProjectQueries.Write w = ProjectQueries.reorderElements(converter(), "p1", "u", "frames", order, 4L, null, T);
+		assertEquals(4L, w.query().getQueryObject().get("version"));
+		Document set = pipelineSet(w.update());
+		Document map = set.get("frames", Document.class).get("$map", Document.class);
+		assertEquals(new Document("$literal", order), map.get("input"), "by id, whatever the stored order");
+		assertFalse(set.containsKey("animations"));
+	}
+
+	@Test
+	void deletesAFrameOnlyAtTheIfMatchVersion() {
+		when(repo.findStructureById("p1")).thenReturn(Optional.of(animation(5, "a", "b")));
+
+		OptimisticLockingFailureException e = assertThrows(OptimisticLockingFailureException.class,
+				() -> service.deleteFrame("p1", "u", "b", 4L));
+		assertEquals("version conflict, current version is 5", e.getMessage());
+		verify(repo, never()).removeAnimationElement(any(), any(), any(), any(), any(), any(), any());
+
+		when(repo.removeAnimationElement(eq("p1"), eq("u"), eq("frames"), eq("b"), eq(5L), any(), any()))
+				.thenReturn(Optional.of(revision(6)));
+		assertEquals(6, service.deleteFrame("p1", "u", "b", 5L).getVersion());
+		assertEquals(6, service.deleteFrame("p1", "u", "b", null).getVersion(), "the read version without If-Match");
+	}
+
+	@Test
+	void deletesABlockOnlyAtTheIfMatchVersion() {
+		when(repo.findHeaderById("p1")).thenReturn(Optional.of(animation(5)));
+		when(repo.removeAnimationElement(eq("p1"), eq("u"), eq("animations"), any(), any(), isNull(), any()))
+				.thenReturn(Optional.empty());
+
+		OptimisticLockingFailureException e = assertThrows(OptimisticLockingFailureException.class,
+				() -> service.deleteBlock("p1", "u", "walk", 4L));
+		assertEquals("version conflict, current version is 5", e.getMessage(), "not a missing block");
+		assertEquals("animation not found", assertThrows(ProjectNotFoundException.class,
+				() -> service.deleteBlock("p1", "u", "walk", 5L)).getMessage());
+		assertEquals("animation not found", assertThrows(ProjectNotFoundException.class,
+				() -> service.deleteBlock("p1", "u", "walk", null)).getMessage());
+
+		when(repo.removeAnimationElement(eq("p1"), eq("u"), eq("animations"), eq("walk"), eq(5L), isNull(), any()))
+				.thenReturn(Optional.of(revision(6)));
+		assertEquals(6, service.deleteBlock("p1", "u", "walk", 5L).getVersion());
+	}
+
+	private static Document set(UpdateDefinition u) {
+		return u.getUpdateObject().get("$set", Document.class);
+	}
+
+	// reorderElements is a one-stage pipeline update: [{ $set: ... }]
+	private static Document pipelineSet(UpdateDefinition u) {
+		return ((Document) ((List<?>) u.getUpdateObject().get("")).get(0)).get("$set", Document.class);
+	}
+
+	private static MappingMongoConverter converter() {
+		MongoCustomConversions conversions = new MongoCustomConversions(ProjectLayerConverters.all());
+		MongoMappingContext context = new MongoMappingContext();
+		context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+		MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+		converter.setCustomConversions(conversions);
+		converter.afterPropertiesSet();
+		return converter;
+	}
+
+	private static AnimationBlock block(String id, Integer... frames) {
+		AnimationBlock b = new AnimationBlock();
+		b.setId(id);
+		b.setFrames(new ArrayList<>(Arrays.asList(frames)));
+		return b;
+	}
+
+	private static Project animation(long version, String... frameIds) {
+		Project p = new Project();
+		p.setId("p1");
+		p.setUserId("u");
+		p.setKind(ProjectKind.ANIMATION);
+		p.setVersion(version);
+		List<AnimationFrame> frames = new ArrayList<>();
+		for (String id : frameIds) {
+			AnimationFrame f = new AnimationFrame();
+			f.setId(id);
+			frames.add(f);
+		}
+		p.setFrames(frames);
+		p.setAnimations(new ArrayList<>(List.of(block("walk", 0, 1))));
+		return p;
+	}
+
+	private static Project revision(long version) {
+		Project p = new Project();
+		p.setId("p1");
+		p.setVersion(version);
+		p.setUpdatedAt(T);
+		return p;
+	}
+}
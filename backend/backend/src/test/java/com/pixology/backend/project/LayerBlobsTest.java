@@ -0,0 +1,142 @@
+package com.pixology.backend.project;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LayerBlobsTest {
+
+	@Test
+	void storesEachDistinctLayerOnceAndKeepsSmallOnesInline() {
+		AnimationFrame a = frame(layer("bg", striped(32, "#00ff00")), layer("fg", striped(32, "#ff0000")), layer("dot", grid(1, 1)));
+		AnimationFrame b = frame(layer("bg", striped(32, "#00ff00")), layer("fg", striped(32, "#0000ff")));
+
+		Map<String, byte[]> blobs = LayerBlobs.externalize(List.of(a, b));
+
+		assertEquals(3, blobs.size());
+		assertEquals(a.getLayers().get(0).getBlob(), b.getLayers().get(0).getBlob());
+		assertNotEquals(a.getLayers().get(1).getBlob(), b.getLayers().get(1).getBlob());
+		assertNull(a.getLayers().get(2).getBlob());
+		blobs.forEach((hash, data) -> assertEquals(hash, ContentHash.of(data)));
+	}
+
+	@Test
+	void resolvesLayersReadBackWithoutPixels() {
+		ProjectLayer stored = layer("bg", striped(32, "#00ff00"));
+		Map<String, byte[]> blobs = LayerBlobs.externalize(List.of(frame(stored)));
+
+		ProjectLayer read = new ProjectLayer();
+		read.setId("bg");
+		read.setBlob(stored.getBlob());
+		AnimationFrame f = frame(read);
+		assertEquals(blobs.keySet(), LayerBlobs.unresolved(List.of(f)));
+
+		Map<String, PackedPixels> resolved = new HashMap<>();
+		blobs.forEach((hash, data) -> resolved.put(hash, LayerCodec.decode(data)));
+		LayerBlobs.apply(List.of(f), resolved);
+
+		assertEquals(stored.getPixels(), read.getPixels());
+		assertTrue(LayerBlobs.unresolved(List.of(f)).isEmpty());
+	}
+
+	@Test
+	void failsLoudlyOnAMissingBlob() {
+		ProjectLayer read = new ProjectLayer();
+		read.setBlob("0123456789abcdef0123456789abcdef");
+
+		assertThrows(DataRetrievalFailureException.class, () -> LayerBlobs.apply(List.of(frame(read)), Map.of()));
+	}
+
+	@Test
+	void resolvesACursorOfFramesOneQueryPerBatch() {
+		// 70 frames, each with its own blob: three $in queries (32 + 32 + 6), not 70.
+		List<ProjectLayer> stored = new ArrayList<>();
+		List<AnimationFrame> read = new ArrayList<>();
+		for (int i = 0; i < 70; i++) {
+			ProjectLayer l = layer("bg", striped(32, String.format("#%06x", i + 1)));
+			stored.add(l);
+			ProjectLayer ref = new ProjectLayer();
+			ref.setId("bg");
+			read.add(frame(ref));
+		}
+		Map<String, byte[]> blobs = LayerBlobs.externalize(stored.stream().map(l -> frame(l)).toList());
+		for (int i = 0; i < 70; i++) read.get(i).getLayers().get(0).setBlob(stored.get(i).getBlob());
+
+		MongoTemplate mongo = mock(MongoTemplate.class);
+		List<Integer> queried = new ArrayList<>();
+		when(mongo.find(any(Query.class), eq(LayerBlob.class))).thenAnswer(inv -> {
+			Collection<?> ids = inv.<Query>getArgument(0).getQueryObject().get("_id", Document.class).get("$in", Collection.class);
+			queried.add(ids.size());
+			return ids.stream().map(id -> new LayerBlob((String) id, blobs.get(id), Instant.now())).toList();
+		});
+		LayerBlobStore store = new LayerBlobStore(mongo, Duration.ofHours(1), DataSize.ofMegabytes(16), new SimpleMeterRegistry());
+
+		AtomicInteger pulled = new AtomicInteger();
+		AtomicBoolean closed = new AtomicBoolean();
+		try (Stream<AnimationFrame> frames = store.resolveInBatches(read.stream().peek(f -> pulled.incrementAndGet())
+				.onClose(() -> closed.set(true)))) {
+			Iterator<AnimationFrame> it = frames.iterator();
+			assertSame(read.get(0), it.next());
+			assertEquals(32, pulled.get(), "one batch ahead of the writer, not the whole cursor");
+
+			List<AnimationFrame> out = new ArrayList<>(List.of(read.get(0)));
+			it.forEachRemaining(out::add);
+			assertEquals(read, out);
+		}
+		assertTrue(closed.get());
+		assertEquals(List.of(32, 32, 6), queried);
+		for (int i = 0; i < 70; i++) {
+			assertEquals(stored.get(i).getPixels(), read.get(i).getLayers().get(0).getPixels());
+		}
+	}
+
+	private static AnimationFrame frame(ProjectLayer... layers) {
+		AnimationFrame f = new AnimationFrame();
+		f.setLayers(new ArrayList<>(List.of(layers)));
+		return f;
+	}
+
+	private static ProjectLayer layer(String id, List<List<String>> pixels) {
+		ProjectLayer l = new ProjectLayer();
+		l.setId(id);
+		l.setPixels(pixels);
+		return l;
+	}
+
+	// Every third pixel set: enough runs that the encoding is well over INLINE_MAX.
+	private static List<List<String>> striped(int size, String color) {
+		List<List<String>> grid = grid(size, size);
+		for (int y = 0; y < size; y++) {
+			for (int x = (y % 3); x < size; x += 3) grid.get(y).set(x, color);
+		}
+		return grid;
+	}
+
+	private static List<List<String>> grid(int rows, int cols) {
+		List<List<String>> grid = new ArrayList<>();
+		for (int y = 0; y < rows; y++) grid.add(new ArrayList<>(Collections.nCopies(cols, (String) null)));
+		return grid;
+	}
+}
@@ -0,0 +1,146 @@
+package com.pixology.backend.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LayerCodecTest {
+
+	@Test
+	void roundTripsSparseSprite() {
+		List<List<String>> grid = sprite(64, 64);
+		assertEquals(grid, LayerCodec.decode(LayerCodec.encode(PackedPixels.fromGrid(grid))).toGrid());
+	}
+
+	@Test
+	void roundTripsEmptyAndTransparentLayers() {
+		assertEquals(List.of(), LayerCodec.decode(LayerCodec.encode(PackedPixels.fromGrid(List.of()))).toGrid());
+
+		List<List<String>> clear = grid(5, 7);
+		assertEquals(clear, LayerCodec.decode(LayerCodec.encode(PackedPixels.fromGrid(clear))).toGrid());
+	}
+
+	@Test
+	void roundTripsWidePalettes() {
+		// 300 distinct colors forces 2-byte indices.
+		List<List<String>> grid = grid(20, 20);
+		for (int i = 0; i < 300; i++) grid.get(i / 20).set(i % 20, String.format("#%06x", i * 997));
+
+		PackedPixels decoded = LayerCodec.decode(LayerCodec.encode(PackedPixels.fromGrid(grid)));
+		assertEquals(2, decoded.getIndexWidth());
+		assertEquals(grid, decoded.toGrid());
+	}
+
+	@Test
+	void roundTripsArbitraryColorStrings() {
+		List<List<String>> grid = grid(2, 3);
+		grid.get(0).set(0, "");
+		grid.get(0).set(1, "rgba(0,0,0,0.5)");
+		grid.get(1).set(2, "#ABCDEF80");
+		assertEquals(grid, LayerCodec.decode(LayerCodec.encode(PackedPixels.fromGrid(grid))).toGrid());
+	}
+
+	@Test
+	void dropsUnusedPaletteEntries() {
+		PackedPixels p = PackedPixels.empty(2, 2);
+		p.set(0, 0, "#ff0000");
+		p.set(0, 0, "#00ff00");
+
+		PackedPixels decoded = LayerCodec.decode(LayerCodec.encode(p));
+		assertEquals(List.of("#00ff00"), decoded.getPalette());
+		assertEquals("#00ff00", decoded.get(0, 0));
+	}
+
+	@Test
+	void rejectsCorruptInput() {
+		byte[] data = LayerCodec.encode(PackedPixels.fromGrid(sprite(16, 16)));
+		assertThrows(IllegalArgumentException.class, () -> LayerCodec.decode(Arrays.copyOf(data, data.length - 1)));
+		assertThrows(IllegalArgumentException.class, () -> LayerCodec.decode(new byte[] { 9 }));
+	}
+
+	@Test
+	void boundsClientLayersByTheCanvas() {
+		byte[] data = LayerCodec.encode(PackedPixels.fromGrid(sprite(16, 8)));
+		assertEquals(16, LayerCodec.decode(data, 16, 8).getRows());
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> LayerCodec.decode(data, 16, 16));
+		assertEquals("layer is 8x16 but the canvas is 16x16", e.getMessage());
+
+		// version 1, 512 x 512, then a palette claiming 2^28 entries with no bytes behind it
+		byte[] huge = { 1, (byte) 0x80, 4, (byte) 0x80, 4, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1 };
+		e = assertThrows(IllegalArgumentException.class, () -> LayerCodec.decode(huge, 512, 512));
+		assertEquals("corrupt layer encoding", e.getMessage());
+		e = assertThrows(IllegalArgumentException.class, () -> LayerCodec.decode(huge, 32, 32));
+		assertEquals("layer is 512x512 but the canvas is 32x32", e.getMessage(), "rejected before the palette is read");
+	}
+
+	@Test
+	void boundsJsonGridsByTheCanvas() {
+		assertEquals(8, ProjectMapping.packLayer(sprite(8, 4), null, 4, 8).getRows());
+		assertThrows(IllegalArgumentException.class, () -> ProjectMapping.packLayer(sprite(8, 4), null, 4, 4));
+		assertThrows(IllegalArgumentException.class, () -> ProjectMapping.packLayer(sprite(8, 4), null, 8, 8));
+		assertThrows(IllegalArgumentException.class, () -> ProjectMapping.packLayer(List.of(), null, 4, 8));
+	}
+
+	@Test
+	void compressesRepresentativeSpritesAtLeastTwentyfold() {
+		// Against the JSON grid, one color string per cell, as layers were stored before the codec.
+		int[][] minRatios = { { 32, 20 }, { 128, 50 }, { 256, 50 }, { 512, 50 } };
+		for (int[] sizeAndRatio : minRatios) {
+			int size = sizeAndRatio[0];
+			List<List<String>> grid = sprite(size, size);
+			byte[] encoded = LayerCodec.encode(PackedPixels.fromGrid(grid));
+
+			assertEquals(grid, LayerCodec.decode(encoded).toGrid());
+			int json = jsonSize(grid);
+			assertTrue(encoded.length * sizeAndRatio[1] <= json,
+					size + "x" + size + ": " + encoded.length + " B encoded against " + json + " B of JSON");
+		}
+	}
+
+	@Test
+	void fitsALongAnimationUnderTheDocumentLimit() {
+		// 120 frames of 256x256: ~49 MB as JSON grids, well under 1 MB encoded.
+		List<List<String>> grid = sprite(256, 256);
+		long json = 120L * jsonSize(grid);
+		long encoded = 120L * LayerCodec.encode(PackedPixels.fromGrid(grid)).length;
+
+		assertTrue(json > 16 * 1024 * 1024);
+		assertTrue(encoded < 1024 * 1024, encoded + " B");
+	}
+
+	/** Mostly transparent canvas with a few flat-colored shapes, like typical pixel art. */
+	private static List<List<String>> sprite(int rows, int cols) {
+		String[] colors = { "#1d2b53", "#7e2553", "#008751", "#ab5236", "#ffccaa", "#ffffff" };
+		Random rnd = new Random(42);
+		List<List<String>> grid = grid(rows, cols);
+		for (int r = rows / 4; r < rows * 3 / 4; r++) {
+			for (int c = cols / 4; c < cols * 3 / 4; c++) {
+				grid.get(r).set(c, colors[(r / 4 + c / 8) % colors.length]);
+			}
+		}
+		for (int i = 0; i < rows; i++) grid.get(rnd.nextInt(rows)).set(rnd.nextInt(cols), colors[i % colors.length]);
+		return grid;
+	}
+
+	private static List<List<String>> grid(int rows, int cols) {
+		List<List<String>> grid = new ArrayList<>();
+		for (int r = 0; r < rows; r++) grid.add(new ArrayList<>(Arrays.asList(new String[cols])));
+		return grid;
+	}
+
+	private static int jsonSize(List<List<String>> grid) {
+		StringBuilder sb = new StringBuilder("[");
+		for (List<String> row : grid) {
+			sb.append('[');
+			for (String c : row) sb.append(c == null ? "null" : '"' + c + '"').append(',');
+			sb.append("],");
+		}
+		return sb.append(']').toString().getBytes(StandardCharsets.UTF_8).length;
+	}
+}
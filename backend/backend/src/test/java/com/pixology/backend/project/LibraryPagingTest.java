@@ -0,0 +1,113 @@
+package com.pixology.backend.project;
+
+import com.pixology.backend.project.dto.PagedProjects;
+import com.pixology.backend.project.dto.ProjectSummaryResponse;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LibraryPagingTest {
+
+	private static final Instant T = Instant.parse("2025-06-01T12:00:00.123Z");
+
+	@Test
+	void cursorRoundTrips() {
+		LibraryCursor c = new LibraryCursor(T, "665f1c2ab3e4d5f6a7b8c9d0", 3, 1234);
+		assertEquals(c, LibraryCursor.decode(c.encode()));
+		assertFalse(c.encode().contains("="), "url-safe without padding");
+	}
+
+	@Test
+	void decodesCursorsWithoutTotal() {
+		String legacy = Base64.getUrlEncoder().withoutPadding()
+				.encodeToString((T.toEpochMilli() + ":abc:2").getBytes(StandardCharsets.UTF_8));
+		LibraryCursor c = LibraryCursor.decode(legacy);
+		assertEquals(new LibraryCursor(T, "abc", 2, -1), c);
+		assertEquals(-1, ProjectMapping.libraryQuery(null, legacy, 10).knownTotal(), "counted again");
+	}
+
+	@Test
+	void rejectsGarbageCursors() {
+		for (String bad : new String[] { "%%%", "Zm9v", encode("x:abc:1"), encode("1:abc:1:2:3") }) {
+			IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> LibraryCursor.decode(bad));
+			assertEquals("invalid cursor", e.getMessage());
+		}
+	}
+
+	@Test
+	void breaksUpdatedAtTiesOnId() {
+		Query q = ProjectQueries.summaries("u", null, null, new LibraryCursor(T, "b", 0, 5), 11);
+		assertEquals(new Document("updatedAt", -1).append("_id", -1), q.getSortObject());
+		assertEquals(11, q.getLimit());
+
+		List<?> or = q.getQueryObject().get("$or", List.class);
+		assertEquals(List.of(
+				new Document("updatedAt", new Document("$lt", T)),
+				new Document("updatedAt", T).append("_id", new Document("$lt", "b"))), or);
+	}
+
+	@Test
+	void pagesThroughEqualTimestampsOnceInOrder() {
+		// Seven projects, five of them saved in the same millisecond.
+		List<Project> library = new ArrayList<>();
+		for (String id : new String[] { "a", "e", "c", "g", "b" }) library.add(row(id, T));
+		library.add(row("f", T.plusMillis(1)));
+		library.add(row("d", T.minusMillis(1)));
+		List<Project> expected = library.stream().sorted(ORDER).toList();
+
+		List<String> seen = new ArrayList<>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			ProjectMapping.LibraryQuery q = ProjectMapping.libraryQuery(null, cursor, 2);
+			assertEquals(pages == 0 ? -1 : 7, q.knownTotal(), "only the first page counts");
+			long total = q.knownTotal() >= 0 ? q.knownTotal() : library.size();
+			PagedProjects page = ProjectMapping.toPage(fetch(library, q.after(), q.size() + 1), q, total);
+
+			assertEquals(pages, page.getPage());
+			assertEquals(7, page.getTotal());
+			page.getItems().stream().map(ProjectSummaryResponse::getId).forEach(seen::add);
+			cursor = page.getNextCursor();
+			assertEquals(page.isHasNext(), cursor != null);
+			pages++;
+		} while (cursor != null);
+
+		assertEquals(expected.stream().map(Project::getId).toList(), seen);
+		assertEquals(4, pages);
+	}
+
+	// What summaries() asks Mongo for: the keyset predicate, then sort and limit.
+	private static final Comparator<Project> ORDER = Comparator.comparing(Project::getUpdatedAt)
+			.thenComparing(Project::getId).reversed();
+
+	private static List<Project> fetch(List<Project> library, LibraryCursor after, int limit) {
+		return library.stream()
+				.filter(p -> after == null || p.getUpdatedAt().isBefore(after.updatedAt())
+						|| (p.getUpdatedAt().equals(after.updatedAt()) && p.getId().compareTo(after.id()) < 0))
+				.sorted(ORDER)
+				.limit(limit)
+				.toList();
+	}
+
+	private static Project row(String id, Instant updatedAt) {
+		Project p = new Project();
+		p.setId(id);
+		p.setUserId("u");
+		p.setName(id);
+		p.setUpdatedAt(updatedAt);
+		return p;
+	}
+
+	private static String encode(String raw) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+}
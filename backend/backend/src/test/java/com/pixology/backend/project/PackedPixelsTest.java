@@ -0,0 +1,106 @@
+package com.pixology.backend.project;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedPixelsTest {
+
+	@Test
+	void allocatesOnlyDrawnTiles() {
+		PackedPixels p = PackedPixels.empty(512, 512);
+		assertEquals(0, p.byteSize());
+
+		p.set(0, 0, "#ff0000");
+		p.set(15, 15, "#ff0000");
+		p.set(300, 400, "#00ff00");
+		assertEquals(2 * 16 * 16, p.byteSize());
+		assertEquals(bits(0, 18 * 32 + 25), p.occupiedTiles());
+
+		p.set(300, 400, null);
+		assertEquals(bits(0), p.occupiedTiles());
+		assertNull(p.get(300, 400));
+		assertEquals("#ff0000", p.get(15, 15));
+	}
+
+	@Test
+	void tracksDirtyTiles() {
+		PackedPixels p = PackedPixels.empty(40, 40);
+		p.set(20, 20, "#000");
+		p.clearDirty();
+
+		p.set(20, 20, "#000");
+		p.set(0, 0, null);
+		assertTrue(p.dirtyTiles().isEmpty(), "writes that change nothing leave tiles clean");
+
+		p.set(20, 21, "#fff");
+		p.set(39, 0, "#fff");
+		assertEquals(bits(2 * 3 + 0, 1 * 3 + 1), p.dirtyTiles());
+	}
+
+	@Test
+	void widensAllocatedTiles() {
+		PackedPixels p = PackedPixels.empty(20, 20);
+		for (int i = 0; i < 300; i++) p.set(i / 20, i % 20, String.format("#%06x", i));
+		assertEquals(2, p.getIndexWidth());
+		assertEquals("#000000", p.get(0, 0));
+		assertEquals(String.format("#%06x", 299), p.get(14, 19));
+	}
+
+	@Test
+	void persistsNonEmptyTilesOnly() {
+		PackedPixels p = PackedPixels.empty(64, 64);
+		p.set(1, 1, "#unused");
+		p.set(1, 1, "#aaa");
+		p.set(50, 60, "#bbb");
+
+		Document d = new ProjectLayerConverters.LayerWriter().convert(layer(p));
+		Document tiles = d.get(ProjectLayerConverters.TILES, Document.class);
+		assertEquals(2, tiles.size());
+		assertTrue(tiles.containsKey("0_0") && tiles.containsKey("3_3"));
+		assertEquals(List.of("#aaa", "#bbb"), d.get("palette"));
+
+		ProjectLayer back = new ProjectLayerConverters.LayerReader().convert(d);
+		assertTrue(back.isTiled());
+		assertEquals(p.toGrid(), back.getPacked().toGrid());
+		assertTrue(back.getPacked().dirtyTiles().isEmpty());
+	}
+
+	@Test
+	void readsProjectedTilesAsPartialLayer() {
+		PackedPixels p = PackedPixels.empty(64, 64);
+		p.set(1, 1, "#aaa");
+		p.set(50, 60, "#bbb");
+		Document d = new ProjectLayerConverters.LayerWriter().convert(layer(p));
+		d.get(ProjectLayerConverters.TILES, Document.class).remove("0_0");
+
+		PackedPixels partial = new ProjectLayerConverters.LayerReader().convert(d).getPacked();
+		assertNull(partial.get(1, 1));
+		assertEquals("#bbb", partial.get(50, 60));
+	}
+
+	@Test
+	void rejectsTilesOutsideTheLayer() {
+		Document d = new ProjectLayerConverters.LayerWriter().convert(layer(PackedPixels.empty(16, 16)));
+		d.get(ProjectLayerConverters.TILES, Document.class).put("0_1", new Binary(new byte[] { 1, 1 }));
+		assertThrows(IllegalArgumentException.class, () -> new ProjectLayerConverters.LayerReader().convert(d));
+	}
+
+	private static ProjectLayer layer(PackedPixels p) {
+		ProjectLayer l = new ProjectLayer();
+		l.setId("L");
+		l.setPacked(p);
+		return l;
+	}
+
+	private static BitSet bits(int... set) {
+		BitSet b = new BitSet();
+		for (int i : set) b.set(i);
+		return b;
+	}
+}
@@ -0,0 +1,154 @@
+package com.pixology.backend.project;
+
+import com.pixology.backend.project.dto.PatchPixelsRequest;
+import com.pixology.backend.project.thumbnail.ThumbnailGenerator;
+import com.pixology.backend.project.thumbnail.ThumbnailService;
+import com.pixology.backend.user.UserExistenceCache;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ProjectService.patchPixels against one stored document: the repository answers from it and
+ * applies the update setLayers builds, the way Mongo would.
+ */
+class PatchPixelsTest {
+
+	private final ProjectRepository repo = mock(ProjectRepository.class);
+	private final ProjectService service;
+
+	// The stored project: 20 x 20, so its layer spans 2 x 2 tiles.
+	private Document layer;
+	private long version = 3;
+
+	PatchPixelsTest() {
+		UserExistenceCache users = mock(UserExistenceCache.class);
+		when(users.exists("u")).thenReturn(true);
+		service = new ProjectService(repo, users, mock(ThumbnailService.class), mock(ThumbnailGenerator.class),
+				mock(AnimationDetailWriter.class), mock(ProjectCache.class), mock(LayerBlobStore.class),
+				mock(PendingSaves.class));
+	}
+
+	@BeforeEach
+	void setUp() {
+		PackedPixels pixels = PackedPixels.empty(20, 20);
+		pixels.set(1, 1, "#ff0000");
+		pixels.set(5, 5, "#00ff00");
+		ProjectLayer bg = new ProjectLayer();
+		bg.setId("bg");
+		bg.setName("Background");
+		bg.setPacked(pixels);
+		layer = new ProjectLayerConverters.LayerWriter().convert(bg);
+
+		when(repo.findLayersById(eq("p1"), anyCollection())).thenAnswer(inv -> Optional.of(stored()));
+		when(repo.findHeaderById("p1")).thenAnswer(inv -> Optional.of(stored()));
+		when(repo.setLayers(eq("p1"), eq("u"), anyLong(), any(), any())).thenAnswer(inv -> {
+			ProjectQueries.Write w = ProjectQueries.setLayers(null, "p1", "u", inv.getArgument(2),
+					inv.getArgument(3), inv.getArgument(4));
+			if (!Long.valueOf(version).equals(w.query().getQueryObject().get("version"))) return false;
+			apply(w.update().getUpdateObject());
+			version++;
+			return true;
+		});
+	}
+
+	@Test
+	void patchedLayerReadsBack() {
+		assertEquals(4, service.patchPixels("p1", "u", 3L, patch(edit(17, 2, "#0000ff"), edit(1, 1, null))).getVersion());
+
+		PackedPixels read = stored().getLayers().get(0).getPacked();
+		assertEquals("#0000ff", read.get(2, 17), "in a tile that was empty");
+		assertNull(read.get(1, 1), "erased");
+		assertEquals("#00ff00", read.get(5, 5), "untouched");
+		assertEquals(4, version);
+	}
+
+	@Test
+	void rejectsCellsOutsideTheLayer() {
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> service.patchPixels("p1", "u", 3L, patch(edit(20, 0, "#0000ff"))));
+		assertEquals("pixel out of bounds: 20,0", e.getMessage());
+		verify(repo, never()).setLayers(any(), any(), anyLong(), any(), any());
+	}
+
+	@Test
+	void staleVersionIsAConflict() {
+		OptimisticLockingFailureException e = assertThrows(OptimisticLockingFailureException.class,
+				() -> service.patchPixels("p1", "u", 2L, patch(edit(0, 0, "#0000ff"))));
+		assertEquals("version conflict, current version is 3", e.getMessage());
+
+		// Moved on between the read and the conditional write.
+		when(repo.findLayersById(eq("p1"), anyCollection())).thenAnswer(inv -> {
+			Project p = stored();
+			version++;
+			return Optional.of(p);
+		});
+		e = assertThrows(OptimisticLockingFailureException.class,
+				() -> service.patchPixels("p1", "u", 3L, patch(edit(0, 0, "#0000ff"))));
+		assertEquals("version conflict, current version is 4", e.getMessage());
+	}
+
+	@Test
+	void versionMatchesOnlyTheField() {
+		Document q = ProjectQueries.setLayers(null, "p1", "u", 0, Map.of(), Instant.now()).query().getQueryObject();
+		assertEquals(new Document("_id", "p1").append("userId", "u").append("version", 0L), q,
+				"no match for a document without version");
+	}
+
+	private Project stored() {
+		Project p = new Project();
+		p.setId("p1");
+		p.setUserId("u");
+		p.setKind(ProjectKind.STATIC);
+		p.setWidth(20);
+		p.setHeight(20);
+		p.setVersion(version);
+		p.setLayers(new ArrayList<>(List.of(new ProjectLayerConverters.LayerReader().convert(Document.parse(layer.toJson())))));
+		return p;
+	}
+
+	// $set and $unset of "layers.0.<field>[.<tile>]" paths, against the one stored layer.
+	private void apply(Document update) {
+		update.get("$set", new Document()).forEach((path, value) -> {
+			if (path.startsWith("layers.0.")) target(path).put(leaf(path), value);
+		});
+		update.get("$unset", new Document()).keySet().forEach(path -> target(path).remove(leaf(path)));
+	}
+
+	private Document target(String path) {
+		String[] parts = path.split("\\.");
+		return parts.length == 3 ? layer : layer.get(parts[2], Document.class);
+	}
+
+	private static String leaf(String path) {
+		return path.substring(path.lastIndexOf('.') + 1);
+	}
+
+	private static PatchPixelsRequest patch(PatchPixelsRequest.PixelEdit... edits) {
+		PatchPixelsRequest.LayerEdits le = new PatchPixelsRequest.LayerEdits();
+		le.setLayerId("bg");
+		le.setEdits(List.of(edits));
+		PatchPixelsRequest req = new PatchPixelsRequest();
+		req.setLayers(List.of(le));
+		return req;
+	}
+
+	private static PatchPixelsRequest.PixelEdit edit(int x, int y, String color) {
+		PatchPixelsRequest.PixelEdit e = new PatchPixelsRequest.PixelEdit();
+		e.setX(x);
+		e.setY(y);
+		e.setColor(color);
+		return e;
+	}
+}
@@ -0,0 +1,134 @@
+package com.pixology.backend.project;
+
+import com.pixology.backend.project.thumbnail.ThumbnailGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PendingSavesTest {
+
+	@TempDir
+	Path dir;
+
+	private final ProjectRepository repo = mock(ProjectRepository.class);
+	private final List<Long> written = new CopyOnWriteArrayList<>(); // expected versions replayed at
+	private PendingSaves saves;
+
+	@BeforeEach
+	void setUp() {
+		MongoCustomConversions conversions = new MongoCustomConversions(ProjectLayerConverters.all());
+		MongoMappingContext context = new MongoMappingContext();
+		context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+		MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+		converter.setCustomConversions(conversions);
+		converter.afterPropertiesSet();
+		MongoTemplate mongo = mock(MongoTemplate.class);
+		when(mongo.getConverter()).thenReturn(converter);
+		when(repo.findHeaderById("p1")).thenReturn(Optional.of(header(3)));
+		saves = new PendingSaves(repo, mongo, mock(LayerBlobStore.class), mock(ProjectCache.class),
+				mock(ThumbnailGenerator.class), new RepositoryCircuitBreaker(5, Duration.ofSeconds(5),
+				Duration.ofSeconds(30), System::nanoTime), dir, DataSize.ofMegabytes(1), Duration.ofHours(1));
+	}
+
+	@AfterEach
+	void tearDown() {
+		saves.shutdown();
+	}
+
+	@Test
+	void savesWhileAReplayIsWritingAndRebasesOntoIt() throws Exception {
+		CountDownLatch writing = new CountDownLatch(1), release = new CountDownLatch(1);
+		when(repo.replaceContent(eq("p1"), eq("u"), eq(ProjectKind.STATIC), anyLong(), any())).thenAnswer(inv -> {
+			written.add(inv.getArgument(3));
+			if (written.size() == 1) {
+				writing.countDown();
+				release.await();
+			}
+			return Optional.of(header(inv.<Long>getArgument(3) + 1));
+		});
+
+		saves.save("u", 3L, content("first"));
+		Thread replay = Thread.ofPlatform().start(() -> saves.flush("p1"));
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+		// Mongo is still busy with the first save; the second only waits on the journal.
+		Project second = content("second");
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> saves.save("u", 4L, second));
+		assertEquals(4, second.getVersion());
+
+		release.countDown();
+		replay.join();
+		assertEquals(5, saves.pending("p1").orElseThrow().getVersion(), "rebased onto the write");
+		saves.save("u", 5L, content("third")); // its version is accepted
+
+		saves.flush("p1");
+		assertEquals(List.of(3L, 4L), written);
+		assertEquals(0, saves.pendingCount());
+	}
+
+	@Test
+	void reportsAConflictingReplayInsteadOfDroppingItSilently() {
+		saves.save("u", 3L, content("mine"));
+
+		// Someone else's write lands first; the replay at version 3 matches nothing.
+		when(repo.findHeaderById("p1")).thenReturn(Optional.of(header(4)));
+		when(repo.replaceContent(eq("p1"), eq("u"), eq(ProjectKind.STATIC), eq(3L), any())).thenReturn(Optional.empty());
+		saves.flushAll();
+		assertTrue(saves.pending("p1").isEmpty());
+
+		saves.checkRejected("p1", "someone-else"); // not theirs to hear about
+		OptimisticLockingFailureException e = assertThrows(OptimisticLockingFailureException.class,
+				() -> saves.save("u", 4L, content("again")));
+		assertTrue(e.getMessage().startsWith("save rejected: version 4 was not stored"), e.getMessage());
+
+		saves.checkRejected("p1", "u"); // reported once
+		saves.save("u", 4L, content("reloaded"));
+	}
+
+	@Test
+	void requiresAnAbsoluteJournalDir() {
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new PendingSaves(repo, null,
+				null, null, null, null, Path.of("data/journal"), DataSize.ofMegabytes(1), Duration.ofHours(1)));
+		assertEquals("pixology.journal.dir must be an absolute path, not data/journal", e.getMessage());
+	}
+
+	private static Project header(long version) {
+		Project h = new Project();
+		h.setId("p1");
+		h.setUserId("u");
+		h.setKind(ProjectKind.STATIC);
+		h.setName("Sprite");
+		h.setVersion(version);
+		return h;
+	}
+
+	private static Project content(String selectedLayerId) {
+		Project p = header(0);
+		p.setWidth(16);
+		p.setHeight(16);
+		p.setSelectedLayerId(selectedLayerId);
+		p.setUpdatedAt(Instant.now());
+		return p;
+	}
+}
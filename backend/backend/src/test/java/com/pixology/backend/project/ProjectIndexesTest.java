@@ -0,0 +1,82 @@
+package com.pixology.backend.project;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ProjectIndexesTest {
+
+	private final MongoTemplate mongo = mock(MongoTemplate.class);
+	private final ProjectNameMigration names = mock(ProjectNameMigration.class);
+	private final ProjectVersionMigration versions = mock(ProjectVersionMigration.class);
+	private final IndexOperations ops = mock(IndexOperations.class);
+	private final List<String> created = new CopyOnWriteArrayList<>();
+
+	ProjectIndexesTest() {
+		when(mongo.indexOps(any(Class.class))).thenReturn(ops);
+		when(ops.createIndex(any())).thenAnswer(inv -> {
+			String name = inv.<IndexDefinition>getArgument(0).getIndexOptions().getString("name");
+			created.add(name);
+			return name;
+		});
+	}
+
+	@Test
+	void buildsTheUniqueNameIndexAfterTheBackfillsBeforeServing() {
+		ProjectIndexes indexes = indexes(true);
+		indexes.afterSingletonsInstantiated();
+
+		assertTrue(indexes.isBuilt());
+		assertTrue(created.contains("user_name_unique"), created.toString());
+		InOrder order = inOrder(versions, names, ops);
+		order.verify(versions).backfill();
+		order.verify(names).backfill();
+		order.verify(ops, atLeastOnce()).createIndex(any());
+
+		indexes.retry();
+		verify(names, times(1)).backfill();
+	}
+
+	@Test
+	void failsStartupWhenTheIndexCannotBeBuilt() {
+		doThrow(new DataAccessResourceFailureException("Atlas unreachable")).when(names).backfill();
+
+		IllegalStateException e = assertThrows(IllegalStateException.class, () -> indexes(true).afterSingletonsInstantiated());
+		assertEquals("Atlas unreachable", e.getCause().getMessage());
+		assertTrue(created.isEmpty(), "no index over names that may not be unique");
+	}
+
+	@Test
+	void keepsRetryingWhenNotRequired() {
+		doThrow(new DataAccessResourceFailureException("duplicate key")).doReturn("ok").when(ops).createIndex(any());
+		ProjectIndexes indexes = indexes(false);
+		indexes.afterSingletonsInstantiated();
+		verifyNoInteractions(versions, names);
+
+		indexes.retry();
+		assertFalse(indexes.isBuilt());
+		indexes.retry();
+		assertTrue(indexes.isBuilt());
+		verify(names, times(2)).backfill();
+	}
+
+	private ProjectIndexes indexes(boolean required) {
+		MongoCustomConversions conversions = new MongoCustomConversions(ProjectLayerConverters.all());
+		MongoMappingContext context = new MongoMappingContext();
+		context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+		context.setAutoIndexCreation(false);
+		return new ProjectIndexes(mongo, context, names, versions, required);
+	}
+}
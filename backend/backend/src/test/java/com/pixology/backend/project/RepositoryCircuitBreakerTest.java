@@ -0,0 +1,65 @@
+package com.pixology.backend.project;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepositoryCircuitBreakerTest {
+
+	private final AtomicLong now = new AtomicLong();
+	private final RepositoryCircuitBreaker breaker =
+			new RepositoryCircuitBreaker(3, Duration.ofSeconds(1), Duration.ofSeconds(30), now::get);
+
+	@Test
+	void opensAfterConsecutiveFailuresAndProbesAfterCooldown() {
+		fail(2);
+		assertEquals("ok", breaker.call(() -> "ok"));
+		fail(3);
+		assertTrue(breaker.isOpen());
+		assertThrows(StorageUnavailableException.class, () -> breaker.call(() -> "rejected"));
+
+		now.addAndGet(Duration.ofSeconds(30).toNanos());
+		assertEquals(RepositoryCircuitBreaker.State.HALF_OPEN, breaker.state());
+		fail(1);
+		assertTrue(breaker.isOpen(), "a failed probe opens it again");
+
+		now.addAndGet(Duration.ofSeconds(30).toNanos());
+		assertEquals("ok", breaker.call(() -> "ok"));
+		assertEquals(RepositoryCircuitBreaker.State.CLOSED, breaker.state());
+	}
+
+	@Test
+	void countsSlowCallsButNotLogicalFailures() {
+		for (int i = 0; i < 3; i++) {
+			assertThrows(OptimisticLockingFailureException.class,
+					() -> breaker.call(() -> { throw new OptimisticLockingFailureException("conflict"); }));
+		}
+		assertFalse(breaker.isOpen());
+
+		for (int i = 0; i < 3; i++) {
+			breaker.call(() -> now.addAndGet(Duration.ofSeconds(2).toNanos()));
+		}
+		assertTrue(breaker.isOpen());
+	}
+
+	@Test
+	void ignoresCallsLetThroughBeforeItOpened() {
+		breaker.call(() -> {
+			fail(3); // the breaker opens while this call is still running
+			return null;
+		});
+		assertTrue(breaker.isOpen());
+	}
+
+	private void fail(int times) {
+		for (int i = 0; i < times; i++) {
+			assertThrows(DataAccessResourceFailureException.class,
+					() -> breaker.call(() -> { throw new DataAccessResourceFailureException("down"); }));
+		}
+	}
+}
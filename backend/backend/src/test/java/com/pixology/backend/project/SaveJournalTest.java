@@ -0,0 +1,118 @@
+package com.pixology.backend.project;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SaveJournalTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void recoversSavesNotMarkedDone() {
+		try (SaveJournal j = new SaveJournal(dir, Long.MAX_VALUE)) {
+			long a = j.append(new Document("projectId", "a"));
+			j.append(new Document("projectId", "b"));
+			j.done(a);
+		}
+
+		try (SaveJournal j = new SaveJournal(dir, Long.MAX_VALUE)) {
+			List<Document> saves = j.recovered();
+			assertEquals(1, saves.size());
+			assertEquals("b", saves.get(0).getString("projectId"));
+			assertEquals(2L, saves.get(0).getLong("seq"));
+			assertEquals(3L, j.append(new Document("projectId", "c")), "seqs continue after recovery");
+		}
+	}
+
+	@Test
+	void truncatesTornTail() throws Exception {
+		try (SaveJournal j = new SaveJournal(dir, Long.MAX_VALUE)) {
+			j.append(new Document("projectId", "a"));
+		}
+		Path file = dir.resolve(SaveJournal.FILE);
+		long intact = Files.size(file);
+		Files.write(file, new byte[] { 0, 0, 0, 42, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+		try (SaveJournal j = new SaveJournal(dir, Long.MAX_VALUE)) {
+			assertEquals(List.of("a"), j.recovered().stream().map(d -> d.getString("projectId")).toList());
+			assertEquals(intact, Files.size(file));
+		}
+	}
+
+	@Test
+	void stopsAtCorruptRecord() throws Exception {
+		try (SaveJournal j = new SaveJournal(dir, Long.MAX_VALUE)) {
+			j.append(new Document("projectId", "a"));
+			j.append(new Document("projectId", "b"));
+		}
+		Path file = dir.resolve(SaveJournal.FILE);
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length - 3] ^= 0x5A; // inside the last payload
+		Files.write(file, bytes);
+
+		try (SaveJournal j = new SaveJournal(dir, Long.MAX_VALUE)) {
+			assertEquals(List.of("a"), j.recovered().stream().map(d -> d.getString("projectId")).toList());
+		}
+	}
+
+	@Test
+	void emptiesOnceNothingIsLive() throws Exception {
+		try (SaveJournal j = new SaveJournal(dir, Long.MAX_VALUE)) {
+			j.done(j.append(new Document("projectId", "a")));
+			j.append(new Document("projectId", "b")); // forces the batch holding the DONE
+			assertTrue(Files.size(dir.resolve(SaveJournal.FILE)) > 0);
+		}
+		try (SaveJournal j = new SaveJournal(dir, Long.MAX_VALUE)) {
+			j.done(j.recovered().get(0).getLong("seq"));
+		}
+		assertEquals(0, Files.size(dir.resolve(SaveJournal.FILE)));
+	}
+
+	@Test
+	void compactsToLiveSaves() throws Exception {
+		String pixels = "x".repeat(4096);
+		try (SaveJournal j = new SaveJournal(dir, 16 * 1024)) {
+			j.append(new Document("projectId", "keep").append("content", pixels));
+			for (int i = 0; i < 8; i++) {
+				j.done(j.append(new Document("projectId", "gone" + i).append("content", pixels)));
+			}
+			j.append(new Document("projectId", "last"));
+		}
+		assertTrue(Files.size(dir.resolve(SaveJournal.FILE)) < 16 * 1024);
+
+		try (SaveJournal j = new SaveJournal(dir, 16 * 1024)) {
+			assertEquals(List.of("keep", "last"), j.recovered().stream().map(d -> d.getString("projectId")).toList());
+		}
+	}
+
+	@Test
+	void groupsConcurrentAppends() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try (SaveJournal j = new SaveJournal(dir, Long.MAX_VALUE)) {
+			List<Future<Long>> seqs = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				String id = "p" + i;
+				seqs.add(pool.submit(() -> j.append(new Document("projectId", id))));
+			}
+			for (Future<Long> f : seqs) assertTrue(f.get() > 0);
+		} finally {
+			pool.shutdown();
+		}
+		try (SaveJournal j = new SaveJournal(dir, Long.MAX_VALUE)) {
+			assertEquals(200, j.recovered().size());
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.pixology.backend.project.export;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.pixology.backend.project.export.AnimationExporter.sequence;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnimationExporterTest {
+
+	@Test
+	void playsForwardByDefault() {
+		assertEquals(List.of(0, 2, 1), sequence(List.of(0, 2, 1), null, 3));
+		assertEquals(List.of(0, 2, 1), sequence(List.of(0, 2, 1), "forward", 3));
+		assertEquals(List.of(0, 2, 1), sequence(List.of(0, 2, 1), "no-such-mode", 3));
+	}
+
+	@Test
+	void playsBackward() {
+		assertEquals(List.of(3, 2, 1, 0), sequence(List.of(0, 1, 2, 3), "backward", 4));
+		assertEquals(List.of(1, 0), sequence(List.of(0, 1), " Backward ", 2));
+	}
+
+	@Test
+	void pingpongsWithoutRepeatingEitherEnd() {
+		assertEquals(List.of(0, 1, 2, 3, 2, 1), sequence(List.of(0, 1, 2, 3), "pingpong", 4));
+		assertEquals(List.of(0, 1, 2, 1), sequence(List.of(0, 1, 2), "pingpong", 3));
+	}
+
+	@Test
+	void handlesOneAndTwoFrames() {
+		for (String mode : new String[] { "forward", "backward", "pingpong" }) {
+			assertEquals(List.of(), sequence(List.of(), mode, 4), mode);
+			assertEquals(List.of(2), sequence(List.of(2), mode, 4), mode);
+		}
+		assertEquals(List.of(0, 1), sequence(List.of(0, 1), "forward", 2));
+		assertEquals(List.of(1, 0), sequence(List.of(0, 1), "backward", 2));
+		assertEquals(List.of(0, 1), sequence(List.of(0, 1), "pingpong", 2));
+	}
+
+	@Test
+	void dropsFramesOutsideTheAnimation() {
+		assertEquals(List.of(1, 0), sequence(Arrays.asList(0, null, 5, -1, 1), "backward", 2));
+		assertEquals(List.of(), sequence(null, "pingpong", 2));
+	}
+}
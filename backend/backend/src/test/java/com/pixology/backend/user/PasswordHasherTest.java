@@ -0,0 +1,66 @@
+package com.pixology.backend.user;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+	private PasswordHasher hasher;
+
+	@AfterEach
+	void shutdown() {
+		if (hasher != null) hasher.shutdown();
+	}
+
+	@Test
+	void hashesAtConfiguredCostAndMatches() {
+		hasher = new PasswordHasher(4, 1, 4, new SimpleMeterRegistry());
+		String hash = hasher.hash("secret123");
+
+		assertEquals(4, PasswordHasher.costOf(hash));
+		assertTrue(hasher.matches("secret123", hash));
+		assertFalse(hasher.matches("secret124", hash));
+		assertFalse(hasher.matches("secret123", null));
+	}
+
+	@Test
+	void flagsHashesMadeAtAnotherCost() {
+		String atFour = new PasswordHasher(4, 1, 4, new SimpleMeterRegistry()).hash("pw");
+		hasher = new PasswordHasher(5, 1, 4, new SimpleMeterRegistry());
+
+		assertTrue(hasher.needsRehash(atFour));
+		assertFalse(hasher.needsRehash(hasher.hash("pw")));
+		assertTrue(hasher.needsRehash("not-a-bcrypt-hash"));
+	}
+
+	@Test
+	void rejectsWhenThreadsAndQueueAreFull() throws Exception {
+		hasher = new PasswordHasher(4, 1, 1, new SimpleMeterRegistry());
+		CountDownLatch release = new CountDownLatch(1);
+		Runnable blocked = () -> hasher.run(() -> {
+			release.await();
+			return null;
+		});
+		Thread running = Thread.ofVirtual().start(blocked);
+		while (hasher.pool.getActiveCount() < 1) Thread.onSpinWait();
+		Thread queued = Thread.ofVirtual().start(blocked);
+		while (hasher.pool.getQueue().isEmpty()) Thread.onSpinWait();
+
+		assertThrows(PasswordHasherBusyException.class, () -> hasher.hash("pw"));
+
+		release.countDown();
+		running.join();
+		queued.join();
+		assertTrue(hasher.matches("pw", hasher.hash("pw")));
+	}
+
+	@Test
+	void rejectsOutOfRangeCost() {
+		assertThrows(IllegalArgumentException.class, () -> new PasswordHasher(3, 1, 1, new SimpleMeterRegistry()));
+	}
+}
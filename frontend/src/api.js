@@ -8,3 +8,8 @@ export async function checkHealth() {
 export function api(path, options = {}) {
   return fetch(`${API}${path}`, options);
 }
+
+// Absolute URL for server-relative paths the API hands back (e.g. thumbnailUrl).
+export function apiUrl(path) {
+  return `${API}${path}`;
+}
@@ -28,6 +28,10 @@ const CanvasBoard = () => {
   const [height, setHeight] = useState(initialH);
   const [projectName, setProjectName] = useState(initialName);
   const [projectId, setProjectId] = useState(initialId);
+  // Version the editor last loaded or saved; sent as If-Match so stale tabs can't overwrite.
+  const versionRef = useRef(null);
+  // Bumped to load the project again from the server.
+  const [reloadKey, setReloadKey] = useState(0);
 
   const [selectedTool, setSelectedTool] = useState("pencil");
   const [currentColor, setCurrentColor] = useState("#000000");
@@ -278,7 +282,6 @@ const CanvasBoard = () => {
     height,
     selectedLayerId,
     layers: snapshot.layers,
-    previewPng: snapshot.previewPng,
     favorite: false,
   });
 
@@ -289,6 +292,16 @@ const CanvasBoard = () => {
     return `${stem} (${n})`;
   };
 
+  // 409 "save rejected": an earlier save was acknowledged but refused when written to Mongo
+  // (changed elsewhere, or its name was taken). Reported once; load what the server has.
+  const isSaveRejected = (res, text) =>
+    res.status === 409 && text.startsWith("save rejected");
+
+  const reloadRejected = () => {
+    setToastMsg("An earlier save could not be stored. Reloaded the saved project.");
+    setReloadKey((k) => k + 1);
+  };
+
   const saveProject = async () => {
     const user = getUser();
     if (!user) return setToastMsg("Please log in to save.");
@@ -310,9 +323,13 @@ const CanvasBoard = () => {
     while (attempts < 5) {
       try {
         const payload = buildPayload(snapshot, currentName);
+        const headers = { "Content-Type": "application/json" };
+        if (projectId && versionRef.current != null) {
+          headers["If-Match"] = `"${versionRef.current}"`;
+        }
         const res = await api(url, {
           method,
-          headers: { "Content-Type": "application/json" },
+          headers,
           body: JSON.stringify(payload),
         });
 
@@ -321,11 +338,22 @@ const CanvasBoard = () => {
         if (res.ok) {
           const data = JSON.parse(text);
           if (!projectId && data.id) setProjectId(data.id);
+          versionRef.current = data.version ?? null;
           setProjectName(currentName);
           setToastMsg(projectId ? "Project updated." : "Project saved.");
           return;
         }
 
+        if (isSaveRejected(res, text)) {
+          reloadRejected();
+          return;
+        }
+
+        if (res.status === 409 && text.startsWith("version conflict")) {
+          setToastMsg("This project was changed elsewhere. Reload it before saving.");
+          return;
+        }
+
         if (res.status === 409) {
           const suggested = suggestNextName(currentName);
           const next = window.prompt(
@@ -417,16 +445,19 @@ const CanvasBoard = () => {
         frames: a.frames || [],
         loopMode: a.loopMode || "forward",
       })),
-      previewPng: snap.previewPng || null,
       favorite: false,
     });
 
     while (attempts < 5) {
       try {
         const payload = buildAnimPayload(animSnap, currentName);
+        const headers = { "Content-Type": "application/json" };
+        if (projectId && versionRef.current != null) {
+          headers["If-Match"] = `"${versionRef.current}"`;
+        }
         const res = await api(url, {
           method,
-          headers: { "Content-Type": "application/json" },
+          headers,
           body: JSON.stringify(payload),
         });
 
@@ -435,11 +466,22 @@ const CanvasBoard = () => {
         if (res.ok) {
           const data = JSON.parse(text);
           if (!projectId && data.id) setProjectId(data.id);
+          versionRef.current = data.version ?? null;
           setProjectName(currentName);
           setToastMsg(projectId ? "Animation updated." : "Animation saved.");
           return;
         }
 
+        if (isSaveRejected(res, text)) {
+          reloadRejected();
+          return;
+        }
+
+        if (res.status === 409 && text.startsWith("version conflict")) {
+          setToastMsg("This project was changed elsewhere. Reload it before saving.");
+          return;
+        }
+
         if (res.status === 409) {
           const suggested = suggestNextName(currentName);
           const next = window.prompt(
@@ -486,6 +528,7 @@ const CanvasBoard = () => {
           if (cancelled) return;
 
           setMode("static");
+          versionRef.current = p.version ?? null;
           setProjectName(p.name || "Untitled");
           setWidth(p.width);
           setHeight(p.height);
@@ -517,12 +560,17 @@ const CanvasBoard = () => {
           );
           if (!resAnim.ok) {
             const t = await resAnim.text();
+            if (isSaveRejected(resAnim, t)) {
+              if (!cancelled) reloadRejected();
+              return;
+            }
             throw new Error(t || "Failed to load project.");
           }
           const pa = await resAnim.json();
           if (cancelled) return;
 
           setMode("animations");
+          versionRef.current = pa.version ?? null;
           setProjectName(pa.name || "Untitled");
           setWidth(pa.width);
           setHeight(pa.height);
@@ -550,6 +598,10 @@ const CanvasBoard = () => {
         }
 
         const t = await res.text();
+        if (isSaveRejected(res, t)) {
+          if (!cancelled) reloadRejected();
+          return;
+        }
         throw new Error(t || "Failed to load project.");
       } catch (e) {
         if (!cancelled) setToastMsg(e.message || "Could not open project.");
@@ -559,7 +611,7 @@ const CanvasBoard = () => {
     return () => {
       cancelled = true;
     };
-  }, [projectId]);
+  }, [projectId, reloadKey]);
 
   const handleExposeRailAPI = (api) => {
     animRailApiRef.current = api || null;
@@ -3,7 +3,7 @@ import { useNavigate, useSearchParams } from "react-router-dom";
 import NavBar from "../components/NavBar";
 import AssetTile from "../components/AssetTile";
 import Toast from "../components/Toast";
-import { api } from "../api";
+import { api, apiUrl } from "../api";
 
 const readUser = () => {
   try {
@@ -14,6 +14,8 @@ const readUser = () => {
   }
 };
 
+const PAGE_SIZE = 60;
+
 const Skeleton = () => (
   <div className="w-[200px]">
     <div className="animate-pulse aspect-square rounded-2xl bg-gray-200" />
@@ -26,14 +28,35 @@ const LibraryPage = () => {
   const [params] = useSearchParams();
   const [toastMsg, setToastMsg] = useState("");
   const [loading, setLoading] = useState(true);
-  const [projects, setProjects] = useState([]); // [{ id, name, width, height, previewPng, favorite, updatedAt }]
+  const [projects, setProjects] = useState([]); // [{ id, name, width, height, thumbnailUrl, thumbnailHash, favorite, updatedAt }]
   const [selectedId, setSelectedId] = useState(null);
 
   const user = useMemo(readUser, []);
   const tab = (params.get("tab") || "recents").toLowerCase();
   const isFavTab = tab === "favourites" || tab === "favorites";
 
-  // Single list endpoint: backend returns both STATIC and ANIMATION summaries.
+  const [nextCursor, setNextCursor] = useState(null);
+  const [loadingMore, setLoadingMore] = useState(false);
+
+  // Single list endpoint: backend returns both STATIC and ANIMATION summaries,
+  // newest first, one page at a time ({ items, hasNext, nextCursor }).
+  const fetchPage = async (cursor) => {
+    const q = new URLSearchParams({ userId: user.id, size: String(PAGE_SIZE) });
+    if (isFavTab) q.set("favorite", "true");
+    if (cursor) q.set("cursor", cursor);
+
+    const res = await api(`/api/projects?${q.toString()}`);
+    if (!res.ok) {
+      const t = await res.text();
+      throw new Error(t || "Failed to fetch projects.");
+    }
+    const page = await res.json();
+    return {
+      items: Array.isArray(page?.items) ? page.items : [],
+      nextCursor: page?.hasNext ? page.nextCursor : null,
+    };
+  };
+
   useEffect(() => {
     if (!user) {
       setToastMsg("Please log in to view your library.");
@@ -45,21 +68,11 @@ const LibraryPage = () => {
     (async () => {
       try {
         setLoading(true);
-        const q = new URLSearchParams({ userId: user.id });
-        if (isFavTab) q.set("favorite", "true");
-
-        const res = await api(`/api/projects?${q.toString()}`);
-        if (!res.ok) {
-          const t = await res.text();
-          throw new Error(t || "Failed to fetch projects.");
+        const page = await fetchPage(null);
+        if (!ignore) {
+          setProjects(page.items);
+          setNextCursor(page.nextCursor);
         }
-        const list = await res.json();
-        const normalized = (Array.isArray(list) ? list : []).sort((a, b) => {
-          const ta = a.updatedAt ? new Date(a.updatedAt).getTime() : 0;
-          const tb = b.updatedAt ? new Date(b.updatedAt).getTime() : 0;
-          return tb - ta;
-        });
-        if (!ignore) setProjects(normalized);
       } catch (e) {
         if (!ignore) setToastMsg(e.message || "Network error.");
       } finally {
@@ -70,8 +83,26 @@ const LibraryPage = () => {
     return () => {
       ignore = true;
     };
+    // eslint-disable-next-line react-hooks/exhaustive-deps
   }, [user, navigate, isFavTab]);
 
+  const loadMore = async () => {
+    if (!nextCursor || loadingMore) return;
+    try {
+      setLoadingMore(true);
+      const page = await fetchPage(nextCursor);
+      setProjects((prev) => {
+        const seen = new Set(prev.map((p) => p.id));
+        return [...prev, ...page.items.filter((p) => !seen.has(p.id))];
+      });
+      setNextCursor(page.nextCursor);
+    } catch (e) {
+      setToastMsg(e.message || "Network error.");
+    } finally {
+      setLoadingMore(false);
+    }
+  };
+
   const openProject = (p) => {
     navigate("/canvas", {
       state: {
@@ -180,7 +211,7 @@ const LibraryPage = () => {
                 key={p.id}
                 id={p.id}
                 name={p.name || "Untitled"}
-                previewSrc={p.previewPng || ""}
+                previewSrc={p.thumbnailUrl ? apiUrl(p.thumbnailUrl) : ""}
                 sizeLabel={`${p.width}×${p.height}`}
                 isFavorite={!!p.favorite}
                 selected={selectedId === p.id}
@@ -193,6 +224,19 @@ const LibraryPage = () => {
             ))}
           </div>
         )}
+
+        {!loading && nextCursor && (
+          <div className="flex justify-center my-8">
+            <button
+              type="button"
+              onClick={loadMore}
+              disabled={loadingMore}
+              className="px-5 py-2 rounded-lg border border-gray-300 bg-white hover:bg-gray-50 disabled:opacity-60"
+            >
+              {loadingMore ? "Loading…" : "Load more"}
+            </button>
+          </div>
+        )}
       </div>
 
       {toastMsg && <Toast message={toastMsg} onClose={() => setToastMsg("")} />}